@@ -1,4 +1,4 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * Airport objects contain information about the airports
@@ -10,7 +10,9 @@ public class Airport {
     private String airportName; // full airport name
     private String city; // city the airport is located in
     private String state; // state the airport is located in
-    private LinkedList<Flight> flightsLeaving; // all the flights leaving from the airport
+    private ArrayList<Flight> flightsLeaving; // all the flights leaving from the airport, null until they're asked for or added
+    private FlightNetwork network; // compiled network to build flightsLeaving from, if the airport came from one
+    private int id; // the airport's id in that network
 
     /**
      * Creates the airport object
@@ -24,7 +26,6 @@ public class Airport {
         if (acro == null || airport == null || city == null || state == null) {
             throw new IllegalArgumentException();
         }
-        this.flightsLeaving = new LinkedList<Flight>();
         this.acronym = acro;
         this.airportName = airport;
         this.city = city;
@@ -67,16 +68,39 @@ public class Airport {
      * Gets all the flights leaving the airport
      * @return list of flights leaving the airport
      */
-    public LinkedList<Flight> getFlightsLeaving() {
+    public synchronized ArrayList<Flight> getFlightsLeaving() {
+        // build the list the first time it's asked for, from the network the airport
+        // was loaded with if there is one
+        if (this.flightsLeaving == null) {
+            this.flightsLeaving = new ArrayList<Flight>();
+            if (this.network != null) {
+                for (int f = this.network.firstFlightFrom(this.id);
+                    f < this.network.endFlightFrom(this.id); f++) {
+                    this.flightsLeaving.add(this.network.flight(f));
+                }
+            }
+        }
         return this.flightsLeaving;
     }
 
     /**
-     * Adds a new flight to the linked list of flights leaving the airport
+     * Adds a new flight to the list of flights leaving the airport
      * @param f: the flight leaving the airport
      */
-    public void addNewFlightLeaving(Flight f) {
-        this.flightsLeaving.add(f);
+    public synchronized void addNewFlightLeaving(Flight f) {
+        getFlightsLeaving().add(f);
+    }
+
+    /**
+     * Has the list of flights leaving the airport built from a compiled network the
+     * first time it's asked for, instead of filling it when the timetable is loaded
+     * @param network: the network the airport was loaded with
+     * @param id: the airport's id in the network
+     */
+    public synchronized void leavesFrom(FlightNetwork network, int id) {
+        this.flightsLeaving = null;
+        this.network = network;
+        this.id = id;
     }
 
     /**
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The fastest itinerary between every pair of airports, precomputed so any pair can
+ * be answered in constant time. Each origin is searched separately on a fork/join
+ * pool, and since every thread searches in its own workspace the searches share
+ * nothing but the read-only network. The result is three flat n by n int matrices:
+ * the least total time, the first flight of the fastest itinerary, and the
+ * departure time of the search that found it, so its path can be rebuilt exactly.
+ * @author megangibbons
+ *
+ */
+public class AllPairsMatrix {
+    private final FlightNetwork network; // the network the matrix was computed for
+    private final int n; // number of airports
+    private final int[] totalTime; // least total time from origin o to d at o * n + d, or -1
+    private final int[] firstFlight; // first flight from origin o to d at o * n + d, or -1
+    private final int[] departure; // departure time of the search that found o to d at o * n + d
+
+    /**
+     * Computes the matrix using every available core
+     * @param network: the network to precompute
+     */
+    public AllPairsMatrix(FlightNetwork network) {
+        this(network, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the matrix on the given pool
+     * @param network: the network to precompute
+     * @param pool: the pool whose threads run the searches
+     */
+    public AllPairsMatrix(FlightNetwork network, ForkJoinPool pool) {
+        this.network = network;
+        this.n = network.airportCount();
+        this.totalTime = new int[this.n * this.n];
+        this.firstFlight = new int[this.n * this.n];
+        this.departure = new int[this.n * this.n];
+        Arrays.fill(this.totalTime, -1);
+        Arrays.fill(this.firstFlight, -1);
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        // each origin writes only its own row, so the rows need no locking
+        Runnable all = () -> IntStream.range(0, this.n).parallel().forEach(origin -> {
+            FastestItineraries row = search.fastestFrom(origin);
+            for (int d = 0; d < this.n; d++) {
+                this.totalTime[origin * this.n + d] = row.totalTime(d);
+                this.firstFlight[origin * this.n + d] = row.firstFlight(d);
+                this.departure[origin * this.n + d] = row.departure(d);
+            }
+        });
+        try {
+            pool.submit(all).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the matrix", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Computing the matrix failed", e.getCause());
+        }
+    }
+
+    /**
+     * Gets the network the matrix was computed for
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Gets the least total time between two airports
+     * @param origin: the departure airport id
+     * @param destination: the arrival airport id
+     * @return the total time in minutes, or -1 if there is no itinerary
+     */
+    public int totalTime(int origin, int destination) {
+        return this.totalTime[origin * this.n + destination];
+    }
+
+    /**
+     * Gets the first flight of the fastest itinerary between two airports
+     * @param origin: the departure airport id
+     * @param destination: the arrival airport id
+     * @return the flight index, or -1 if there is no itinerary
+     */
+    public int firstFlight(int origin, int destination) {
+        return this.firstFlight[origin * this.n + destination];
+    }
+
+    /**
+     * Builds the fastest itinerary between two airports by repeating the search
+     * that found it, so the path's total time is the matrix's
+     * @param origin: the departure airport id
+     * @param destination: the arrival airport id
+     * @return the path, or null if there is no itinerary
+     */
+    public Path pathFor(int origin, int destination) {
+        int cell = origin * this.n + destination;
+        if (this.firstFlight[cell] < 0) {
+            return null;
+        }
+        SearchWorkspace ws = SearchWorkspace.get(this.n);
+        new EarliestArrivalSearch(this.network).search(origin, destination,
+            this.departure[cell], ws);
+        return ws.buildPath(this.network, destination);
+    }
+}
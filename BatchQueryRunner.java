@@ -0,0 +1,460 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Answers a file of itinerary requests in bulk. Requests are read a window at a
+ * time, and the requests in a window that share a departure airport (and departure
+ * time, if they give one) are answered by a single one-to-all search. The groups of
+ * a window are searched in parallel, and the answers are written out in the same
+ * order as the requests before the next window is read, so the whole file is never
+ * held in memory.
+ *
+ * Each request line is either CSV, "from,to" or "from,to,H:MM", or a JSON object
+ * such as {"from":"MSN","to":"SLC","departAfter":"8:00"}. Without a departure time
+ * the fastest itinerary of the whole day is found, and with one the earliest
+ * arriving itinerary leaving no earlier than that time. Answers use the format of
+ * their request line.
+ * @author megangibbons
+ *
+ */
+public class BatchQueryRunner {
+    // the column names of CSV answers
+    public static final String CSV_HEADER =
+        "from,to,departAfter,departure,arrival,totalMinutes,flights,error";
+
+    private final FlightNetwork network; // the network the requests are answered from
+    private final EarliestArrivalSearch search; // the engine that runs the searches
+    private final int windowSize; // how many requests are grouped together at a time
+    private final ForkJoinPool pool; // the threads that search the groups
+
+    /**
+     * A summary of one batch
+     * @author megangibbons
+     *
+     */
+    public static class BatchReport {
+        public final long queries; // number of requests answered
+        public final long errors; // requests that couldn't be parsed or answered
+        public final long searches; // searches run for the whole batch, including path rebuilds
+        public final long nanos; // time spent on the whole batch
+
+        /**
+         * Creates a batch report
+         * @param queries: number of requests answered
+         * @param errors: requests that couldn't be parsed or answered
+         * @param searches: searches run for the whole batch, including path rebuilds
+         * @param nanos: time spent on the whole batch
+         */
+        public BatchReport(long queries, long errors, long searches, long nanos) {
+            this.queries = queries;
+            this.errors = errors;
+            this.searches = searches;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets how many requests were answered per second
+         * @return queries per second
+         */
+        public double queriesPerSecond() {
+            return this.nanos == 0 ? 0 : this.queries * 1e9 / this.nanos;
+        }
+
+        /**
+         * Returns a summary of the batch
+         * @return the batch statistics in a String
+         */
+        @Override
+        public String toString() {
+            return "Answered " + this.queries + " requests with " + this.searches
+                + " searches in " + (this.nanos / 1_000_000) + " ms ("
+                + Math.round(queriesPerSecond()) + " queries/sec), " + this.errors + " errors";
+        }
+    }
+
+    /**
+     * One request line and its answer
+     * @author megangibbons
+     *
+     */
+    private static class Request {
+        private boolean json; // whether the line was JSON
+        private String from; // acronym of the departure airport
+        private String to; // acronym of the arrival airport
+        private String departAfterText; // the departure time as written, or null
+        private int departAfter = -1; // earliest departure minute, or -1 for the whole day
+        private String error; // why the request can't be answered, or null
+        private Path path; // the answer, or null if there is no itinerary
+    }
+
+    /**
+     * Creates a runner that groups 4096 requests at a time on the common pool
+     * @param network: the network to answer the requests from
+     */
+    public BatchQueryRunner(FlightNetwork network) {
+        this(network, 4096, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a runner
+     * @param network: the network to answer the requests from
+     * @param windowSize: how many requests are grouped together at a time
+     * @param pool: the threads that search the groups
+     */
+    public BatchQueryRunner(FlightNetwork network, int windowSize, ForkJoinPool pool) {
+        if (network == null || windowSize < 1 || pool == null) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.search = new EarliestArrivalSearch(network);
+        this.windowSize = windowSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Answers every request from a reader and writes the answers in request order
+     * @param in: the request lines
+     * @param out: where the answers are written
+     * @return a summary of the batch
+     * @throws IOException if reading or writing fails
+     */
+    public BatchReport run(Reader in, Writer out) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = new BufferedReader(in);
+        BufferedWriter writer = new BufferedWriter(out);
+        long queries = 0;
+        long errors = 0;
+        long searches = 0;
+        List<Request> window = new ArrayList<>(this.windowSize);
+        String line;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            // a CSV header line is answered with the answer header
+            if (first && line.toLowerCase().startsWith("from,")) {
+                writer.write(CSV_HEADER);
+                writer.newLine();
+                first = false;
+                continue;
+            }
+            first = false;
+            window.add(parse(line));
+            if (window.size() == this.windowSize) {
+                searches += answer(window);
+                errors += write(window, writer);
+                queries += window.size();
+                window.clear();
+            }
+        }
+        if (!window.isEmpty()) {
+            searches += answer(window);
+            errors += write(window, writer);
+            queries += window.size();
+        }
+        writer.flush();
+        return new BatchReport(queries, errors, searches, System.nanoTime() - start);
+    }
+
+    /**
+     * Answers a window of requests, one one-to-all search per departure airport and
+     * departure time
+     * @param window: the requests to answer
+     * @return the number of searches run, counting every search of a whole-day group
+     */
+    private int answer(List<Request> window) {
+        // group the request positions by departure airport and time
+        HashMap<Long, List<Request>> groups = new HashMap<>();
+        for (Request request : window) {
+            if (request.error == null) {
+                long key = ((long) this.network.airportId(request.from) << 32)
+                    | (request.departAfter & 0xffffffffL);
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(request);
+            }
+        }
+        List<List<Request>> work = new ArrayList<>(groups.values());
+        try {
+            return this.pool.submit(() -> work.parallelStream().mapToInt(this::answerGroup).sum())
+                .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while answering requests", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Answering requests failed", e.getCause());
+        }
+    }
+
+    /**
+     * Answers the requests that share a departure airport and time with one search
+     * @param group: the requests, all from the same airport at the same time
+     * @return the number of searches run: one for a timed group, and for a whole-day
+     *         group one per departure time plus one for each path that's rebuilt
+     */
+    private int answerGroup(List<Request> group) {
+        Request any = group.get(0);
+        int origin = this.network.airportId(any.from);
+        if (any.departAfter < 0) {
+            FastestItineraries fastest = this.search.fastestFrom(origin);
+            int searches = fastest.searchCount();
+            for (Request request : group) {
+                int target = this.network.airportId(request.to);
+                // the path is rebuilt by repeating the search that found it
+                if (fastest.totalTime(target) >= 0) {
+                    searches++;
+                }
+                request.path = fastest.pathTo(target);
+            }
+            return searches;
+        }
+        EarliestArrivalTree tree = this.search.tree(origin, any.departAfter);
+        for (Request request : group) {
+            request.path = tree.pathTo(this.network.airportId(request.to));
+        }
+        return 1;
+    }
+
+    /**
+     * Parses one request line, recording why it can't be answered if it's invalid
+     * @param line: the request line
+     * @return the request
+     */
+    private Request parse(String line) {
+        Request request = new Request();
+        request.json = line.startsWith("{");
+        if (request.json) {
+            request.from = jsonField(line, "from");
+            request.to = jsonField(line, "to");
+            request.departAfterText = jsonField(line, "departAfter");
+        } else {
+            String[] fields = line.split(",", -1);
+            request.from = fields[0].strip();
+            request.to = fields.length > 1 ? fields[1].strip() : null;
+            request.departAfterText = fields.length > 2 && !fields[2].isBlank()
+                ? fields[2].strip() : null;
+        }
+        if (request.from == null || request.to == null) {
+            request.error = "Missing airport";
+        } else if (this.network.airportId(request.from) < 0) {
+            request.error = "Unknown airport " + request.from;
+        } else if (this.network.airportId(request.to) < 0) {
+            request.error = "Unknown airport " + request.to;
+        } else if (request.from.equals(request.to)) {
+            request.error = "Same departure and arrival airport";
+        }
+        if (request.error == null && request.departAfterText != null) {
+            try {
+                request.departAfter = request.departAfterText.indexOf(':') >= 0
+                    ? Flight.toMinutes(request.departAfterText)
+                    : Integer.parseInt(request.departAfterText);
+                if (request.departAfter < 0) {
+                    request.error = "Invalid time " + request.departAfterText;
+                }
+            } catch (IllegalArgumentException e) {
+                request.error = "Invalid time " + request.departAfterText;
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Writes the answers of a window in request order
+     * @param window: the answered requests
+     * @param writer: where the answers are written
+     * @return the number of requests that had errors
+     * @throws IOException if writing fails
+     */
+    private static int write(List<Request> window, BufferedWriter writer) throws IOException {
+        int errors = 0;
+        StringBuilder sb = new StringBuilder();
+        for (Request request : window) {
+            if (request.error != null) {
+                errors++;
+            }
+            sb.setLength(0);
+            if (request.json) {
+                writeJson(request, sb);
+            } else {
+                writeCsv(request, sb);
+            }
+            writer.write(sb.toString());
+            writer.newLine();
+        }
+        return errors;
+    }
+
+    /**
+     * Formats an answer as a CSV line with the columns of CSV_HEADER
+     * @param request: the answered request
+     * @param sb: where the line is built
+     */
+    private static void writeCsv(Request request, StringBuilder sb) {
+        sb.append(csvField(request.from)).append(',').append(csvField(request.to)).append(',');
+        if (request.departAfterText != null) {
+            sb.append(csvField(request.departAfterText));
+        }
+        sb.append(',');
+        if (request.path != null) {
+            sb.append(request.path.getStartTime()).append(',')
+                .append(request.path.getEndTime()).append(',')
+                .append(request.path.totalTime).append(',');
+            List<Flight> legs = request.path.getFlights();
+            for (int i = 0; i < legs.size(); i++) {
+                sb.append(i == 0 ? "" : " ").append(legs.get(i).getID());
+            }
+            sb.append(',');
+        } else {
+            sb.append(",,,,");
+        }
+        if (request.error != null) {
+            sb.append(csvField(request.error));
+        } else if (request.path == null) {
+            sb.append("No itinerary");
+        }
+    }
+
+    /**
+     * Formats an answer as a JSON object
+     * @param request: the answered request
+     * @param sb: where the object is built
+     */
+    private static void writeJson(Request request, StringBuilder sb) {
+        sb.append("{\"from\":");
+        jsonString(request.from, sb);
+        sb.append(",\"to\":");
+        jsonString(request.to, sb);
+        if (request.departAfterText != null) {
+            sb.append(",\"departAfter\":");
+            jsonString(request.departAfterText, sb);
+        }
+        if (request.error != null) {
+            sb.append(",\"error\":");
+            jsonString(request.error, sb);
+        } else if (request.path == null) {
+            sb.append(",\"error\":\"No itinerary\"");
+        } else {
+            sb.append(",\"departure\":\"").append(request.path.getStartTime())
+                .append("\",\"arrival\":\"").append(request.path.getEndTime())
+                .append("\",\"totalMinutes\":").append(request.path.totalTime)
+                .append(",\"flights\":[");
+            List<Flight> legs = request.path.getFlights();
+            for (int i = 0; i < legs.size(); i++) {
+                sb.append(i == 0 ? "" : ",").append(legs.get(i).getID());
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Reads a field of a flat JSON object, either a string or a bare value
+     * @param line: the JSON object
+     * @param key: the field name
+     * @return the field's value, or null if the object doesn't have it
+     */
+    private static String jsonField(String line, String key) {
+        int at = line.indexOf("\"" + key + "\"");
+        if (at < 0) {
+            return null;
+        }
+        int colon = line.indexOf(':', at + key.length() + 2);
+        if (colon < 0) {
+            return null;
+        }
+        int i = colon + 1;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i < line.length() && line.charAt(i) == '"') {
+            StringBuilder value = new StringBuilder();
+            for (i++; i < line.length() && line.charAt(i) != '"'; i++) {
+                // keep the escaped character, which covers \" and \\
+                if (line.charAt(i) == '\\' && i + 1 < line.length()) {
+                    i++;
+                }
+                value.append(line.charAt(i));
+            }
+            return value.toString();
+        }
+        int end = i;
+        while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != '}') {
+            end++;
+        }
+        String value = line.substring(i, end).strip();
+        return value.isEmpty() || value.equals("null") ? null : value;
+    }
+
+    /**
+     * Appends a value as a JSON string
+     * @param value: the value, or null
+     * @param sb: where the string is appended
+     */
+    private static void jsonString(String value, StringBuilder sb) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Quotes a CSV field if it contains a comma or a quote
+     * @param value: the value, or null for an empty field
+     * @return the field as it should be written
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Answers a request file from the command line, for example
+     * "java BatchQueryRunner requests.csv answers.csv"
+     * @param args: the request file and the answer file
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java BatchQueryRunner <requests> <answers>");
+            return;
+        }
+        try {
+            FlightNetwork network = NetworkSnapshot.loadOrImport("airports.csv", "flights.csv",
+                "timetable.snapshot");
+            BatchQueryRunner runner = new BatchQueryRunner(network);
+            BatchReport report;
+            try (Reader in = new FileReader(args[0]); Writer out = new FileWriter(args[1])) {
+                report = runner.run(in, out);
+            }
+            System.out.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
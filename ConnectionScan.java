@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * Answers earliest arrival queries with the connection scan algorithm. Every flight
+ * is sorted once by departure time, and a query walks that array a single time,
+ * keeping the earliest arrival at each airport in a plain int array.
+ * @author megangibbons
+ *
+ */
+public class ConnectionScan {
+    private final FlightNetwork network; // the compiled timetable being scanned
+    private final int minConnection; // minutes needed between landing and taking off again
+    private final int[] flight; // network flight index of each connection
+    private final int[] depAirport; // departure airport of each connection
+    private final int[] arrAirport; // arrival airport of each connection
+    private final int[] depMinute; // departure minute of each connection
+    private final int[] arrMinute; // arrival minute of each connection
+
+    /**
+     * Creates the sorted connection arrays with the default connection time
+     * @param network: the airports and flights to scan
+     */
+    public ConnectionScan(FlightNetwork network) {
+        this(network, FlightNetwork.MIN_CONNECTION_MINUTES);
+    }
+
+    /**
+     * Creates the sorted connection arrays from a compiled timetable
+     * @param network: the airports and flights to scan
+     * @param minConnection: minutes needed between landing and taking off again
+     */
+    public ConnectionScan(FlightNetwork network, int minConnection) {
+        if (network == null || minConnection < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.minConnection = minConnection;
+        // sort the flights by departure time once so every query is a linear scan.
+        // Each flight's minute and index are packed into one long, so the sort runs
+        // on primitives and flights leaving at the same minute keep index order.
+        int m = network.flightCount();
+        long[] order = new long[m];
+        for (int f = 0; f < m; f++) {
+            order[f] = ((long) network.departureMinute(f) << 32) | f;
+        }
+        Arrays.sort(order);
+        this.flight = new int[m];
+        this.depAirport = new int[m];
+        this.arrAirport = new int[m];
+        this.depMinute = new int[m];
+        this.arrMinute = new int[m];
+        for (int c = 0; c < m; c++) {
+            int f = (int) order[c];
+            this.flight[c] = f;
+            this.depAirport[c] = network.departureAirport(f);
+            this.arrAirport[c] = network.arrivalAirport(f);
+            this.depMinute[c] = network.departureMinute(f);
+            this.arrMinute[c] = network.arrivalMinute(f);
+        }
+    }
+
+    /**
+     * Gets the network the scan was created over
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Finds the path that reaches the arrival airport as early as possible when
+     * leaving the departure airport no earlier than the given time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving path, or null if there isn't one
+     */
+    public Path earliestArrival(String start, String end, int departAfter) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        scan(origin, target, departAfter, ws);
+        return ws.buildPath(this.network, target);
+    }
+
+    /**
+     * Finds the path with the least total time between two airports over every
+     * possible departure time of the day
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the fastest path, or null if there isn't one
+     */
+    public Path fastestFlight(String start, String end) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        int n = this.network.airportCount();
+        int bestTime = Integer.MAX_VALUE;
+        int bestDeparture = -1;
+        int lastDeparture = -1;
+        // the network keeps each airport's departures together in time order, so
+        // only the origin's own flights are looked at
+        int last = this.network.endFlightFrom(origin);
+        for (int f = this.network.firstFlightFrom(origin); f < last; f++) {
+            // try each distinct departure time from the starting airport once
+            if (this.network.departureMinute(f) == lastDeparture) {
+                continue;
+            }
+            lastDeparture = this.network.departureMinute(f);
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            scan(origin, target, lastDeparture, ws);
+            // compare the candidates by total time without building their paths
+            int total = ws.totalTime(this.network, target);
+            if (total >= 0 && total < bestTime) {
+                bestTime = total;
+                bestDeparture = lastDeparture;
+            }
+        }
+        if (bestDeparture < 0) {
+            return null;
+        }
+        // repeat the winning scan to build the one path that gets returned
+        SearchWorkspace ws = SearchWorkspace.get(n);
+        scan(origin, target, bestDeparture, ws);
+        return ws.buildPath(this.network, target);
+    }
+
+    /**
+     * Scans the connections departing at or after a time and labels each airport
+     * with its earliest arrival
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param ws: a freshly reset workspace to hold the arrival labels
+     */
+    public void scan(int origin, int target, int departAfter, SearchWorkspace ws) {
+        // flights back into the origin can never beat having started there
+        ws.label(origin, departAfter, -1);
+        for (int c = firstDepartingAt(departAfter); c < this.flight.length; c++) {
+            // nothing departing after the target is reached can arrive any earlier
+            if (this.depMinute[c] >= ws.arrival(target)) {
+                break;
+            }
+            // the first flight may leave at the requested time, connecting flights
+            // need the minimum connection time after landing
+            int from = this.depAirport[c];
+            int landed = ws.arrival(from);
+            if (landed == Integer.MAX_VALUE || this.depMinute[c]
+                < (from == origin ? departAfter : landed + this.minConnection)) {
+                continue;
+            }
+            int next = this.arrAirport[c];
+            if (this.arrMinute[c] < ws.arrival(next)) {
+                ws.label(next, this.arrMinute[c], this.flight[c]);
+            }
+        }
+    }
+
+    /**
+     * Finds the first connection departing at or after a time with a binary search
+     * @param minute: the time in minutes after midnight
+     * @return position of the first connection departing at or after the time
+     */
+    private int firstDepartingAt(int minute) {
+        int low = 0;
+        int high = this.flight.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.depMinute[mid] < minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
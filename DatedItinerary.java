@@ -0,0 +1,73 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A path found by a multi-day search. Unlike a Path, each flight carries the date
+ * it's taken on, so a path can wait overnight for a connection or arrive after
+ * midnight, and the total time counts the days in between.
+ * @author megangibbons
+ *
+ */
+public class DatedItinerary {
+    private final List<Flight> flights; // the flights from first to last
+    private final List<LocalDate> dates; // the date each flight departs on
+    public final int departureMinute; // first departure, in minutes since the period started
+    public final int arrivalMinute; // last arrival, in minutes since the period started
+    public final int totalTime; // minutes from the first departure to the last arrival
+
+    /**
+     * Creates an itinerary
+     * @param flights: the flights from first to last
+     * @param dates: the date each flight departs on
+     * @param departureMinute: when the first flight leaves, in minutes since the
+     *        period started
+     * @param arrivalMinute: when the last flight lands, in minutes since the period
+     *        started
+     */
+    public DatedItinerary(List<Flight> flights, List<LocalDate> dates, int departureMinute,
+        int arrivalMinute) {
+        if (flights == null || dates == null || flights.size() != dates.size()
+            || flights.isEmpty() || arrivalMinute < departureMinute) {
+            throw new IllegalArgumentException();
+        }
+        this.flights = Collections.unmodifiableList(new ArrayList<>(flights));
+        this.dates = Collections.unmodifiableList(new ArrayList<>(dates));
+        this.departureMinute = departureMinute;
+        this.arrivalMinute = arrivalMinute;
+        this.totalTime = arrivalMinute - departureMinute;
+    }
+
+    /**
+     * Gets the itinerary's flights in order
+     * @return an unmodifiable list of the flights from first to last
+     */
+    public List<Flight> getFlights() {
+        return this.flights;
+    }
+
+    /**
+     * Gets the date each flight departs on
+     * @return an unmodifiable list of the dates, in flight order
+     */
+    public List<LocalDate> getDates() {
+        return this.dates;
+    }
+
+    /**
+     * Returns a String representation of the itinerary
+     * @return information about the itinerary in a String
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.flights.size(); i++) {
+            sb.append(this.dates.get(i)).append(": ").append(this.flights.get(i).toString())
+                .append("\n");
+        }
+        sb.append("Total time traveling: " + totalTime / 60 + " hours and " + totalTime % 60
+            + " minutes.\n");
+        return sb.toString();
+    }
+}
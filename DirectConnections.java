@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * An index of the direct flights between each ordered pair of airports. Each pair's
+ * flights are sorted by departure time and carry the earliest arrival among the
+ * flights from there to the end of the day, so "the earliest arrival on a direct
+ * flight from u to v leaving at or after t" is two binary searches.
+ * @author megangibbons
+ *
+ */
+public class DirectConnections {
+    private FlightNetwork network; // the network the index was built from
+    private int[] pairStart; // first pair of each departure airport, n + 1 entries
+    private int[] pairArrival; // arrival airport of each pair, sorted per departure airport
+    private int[] flightStart; // first flight of each pair, one more entry than pairs
+    private int[] depMinute; // departure minute of each flight, sorted per pair
+    private int[] bestFlight; // flight with the earliest arrival from here to the pair's end
+
+    /**
+     * Builds the index from a compiled timetable
+     * @param network: the airports and flights to index
+     */
+    public DirectConnections(FlightNetwork network) {
+        this.network = network;
+        int n = network.airportCount();
+        int m = network.flightCount();
+        this.pairStart = new int[n + 1];
+        int[] pairArrival = new int[m]; // there are never more pairs than flights
+        int[] flightStart = new int[m + 1];
+        this.depMinute = new int[m];
+        this.bestFlight = new int[m];
+        int[] seen = new int[n]; // departure airport + 1 that last counted each arrival
+        int[] count = new int[n]; // flights to each arrival airport, then next free slot
+        int[] arrivals = new int[n]; // distinct arrival airports of one departure airport
+        int pairs = 0;
+        for (int u = 0; u < n; u++) {
+            int distinct = 0;
+            for (int f = network.firstFlightFrom(u); f < network.endFlightFrom(u); f++) {
+                int v = network.arrivalAirport(f);
+                if (seen[v] != u + 1) {
+                    seen[v] = u + 1;
+                    count[v] = 0;
+                    arrivals[distinct++] = v;
+                }
+                count[v]++;
+            }
+            Arrays.sort(arrivals, 0, distinct);
+            // give each arrival airport its slice, in arrival airport order
+            int slot = network.firstFlightFrom(u);
+            for (int i = 0; i < distinct; i++) {
+                int v = arrivals[i];
+                pairArrival[pairs] = v;
+                flightStart[pairs] = slot;
+                pairs++;
+                int size = count[v];
+                count[v] = slot;
+                slot += size;
+            }
+            // the departures are already in time order, so dealing them out keeps
+            // each slice sorted by departure
+            for (int f = network.firstFlightFrom(u); f < network.endFlightFrom(u); f++) {
+                int i = count[network.arrivalAirport(f)]++;
+                this.depMinute[i] = network.departureMinute(f);
+                this.bestFlight[i] = f;
+            }
+            this.pairStart[u + 1] = pairs;
+        }
+        flightStart[pairs] = m;
+        this.pairArrival = Arrays.copyOf(pairArrival, pairs);
+        this.flightStart = Arrays.copyOf(flightStart, pairs + 1);
+        // walk each pair backwards keeping the earliest arrival seen so far
+        for (int q = 0; q < pairs; q++) {
+            for (int i = this.flightStart[q + 1] - 2; i >= this.flightStart[q]; i--) {
+                int later = this.bestFlight[i + 1];
+                if (network.arrivalMinute(later) <= network.arrivalMinute(this.bestFlight[i])) {
+                    this.bestFlight[i] = later;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the network the index was built from
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Finds the direct flight between two airports that leaves at or after a time
+     * and arrives the earliest
+     * @param from: the departure airport id
+     * @param to: the arrival airport id
+     * @param minute: the earliest departure time in minutes after midnight
+     * @return the flight index, or -1 if there is no such flight
+     */
+    public int earliestFlight(int from, int to, int minute) {
+        // find the pair among the departure airport's sorted arrival airports
+        int low = this.pairStart[from];
+        int high = this.pairStart[from + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.pairArrival[mid] < to) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == this.pairStart[from + 1] || this.pairArrival[low] != to) {
+            return -1;
+        }
+        // then the pair's first flight leaving late enough
+        int end = this.flightStart[low + 1];
+        int first = this.flightStart[low];
+        int last = end;
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (this.depMinute[mid] < minute) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        return first == end ? -1 : this.bestFlight[first];
+    }
+}
@@ -0,0 +1,413 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Finds flight paths with a time-dependent version of Dijkstra's algorithm. Each
+ * airport is labeled with the earliest time it can be reached, the airports are
+ * settled in order of that time, and the search stops as soon as the destination
+ * is settled.
+ * @author megangibbons
+ *
+ */
+public class EarliestArrivalSearch {
+    private static final int DAY = 24 * 60; // minutes in a day
+    private FlightNetwork network; // the compiled timetable being searched
+    private int minConnection; // minutes needed between landing and taking off again
+
+    /**
+     * Creates a search over a compiled timetable with the default connection time
+     * @param network: the airports and flights to search
+     */
+    public EarliestArrivalSearch(FlightNetwork network) {
+        this(network, FlightNetwork.MIN_CONNECTION_MINUTES);
+    }
+
+    /**
+     * Creates a search over a compiled timetable
+     * @param network: the airports and flights to search
+     * @param minConnection: minutes needed between landing and taking off again
+     */
+    public EarliestArrivalSearch(FlightNetwork network, int minConnection) {
+        if (network == null || minConnection < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.minConnection = minConnection;
+    }
+
+    /**
+     * Gets the network the search was created over
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Finds the path that reaches the arrival airport as early as possible when
+     * leaving the departure airport no earlier than the given time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving path, or null if there isn't one
+     */
+    public Path earliestArrival(String start, String end, int departAfter) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        long started = SearchStats.ENABLED ? System.nanoTime() : 0;
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        search(origin, target, departAfter, ws);
+        Path path = ws.buildPath(this.network, target);
+        if (SearchStats.ENABLED) {
+            SearchStats.record(this.network, origin, target, System.nanoTime() - started,
+                ws.settledCount(), ws.relaxedCount(), ws.labelCount(), ws.queuePeak());
+        }
+        return path;
+    }
+
+    /**
+     * Finds the earliest arrival minute at an airport without building a path. The
+     * search runs in the calling thread's workspace and creates no objects, and the
+     * flights used stay in the workspace until the thread's next search.
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the arrival minute, or -1 if the target can't be reached
+     */
+    public int earliestArrivalMinute(int origin, int target, int departAfter) {
+        long started = SearchStats.ENABLED ? System.nanoTime() : 0;
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        search(origin, target, departAfter, ws);
+        if (SearchStats.ENABLED) {
+            SearchStats.record(this.network, origin, target, System.nanoTime() - started,
+                ws.settledCount(), ws.relaxedCount(), ws.labelCount(), ws.queuePeak());
+        }
+        return ws.previous(target) < 0 ? -1 : ws.arrival(target);
+    }
+
+    /**
+     * Finds the path with the least total time between two airports over every
+     * possible departure time of the day
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the fastest path, or null if there isn't one
+     */
+    public Path fastestFlight(String start, String end) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        int n = this.network.airportCount();
+        int bestTime = Integer.MAX_VALUE;
+        int bestDeparture = -1;
+        int lastDeparture = -1;
+        // statistics add up over every search the query runs
+        long started = SearchStats.ENABLED ? System.nanoTime() : 0;
+        long settled = 0;
+        long relaxed = 0;
+        long labels = 0;
+        int peak = 0;
+        // the departures are sorted, so each distinct departure time is tried once
+        for (int f = this.network.firstFlightFrom(origin); f < this.network.endFlightFrom(origin);
+            f++) {
+            int departAfter = this.network.departureMinute(f);
+            if (departAfter == lastDeparture) {
+                continue;
+            }
+            lastDeparture = departAfter;
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            search(origin, target, departAfter, ws);
+            if (SearchStats.ENABLED) {
+                settled += ws.settledCount();
+                relaxed += ws.relaxedCount();
+                labels += ws.labelCount();
+                peak = Math.max(peak, ws.queuePeak());
+            }
+            // compare the candidates by total time without building their paths
+            int total = ws.totalTime(this.network, target);
+            if (total >= 0 && total < bestTime) {
+                bestTime = total;
+                bestDeparture = departAfter;
+            }
+        }
+        Path path = null;
+        if (bestDeparture >= 0) {
+            // repeat the winning search to build the one path that gets returned
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            search(origin, target, bestDeparture, ws);
+            path = ws.buildPath(this.network, target);
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.record(this.network, origin, target, System.nanoTime() - started,
+                settled, relaxed, labels, peak);
+        }
+        return path;
+    }
+
+    /**
+     * Finds the earliest arrival at every airport from one origin in a single
+     * search
+     * @param origin: the departure airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arrival tree
+     */
+    public EarliestArrivalTree tree(int origin, int departAfter) {
+        long started = SearchStats.ENABLED ? System.nanoTime() : 0;
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        search(origin, -1, departAfter, ws);
+        EarliestArrivalTree tree = new EarliestArrivalTree(this.network, origin, departAfter, ws);
+        if (SearchStats.ENABLED) {
+            SearchStats.record(this.network, origin, -1, System.nanoTime() - started,
+                ws.settledCount(), ws.relaxedCount(), ws.labelCount(), ws.queuePeak());
+        }
+        return tree;
+    }
+
+    /**
+     * Finds the fastest itinerary from one origin to every airport over every
+     * departure time of the day, with one one-to-all search per distinct departure
+     * time from the origin
+     * @param origin: the departure airport id
+     * @return the fastest itineraries
+     */
+    public FastestItineraries fastestFrom(int origin) {
+        int n = this.network.airportCount();
+        int[] totalTime = new int[n];
+        int[] departure = new int[n];
+        int[] firstFlight = new int[n];
+        Arrays.fill(totalTime, -1);
+        Arrays.fill(firstFlight, -1);
+        int lastDeparture = -1;
+        int searches = 0;
+        long started = SearchStats.ENABLED ? System.nanoTime() : 0;
+        long settled = 0;
+        long relaxed = 0;
+        long labels = 0;
+        int peak = 0;
+        for (int f = this.network.firstFlightFrom(origin); f < this.network.endFlightFrom(origin);
+            f++) {
+            int departAfter = this.network.departureMinute(f);
+            if (departAfter == lastDeparture) {
+                continue;
+            }
+            lastDeparture = departAfter;
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            search(origin, -1, departAfter, ws);
+            searches++;
+            if (SearchStats.ENABLED) {
+                settled += ws.settledCount();
+                relaxed += ws.relaxedCount();
+                labels += ws.labelCount();
+                peak = Math.max(peak, ws.queuePeak());
+            }
+            for (int a = 0; a < n; a++) {
+                int total = ws.totalTime(this.network, a);
+                if (total >= 0 && (totalTime[a] < 0 || total < totalTime[a])) {
+                    totalTime[a] = total;
+                    departure[a] = departAfter;
+                    firstFlight[a] = ws.firstFlight(this.network, a);
+                }
+            }
+        }
+        if (SearchStats.ENABLED) {
+            SearchStats.record(this.network, origin, -1, System.nanoTime() - started, settled,
+                relaxed, labels, peak);
+        }
+        return new FastestItineraries(this, origin, totalTime, departure, firstFlight,
+            searches);
+    }
+
+    /**
+     * Labels airports with their earliest arrival time, settling them in order of
+     * that time until the target is settled
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id, or -1 to label every airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param ws: a freshly reset workspace to hold the labels
+     */
+    public void search(int origin, int target, int departAfter, SearchWorkspace ws) {
+        FlightNetwork net = this.network;
+        IndexedMinHeap queue = ws.queue();
+        ws.label(origin, departAfter, -1);
+        queue.insertOrDecrease(origin, departAfter);
+        // statistics counters; with SearchStats off the JIT drops every use of them
+        int relaxed = 0;
+        int labels = 1;
+        int peak = 1;
+        while (!queue.isEmpty()) {
+            int curr = queue.poll();
+            ws.settle(curr);
+            // the destination's arrival time can't improve once it's settled
+            if (curr == target) {
+                break;
+            }
+            // the first flight may leave at the requested time, connecting
+            // flights need the minimum connection time after the previous one lands
+            int ready = curr == origin ? departAfter : ws.arrival(curr) + this.minConnection;
+            int end = net.endFlightFrom(curr);
+            for (int f = net.firstDepartureAtOrAfter(curr, ready); f < end; f++) {
+                // the rest leave even later, so none of them can reach the target
+                // any sooner than it has already been reached
+                if (target >= 0 && net.departureMinute(f) >= ws.arrival(target)) {
+                    break;
+                }
+                if (SearchStats.ENABLED) {
+                    relaxed++;
+                }
+                int next = net.arrivalAirport(f);
+                int arrive = net.arrivalMinute(f);
+                if (ws.isSettled(next) || arrive >= ws.arrival(next)) {
+                    continue;
+                }
+                ws.label(next, arrive, f);
+                queue.insertOrDecrease(next, arrive);
+                if (SearchStats.ENABLED) {
+                    labels++;
+                    peak = Math.max(peak, queue.size());
+                }
+            }
+        }
+        if (SearchStats.ENABLED) {
+            ws.setCounts(relaxed, labels, peak);
+        }
+    }
+
+    /**
+     * Finds the path that arrives the earliest when leaving on a date no earlier
+     * than a time. The path may wait overnight for a connection, and only uses
+     * flights on days the calendar says they run.
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param date: the departure date, which must be in the calendar's period
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param calendar: the days each flight runs, made for this search's network
+     * @return the earliest arriving itinerary, or null if there isn't one within
+     *         ServiceCalendar.MAX_TRIP_DAYS days
+     */
+    public DatedItinerary earliestArrival(String start, String end, LocalDate date,
+        int departAfter, ServiceCalendar calendar) {
+        if (calendar == null || calendar.getNetwork() != this.network) {
+            throw new IllegalArgumentException("Calendar is for another network");
+        }
+        int day = calendar.dayOf(date);
+        if (day < 0 || day >= calendar.days() || departAfter < 0) {
+            throw new IllegalArgumentException("Departure outside the service period");
+        }
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        searchDays(origin, target, day * DAY + departAfter, calendar, ws);
+        if (ws.previous(target) < 0) {
+            return null;
+        }
+        // follow the flights back from the target, working out each one's date
+        // from the day it landed
+        FlightNetwork net = this.network;
+        ArrayList<Flight> flights = new ArrayList<>();
+        ArrayList<LocalDate> dates = new ArrayList<>();
+        int departure = 0;
+        for (int a = target; ws.previous(a) >= 0; a = net.departureAirport(ws.previous(a))) {
+            int f = ws.previous(a);
+            int flightDay = (ws.arrival(a) - net.arrivalMinute(f)) / DAY;
+            flights.add(net.flight(f));
+            dates.add(calendar.getStart().plusDays(flightDay));
+            departure = flightDay * DAY + net.departureMinute(f);
+        }
+        Collections.reverse(flights);
+        Collections.reverse(dates);
+        return new DatedItinerary(flights, dates, departure, ws.arrival(target));
+    }
+
+    /**
+     * Finds the earliest arrival at an airport over several days without building
+     * a path
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAt: the earliest departure in minutes since the calendar's
+     *        period started
+     * @param calendar: the days each flight runs, made for this search's network
+     * @return the arrival in minutes since the period started, or -1 if the target
+     *         can't be reached within ServiceCalendar.MAX_TRIP_DAYS days
+     */
+    public int earliestArrivalMinute(int origin, int target, int departAt,
+        ServiceCalendar calendar) {
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        searchDays(origin, target, departAt, calendar, ws);
+        return ws.previous(target) < 0 ? -1 : ws.arrival(target);
+    }
+
+    /**
+     * Labels airports with their earliest arrival over several days. Times are
+     * minutes since the calendar's period started, and every flight is tried on
+     * each day from the one it's reached on up to the last day of the trip, with
+     * a bit test to skip the days it doesn't run, instead of copying the timetable
+     * once per day.
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id, or -1 to label every airport
+     * @param departAt: the earliest departure in minutes since the period started
+     * @param calendar: the days each flight runs, made for this search's network
+     * @param ws: a freshly reset workspace to hold the labels
+     */
+    public void searchDays(int origin, int target, int departAt, ServiceCalendar calendar,
+        SearchWorkspace ws) {
+        FlightNetwork net = this.network;
+        int lastDay = Math.min(calendar.days() - 1, departAt / DAY + ServiceCalendar.MAX_TRIP_DAYS
+            - 1);
+        IndexedMinHeap queue = ws.queue();
+        ws.label(origin, departAt, -1);
+        queue.insertOrDecrease(origin, departAt);
+        while (!queue.isEmpty()) {
+            int curr = queue.poll();
+            ws.settle(curr);
+            if (curr == target) {
+                break;
+            }
+            int ready = curr == origin ? departAt : ws.arrival(curr) + this.minConnection;
+            int first = net.firstFlightFrom(curr);
+            int end = net.endFlightFrom(curr);
+            int day = ready / DAY;
+            // a flight delayed past midnight still belongs to the day it was
+            // scheduled on, so start as many days back as the longest delay
+            if (end > first) {
+                day = Math.max(0, day - net.departureMinute(end - 1) / DAY);
+            }
+            for (; day <= lastDay; day++) {
+                int base = day * DAY;
+                // nothing leaving on this day or later can reach the target any
+                // sooner than it has already been reached
+                if (target >= 0 && base >= ws.arrival(target)) {
+                    break;
+                }
+                // flights from before the ready time are skipped on the days up to
+                // the one it falls on, and every flight is tried on later days
+                int from = net.firstDepartureAtOrAfter(curr, Math.max(0, ready - base));
+                for (int f = from; f < end; f++) {
+                    // later departures of this day can't beat the target's label,
+                    // but a later day's may if this day's were delayed past midnight
+                    if (target >= 0 && base + net.departureMinute(f) >= ws.arrival(target)) {
+                        break;
+                    }
+                    if (!calendar.runsOn(f, day)) {
+                        continue;
+                    }
+                    int next = net.arrivalAirport(f);
+                    int arrive = base + net.arrivalMinute(f);
+                    if (ws.isSettled(next) || arrive >= ws.arrival(next)) {
+                        continue;
+                    }
+                    ws.label(next, arrive, f);
+                    queue.insertOrDecrease(next, arrive);
+                }
+            }
+        }
+    }
+}
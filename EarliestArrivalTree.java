@@ -0,0 +1,156 @@
+/**
+ * The result of one search from an origin to every airport: the earliest arrival
+ * at each airport when leaving the origin no earlier than a given time, and the
+ * flight used to reach it. Following those flights back from any airport gives its
+ * itinerary, so the whole tree is two int arrays.
+ * @author megangibbons
+ *
+ */
+public class EarliestArrivalTree {
+    private final FlightNetwork network; // the network that was searched
+    private final int origin; // the departure airport id
+    private final int departAfter; // the earliest departure time in minutes after midnight
+    private final int[] arrival; // earliest arrival minute at each airport
+    private final int[] previous; // flight used to reach each airport, or -1
+
+    /**
+     * Copies the labels of a finished one-to-all search out of a workspace
+     * @param network: the network that was searched
+     * @param origin: the departure airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param ws: the workspace holding the search's labels
+     */
+    public EarliestArrivalTree(FlightNetwork network, int origin, int departAfter,
+        SearchWorkspace ws) {
+        int n = network.airportCount();
+        this.network = network;
+        this.origin = origin;
+        this.departAfter = departAfter;
+        this.arrival = new int[n];
+        this.previous = new int[n];
+        for (int a = 0; a < n; a++) {
+            this.arrival[a] = ws.arrival(a);
+            this.previous[a] = ws.previous(a);
+        }
+    }
+
+    /**
+     * Gets the origin of the tree
+     * @return the departure airport id
+     */
+    public int getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Gets the departure time the tree was built for
+     * @return the earliest departure time in minutes after midnight
+     */
+    public int getDepartAfter() {
+        return this.departAfter;
+    }
+
+    /**
+     * Checks whether an airport can be reached from the origin
+     * @param airport: the airport id
+     * @return true if there is an itinerary to the airport
+     */
+    public boolean isReachable(int airport) {
+        return this.previous[airport] >= 0;
+    }
+
+    /**
+     * Gets the earliest arrival at an airport
+     * @param airport: the airport id
+     * @return the arrival minute, or -1 if the airport can't be reached
+     */
+    public int arrivalMinute(int airport) {
+        return isReachable(airport) ? this.arrival[airport] : -1;
+    }
+
+    /**
+     * Gets the last flight of the itinerary to an airport
+     * @param airport: the airport id
+     * @return the flight index, or -1 if the airport can't be reached
+     */
+    public int previousFlight(int airport) {
+        return this.previous[airport];
+    }
+
+    /**
+     * Gets the first flight of the itinerary to an airport
+     * @param airport: the airport id
+     * @return the flight index, or -1 if the airport can't be reached
+     */
+    public int firstFlight(int airport) {
+        int f = this.previous[airport];
+        while (f >= 0 && this.previous[this.network.departureAirport(f)] >= 0) {
+            f = this.previous[this.network.departureAirport(f)];
+        }
+        return f;
+    }
+
+    /**
+     * Adds up the total time of the itinerary to an airport, the same way a Path
+     * does: every flight's duration plus every layover
+     * @param airport: the airport id
+     * @return the total time in minutes, or -1 if the airport can't be reached
+     */
+    public int totalTime(int airport) {
+        int f = this.previous[airport];
+        if (f < 0) {
+            return -1;
+        }
+        int total = 0;
+        while (f >= 0) {
+            total += this.network.duration(f);
+            int before = this.previous[this.network.departureAirport(f)];
+            if (before >= 0) {
+                total += this.network.departureMinute(f) - this.network.arrivalMinute(before);
+            }
+            f = before;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of airports that can be reached from the origin
+     * @return the number of reachable airports
+     */
+    public int reachableCount() {
+        int count = 0;
+        for (int f : this.previous) {
+            if (f >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds the itinerary to an airport
+     * @param airport: the airport id
+     * @return the path to the airport, or null if it can't be reached
+     */
+    public Path pathTo(int airport) {
+        int f = this.previous[airport];
+        if (f < 0) {
+            return null;
+        }
+        // find the first flight, then extend the path forward from it
+        int legs = 0;
+        for (int g = f; g >= 0; g = this.previous[this.network.departureAirport(g)]) {
+            legs++;
+        }
+        int[] chain = new int[legs];
+        for (int i = legs - 1; i >= 0; i--) {
+            chain[i] = f;
+            f = this.previous[this.network.departureAirport(f)];
+        }
+        Path path = new Path(this.network.flight(chain[0]));
+        for (int i = 1; i < legs; i++) {
+            path = new Path(path, this.network.flight(chain[i]));
+        }
+        return path;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * The fastest itinerary from one origin to every airport over every departure time
+ * of the day. For each airport it keeps the least total time, the departure time
+ * whose search found it, and its first flight. The full path is only built when
+ * asked for, by repeating that one search with the airport as its target.
+ * @author megangibbons
+ *
+ */
+public class FastestItineraries {
+    private final EarliestArrivalSearch search; // the engine that found the itineraries
+    private final int origin; // the departure airport id
+    private final int[] totalTime; // least total time to each airport, or -1
+    private final int[] departure; // departure time whose search found each itinerary
+    private final int[] firstFlight; // first flight of each itinerary, or -1
+    private final int searches; // one-to-all searches run to find the itineraries
+
+    /**
+     * Creates the table of fastest itineraries from an origin
+     * @param search: the engine that found the itineraries
+     * @param origin: the departure airport id
+     * @param totalTime: least total time to each airport, or -1
+     * @param departure: departure time whose search found each itinerary
+     * @param firstFlight: first flight of each itinerary, or -1
+     * @param searches: one-to-all searches run to find the itineraries
+     */
+    public FastestItineraries(EarliestArrivalSearch search, int origin, int[] totalTime,
+        int[] departure, int[] firstFlight, int searches) {
+        this.search = search;
+        this.origin = origin;
+        this.totalTime = totalTime;
+        this.departure = departure;
+        this.firstFlight = firstFlight;
+        this.searches = searches;
+    }
+
+    /**
+     * Gets the origin of the itineraries
+     * @return the departure airport id
+     */
+    public int getOrigin() {
+        return this.origin;
+    }
+
+    /**
+     * Gets the number of one-to-all searches run to find the itineraries, one for
+     * each distinct departure time from the origin
+     * @return the number of searches
+     */
+    public int searchCount() {
+        return this.searches;
+    }
+
+    /**
+     * Gets the least total time to an airport
+     * @param airport: the airport id
+     * @return the total time in minutes, or -1 if the airport can't be reached
+     */
+    public int totalTime(int airport) {
+        return this.totalTime[airport];
+    }
+
+    /**
+     * Gets the departure time whose search found the fastest itinerary to an airport
+     * @param airport: the airport id
+     * @return the departure time in minutes after midnight, or 0 if the airport
+     *         can't be reached
+     */
+    public int departure(int airport) {
+        return this.departure[airport];
+    }
+
+    /**
+     * Gets the first flight of the fastest itinerary to an airport
+     * @param airport: the airport id
+     * @return the flight index, or -1 if the airport can't be reached
+     */
+    public int firstFlight(int airport) {
+        return this.firstFlight[airport];
+    }
+
+    /**
+     * Builds the fastest itinerary to an airport, which runs one more search if the
+     * airport can be reached
+     * @param airport: the airport id
+     * @return the path to the airport, or null if it can't be reached
+     */
+    public Path pathTo(int airport) {
+        if (this.totalTime[airport] < 0) {
+            return null;
+        }
+        FlightNetwork network = this.search.getNetwork();
+        SearchWorkspace ws = SearchWorkspace.get(network.airportCount());
+        this.search.search(this.origin, airport, this.departure[airport], ws);
+        return ws.buildPath(network, airport);
+    }
+}
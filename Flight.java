@@ -5,12 +5,13 @@
  *
  */
 public class Flight {
-    private int flightID; // unique flight ID
-    private Airport departure; // airport object from which the flight leaves
-    private Airport arrival; // airport object to which the flight arrives
-    private int flightDuration; // total flight time in minutes
-    private String departureTime; // local time the flight departs
-    private String arrivalTime; // local time the flight arrives
+    // the fields are final so a flight can be shared between query threads safely
+    private final int flightID; // unique flight ID
+    private final Airport departure; // airport object from which the flight leaves
+    private final Airport arrival; // airport object to which the flight arrives
+    private final int flightDuration; // total flight time in minutes
+    private final int departureMinute; // local departure time in minutes after midnight
+    private final int arrivalMinute; // local arrival time in minutes after the departure midnight
     
     /**
      * Creates a Flight object
@@ -23,16 +24,69 @@ public class Flight {
      */
     public Flight(int id, Airport departure, Airport arrival, int duration, String departureTime,
         String arrivalTime) {
+        // parse the times once so searches can compare them as plain integers
+        this(id, departure, arrival, duration, toMinutes(departureTime), toMinutes(arrivalTime));
+    }
+
+    /**
+     * Creates a Flight object from times that are already in minutes after midnight
+     * @param id: internal flight ID
+     * @param departure: departure airport
+     * @param arrival: arrival airport
+     * @param duration: total flight time in minutes
+     * @param departureMinute: minute the flight departs
+     * @param arrivalMinute: minute the flight arrives
+     */
+    public Flight(int id, Airport departure, Airport arrival, int duration, int departureMinute,
+        int arrivalMinute) {
         // throw an exception if the inputs are invalid
-        if (departure == null || arrival == null || departureTime == null || arrivalTime == null) {
+        if (departure == null || arrival == null || departureMinute < 0 || arrivalMinute < 0) {
             throw new IllegalArgumentException();
         }
         this.flightID = id;
         this.departure = departure;
         this.arrival = arrival;
         this.flightDuration = duration;
-        this.departureTime = departureTime;
-        this.arrivalTime = arrivalTime;
+        this.departureMinute = departureMinute;
+        // an arrival earlier than the departure lands the next day
+        this.arrivalMinute = arrivalMinute < departureMinute ? arrivalMinute + 24 * 60
+            : arrivalMinute;
+    }
+
+    /**
+     * Converts a "H:MM" or "H:MM+1" time into the number of minutes after midnight
+     * @param time: the time to convert
+     * @return the minutes after midnight
+     */
+    public static int toMinutes(String time) {
+        // throw an exception if the input is invalid
+        if (time == null) {
+            throw new IllegalArgumentException();
+        }
+        int colon = time.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid time: " + time);
+        }
+        // a "+1" suffix is a time on the next day, as formatMinutes writes it
+        int plus = time.indexOf('+', colon);
+        int end = plus < 0 ? time.length() : plus;
+        int days = plus < 0 ? 0 : Integer.parseInt(time.substring(plus + 1).trim());
+        int hour = Integer.parseInt(time.substring(0, colon).trim());
+        int minute = Integer.parseInt(time.substring(colon + 1, end).trim());
+        return (days * 24 + hour) * 60 + minute;
+    }
+
+    /**
+     * Converts minutes after midnight back into a "H:MM" time, with "+1" after
+     * times on the next day and so on
+     * @param minutes: the minutes after midnight
+     * @return the formatted time
+     */
+    public static String formatMinutes(int minutes) {
+        int days = minutes / (24 * 60);
+        int time = minutes - days * 24 * 60;
+        int minute = time % 60;
+        return (time / 60) + (minute < 10 ? ":0" : ":") + minute + (days > 0 ? "+" + days : "");
     }
 
     /**
@@ -72,7 +126,7 @@ public class Flight {
      * @return the flight's departure time
      */
     public String getDepartureTime() {
-        return this.departureTime;
+        return formatMinutes(this.departureMinute);
     }
 
     /**
@@ -80,7 +134,23 @@ public class Flight {
      * @return the flight's arrival time
      */
     public String getArrivalTime() {
-        return this.arrivalTime;
+        return formatMinutes(this.arrivalMinute);
+    }
+
+    /**
+     * Gets the flight's departure time in minutes after midnight
+     * @return the flight's departure minute
+     */
+    public int getDepartureMinute() {
+        return this.departureMinute;
+    }
+
+    /**
+     * Gets the flight's arrival time in minutes after midnight
+     * @return the flight's arrival minute
+     */
+    public int getArrivalMinute() {
+        return this.arrivalMinute;
     }
 
     /**
@@ -90,7 +160,7 @@ public class Flight {
     @Override
     public String toString() {
         return "Flight " + this.flightID + " departs from " + this.departure.getAcronym() + " at "
-            + this.departureTime + " and arrives in " + this.arrival.getAcronym() + " at "
-            + arrivalTime;
+            + getDepartureTime() + " and arrives in " + this.arrival.getAcronym() + " at "
+            + getArrivalTime();
     }
 }
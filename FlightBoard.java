@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The departures or arrivals of one airport in a time range, like an airport's
+ * display board. A board is found with a binary search over the network's
+ * departure or arrival index, so it costs O(log n) to make however many flights
+ * the airport has, and its flights are read one at a time instead of being
+ * copied into a list. Boards can be read in pages, where the cursor of a page is
+ * the position of its first flight on the board.
+ * @author megangibbons
+ *
+ */
+public class FlightBoard implements Iterable<Flight> {
+    private final FlightNetwork network; // the network the board reads from
+    private final boolean arrivals; // whether this is an arrivals board
+    private final int start; // index or arrival position of the board's first flight
+    private final int end; // one past the index or arrival position of the last flight
+
+    /**
+     * Creates a board over a range of the network's departure or arrival index
+     * @param network: the network the board reads from
+     * @param arrivals: whether the range is of arrival positions
+     * @param start: the first position of the range
+     * @param end: one past the last position of the range
+     */
+    private FlightBoard(FlightNetwork network, boolean arrivals, int start, int end) {
+        this.network = network;
+        this.arrivals = arrivals;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Makes the board of flights leaving an airport in a time range
+     * @param network: the network to read from
+     * @param airport: the acronym of the departure airport
+     * @param after: the earliest departure time in minutes after midnight
+     * @param before: the latest departure time in minutes after midnight
+     * @return the board in departure order, or null if the airport isn't in the
+     *         network
+     */
+    public static FlightBoard departures(FlightNetwork network, String airport, int after,
+        int before) {
+        int a = network.airportId(airport);
+        if (a < 0) {
+            return null;
+        }
+        int start = network.firstDepartureAtOrAfter(a, after);
+        // the range ends at the first flight leaving after the latest time
+        int end = before == Integer.MAX_VALUE ? network.endFlightFrom(a)
+            : network.firstDepartureAtOrAfter(a, before + 1);
+        return new FlightBoard(network, false, start, Math.max(start, end));
+    }
+
+    /**
+     * Makes the board of flights landing at an airport in a time range
+     * @param network: the network to read from
+     * @param airport: the acronym of the arrival airport
+     * @param after: the earliest arrival time in minutes after midnight
+     * @param before: the latest arrival time in minutes after midnight
+     * @return the board in arrival order, or null if the airport isn't in the
+     *         network
+     */
+    public static FlightBoard arrivals(FlightNetwork network, String airport, int after,
+        int before) {
+        int a = network.airportId(airport);
+        if (a < 0) {
+            return null;
+        }
+        int start = network.firstArrivalAtOrAfter(a, after);
+        int end = before == Integer.MAX_VALUE ? network.endArrivalTo(a)
+            : network.firstArrivalAtOrAfter(a, before + 1);
+        return new FlightBoard(network, true, start, Math.max(start, end));
+    }
+
+    /**
+     * Gets the number of flights on the board
+     * @return the number of flights
+     */
+    public int size() {
+        return this.end - this.start;
+    }
+
+    /**
+     * Gets the network index of a flight on the board
+     * @param i: the flight's place on the board, from 0 to size() - 1
+     * @return the flight index
+     */
+    public int flightIndex(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return this.arrivals ? this.network.arrivalAt(this.start + i) : this.start + i;
+    }
+
+    /**
+     * Gets a flight on the board
+     * @param i: the flight's place on the board, from 0 to size() - 1
+     * @return the flight
+     */
+    public Flight flight(int i) {
+        return this.network.flight(flightIndex(i));
+    }
+
+    /**
+     * Gets one page of the board
+     * @param cursor: the place of the page's first flight, 0 for the first page
+     * @param limit: the most flights on the page
+     * @return the page's flights
+     */
+    public List<Flight> page(int cursor, int limit) {
+        if (cursor < 0 || limit < 1) {
+            throw new IllegalArgumentException();
+        }
+        int last = (int) Math.min(size(), (long) cursor + limit);
+        ArrayList<Flight> page = new ArrayList<>(Math.max(0, last - cursor));
+        for (int i = cursor; i < last; i++) {
+            page.add(flight(i));
+        }
+        return page;
+    }
+
+    /**
+     * Gets the cursor of the page after a page
+     * @param cursor: the cursor of the page
+     * @param limit: the most flights on a page
+     * @return the next page's cursor, or -1 if the page is the last one
+     */
+    public int nextCursor(int cursor, int limit) {
+        long next = (long) cursor + limit;
+        return next >= size() ? -1 : (int) next;
+    }
+
+    /**
+     * Reads the board's flights in order
+     * @return an iterator over the flights
+     */
+    @Override
+    public Iterator<Flight> iterator() {
+        return new Iterator<Flight>() {
+            private int next = 0; // place of the next flight to read
+
+            @Override
+            public boolean hasNext() {
+                return this.next < size();
+            }
+
+            @Override
+            public Flight next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return flight(this.next++);
+            }
+        };
+    }
+
+    /**
+     * Writes every flight on the board, one per line. The writer isn't flushed, so
+     * a buffered writer turns the board into a few large writes.
+     * @param out: where the flights are written
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < size(); i++) {
+            out.write(flight(i).toString());
+            out.write(System.lineSeparator());
+        }
+    }
+}
@@ -0,0 +1,773 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable, compiled copy of the timetable. Airports are numbered 0 to n - 1 in
+ * order of their acronym, and flights are stored as parallel int arrays grouped by
+ * departure airport (compressed sparse row layout), so the flights leaving an
+ * airport are one contiguous range of every array, sorted by departure time. The
+ * Airport and Flight objects are kept only so results can be shown to the user.
+ * @author megangibbons
+ *
+ */
+public class FlightNetwork {
+    // minutes needed between landing and taking off again, so a connecting flight
+    // has to leave after the previous one lands
+    public static final int MIN_CONNECTION_MINUTES = 1;
+    // source of generation numbers, so later networks always have larger ones
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final String[] acronyms; // acronym of each airport, indexed by airport id
+    private final Airport[] airports; // airport object of each airport id
+    private final HashMap<String, Integer> ids; // airport id of each acronym
+    private final int[] firstFlight; // flights leaving airport a are firstFlight[a] to firstFlight[a + 1] - 1
+    private final int[] flightId; // the flight's ID from the timetable
+    private final int[] depAirport; // departure airport id of each flight
+    private final int[] arrAirport; // arrival airport id of each flight
+    private final int[] depMinute; // departure time of each flight in minutes after midnight
+    private final int[] arrMinute; // arrival time of each flight in minutes after midnight
+    private final int[] duration; // flight time of each flight in minutes
+    private final Flight[] flights; // flight objects, created the first time each is asked for
+    private volatile ArrivalIndex arrivals; // flights by arrival airport, built the first time it's asked for
+    private volatile int[] idOrder; // flight indexes in order of flight ID, built the first time it's asked for
+    private final long generation = GENERATIONS.incrementAndGet(); // when the network was made, relative to other networks
+
+    /**
+     * The flights grouped by arrival airport, the reverse of the departure ranges.
+     * Only arrival boards need it, so it's built the first time one is asked for
+     * instead of with every network.
+     * @author megangibbons
+     *
+     */
+    private static final class ArrivalIndex {
+        private final int[] firstArrival; // flights landing at airport a are order[firstArrival[a]] to order[firstArrival[a + 1] - 1]
+        private final int[] order; // flight indexes grouped by arrival airport, sorted by arrival time
+        private final int[] minute; // arrival minute of each position of order
+
+        /**
+         * Groups a network's flights by arrival airport
+         * @param network: the network to index
+         */
+        private ArrivalIndex(FlightNetwork network) {
+            int n = network.airports.length;
+            int m = network.flightId.length;
+            this.firstArrival = new int[n + 1];
+            for (int f = 0; f < m; f++) {
+                this.firstArrival[network.arrAirport[f] + 1]++;
+            }
+            for (int a = 0; a < n; a++) {
+                this.firstArrival[a + 1] += this.firstArrival[a];
+            }
+            this.order = new int[m];
+            int[] next = Arrays.copyOf(this.firstArrival, n);
+            for (int f = 0; f < m; f++) {
+                this.order[next[network.arrAirport[f]]++] = f;
+            }
+            for (int a = 0; a < n; a++) {
+                sortByMinute(this.order, this.firstArrival[a], this.firstArrival[a + 1],
+                    network.arrMinute);
+            }
+            this.minute = new int[m];
+            for (int i = 0; i < m; i++) {
+                this.minute[i] = network.arrMinute[this.order[i]];
+            }
+        }
+    }
+
+    /**
+     * Creates a network from airport objects and parallel flight arrays. The flight
+     * arrays are copied into departure airport order, so the caller keeps its own.
+     * @param airports: the airports, indexed by airport id and sorted by acronym
+     * @param flightId: the timetable ID of each flight
+     * @param depAirport: departure airport id of each flight
+     * @param arrAirport: arrival airport id of each flight
+     * @param depMinute: departure minute of each flight
+     * @param arrMinute: arrival minute of each flight
+     * @param duration: flight time of each flight in minutes
+     * @param flightObjects: existing flight objects to reuse, or null to create them as needed
+     */
+    public FlightNetwork(Airport[] airports, int[] flightId, int[] depAirport, int[] arrAirport,
+        int[] depMinute, int[] arrMinute, int[] duration, Flight[] flightObjects) {
+        int n = airports.length;
+        int m = flightId.length;
+        if (depAirport.length != m || arrAirport.length != m || depMinute.length != m
+            || arrMinute.length != m || duration.length != m
+            || (flightObjects != null && flightObjects.length != m)) {
+            throw new IllegalArgumentException("Flight arrays have different lengths");
+        }
+        this.airports = airports.clone();
+        this.acronyms = new String[n];
+        this.ids = new HashMap<>();
+        for (int a = 0; a < n; a++) {
+            this.acronyms[a] = airports[a].getAcronym();
+            this.ids.put(this.acronyms[a], a);
+        }
+        // count the flights leaving each airport, then turn the counts into offsets
+        this.firstFlight = new int[n + 1];
+        for (int f = 0; f < m; f++) {
+            if (depAirport[f] < 0 || depAirport[f] >= n || arrAirport[f] < 0
+                || arrAirport[f] >= n) {
+                throw new IllegalArgumentException("Unknown airport for flight " + flightId[f]);
+            }
+            this.firstFlight[depAirport[f] + 1]++;
+        }
+        for (int a = 0; a < n; a++) {
+            this.firstFlight[a + 1] += this.firstFlight[a];
+        }
+        // place each flight in its departure airport's range, keeping timetable order
+        int[] order = new int[m];
+        int[] next = Arrays.copyOf(this.firstFlight, n);
+        for (int f = 0; f < m; f++) {
+            order[next[depAirport[f]]++] = f;
+        }
+        // then sort each range by departure time so departures can be binary searched
+        for (int a = 0; a < n; a++) {
+            sortByMinute(order, this.firstFlight[a], this.firstFlight[a + 1], depMinute);
+        }
+        this.flightId = new int[m];
+        this.depAirport = new int[m];
+        this.arrAirport = new int[m];
+        this.depMinute = new int[m];
+        this.arrMinute = new int[m];
+        this.duration = new int[m];
+        this.flights = new Flight[m];
+        for (int i = 0; i < m; i++) {
+            int f = order[i];
+            this.flightId[i] = flightId[f];
+            this.depAirport[i] = depAirport[f];
+            this.arrAirport[i] = arrAirport[f];
+            this.depMinute[i] = depMinute[f];
+            this.arrMinute[i] = arrMinute[f];
+            this.duration[i] = duration[f];
+            if (flightObjects != null) {
+                this.flights[i] = flightObjects[f];
+            }
+        }
+    }
+
+    /**
+     * Creates a network from arrays that are already in compiled order, such as
+     * ones read back from a snapshot. The arrays are used as they are, not copied.
+     * @param airports: the airports, indexed by airport id and sorted by acronym
+     * @param firstFlight: the offset of each airport's departures, plus the flight count
+     * @param flightId: the timetable ID of each flight
+     * @param depAirport: departure airport id of each flight
+     * @param arrAirport: arrival airport id of each flight
+     * @param depMinute: departure minute of each flight
+     * @param arrMinute: arrival minute of each flight
+     * @param duration: flight time of each flight in minutes
+     */
+    private FlightNetwork(Airport[] airports, int[] firstFlight, int[] flightId, int[] depAirport,
+        int[] arrAirport, int[] depMinute, int[] arrMinute, int[] duration) {
+        int n = airports.length;
+        this.airports = airports;
+        this.acronyms = new String[n];
+        this.ids = new HashMap<>();
+        for (int a = 0; a < n; a++) {
+            this.acronyms[a] = airports[a].getAcronym();
+            this.ids.put(this.acronyms[a], a);
+        }
+        this.firstFlight = firstFlight;
+        this.flightId = flightId;
+        this.depAirport = depAirport;
+        this.arrAirport = arrAirport;
+        this.depMinute = depMinute;
+        this.arrMinute = arrMinute;
+        this.duration = duration;
+        this.flights = new Flight[flightId.length];
+    }
+
+    /**
+     * Creates a network with the same airports as another network, sharing its
+     * airport tables instead of building them again
+     * @param base: the network whose airports are shared
+     * @param firstFlight: the offset of each airport's departures, plus the flight count
+     * @param flightId: the timetable ID of each flight
+     * @param depAirport: departure airport id of each flight
+     * @param arrAirport: arrival airport id of each flight
+     * @param depMinute: departure minute of each flight
+     * @param arrMinute: arrival minute of each flight
+     * @param duration: flight time of each flight in minutes
+     * @param flights: flight objects carried over, null where not created yet
+     */
+    private FlightNetwork(FlightNetwork base, int[] firstFlight, int[] flightId, int[] depAirport,
+        int[] arrAirport, int[] depMinute, int[] arrMinute, int[] duration, Flight[] flights) {
+        this.airports = base.airports;
+        this.acronyms = base.acronyms;
+        this.ids = base.ids;
+        this.firstFlight = firstFlight;
+        this.flightId = flightId;
+        this.depAirport = depAirport;
+        this.arrAirport = arrAirport;
+        this.depMinute = depMinute;
+        this.arrMinute = arrMinute;
+        this.duration = duration;
+        this.flights = flights;
+    }
+
+    /**
+     * Wraps arrays that are already in compiled order in a network without sorting
+     * them again. The offsets are checked, but the departure order isn't.
+     * @param airports: the airports, indexed by airport id and sorted by acronym
+     * @param firstFlight: the offset of each airport's departures, plus the flight count
+     * @param flightId: the timetable ID of each flight
+     * @param depAirport: departure airport id of each flight
+     * @param arrAirport: arrival airport id of each flight
+     * @param depMinute: departure minute of each flight
+     * @param arrMinute: arrival minute of each flight
+     * @param duration: flight time of each flight in minutes
+     * @return the network
+     */
+    public static FlightNetwork fromCompiled(Airport[] airports, int[] firstFlight, int[] flightId,
+        int[] depAirport, int[] arrAirport, int[] depMinute, int[] arrMinute, int[] duration) {
+        int n = airports.length;
+        int m = flightId.length;
+        if (firstFlight.length != n + 1 || firstFlight[0] != 0 || firstFlight[n] != m
+            || depAirport.length != m || arrAirport.length != m || depMinute.length != m
+            || arrMinute.length != m || duration.length != m) {
+            throw new IllegalArgumentException("Compiled arrays don't fit together");
+        }
+        for (int a = 0; a < n; a++) {
+            if (firstFlight[a] > firstFlight[a + 1]) {
+                throw new IllegalArgumentException("Departure offsets aren't increasing");
+            }
+        }
+        return new FlightNetwork(airports, firstFlight, flightId, depAirport, arrAirport,
+            depMinute, arrMinute, duration);
+    }
+
+    /**
+     * Compiles the airports and flights loaded from the .csv files into a network
+     * @param airports: the airports keyed by their acronym
+     * @param flights: every direct flight
+     * @return the compiled network
+     */
+    public static FlightNetwork compile(Hashtable<String, Airport> airports, List<Flight> flights) {
+        if (airports == null || flights == null) {
+            throw new IllegalArgumentException();
+        }
+        // number the airports in acronym order so the ids don't depend on hashing
+        String[] acronyms = airports.keySet().toArray(new String[0]);
+        Arrays.sort(acronyms);
+        Airport[] byId = new Airport[acronyms.length];
+        HashMap<Airport, Integer> ids = new HashMap<>();
+        for (int a = 0; a < acronyms.length; a++) {
+            byId[a] = airports.get(acronyms[a]);
+            ids.put(byId[a], a);
+        }
+        int m = flights.size();
+        int[] flightId = new int[m];
+        int[] depAirport = new int[m];
+        int[] arrAirport = new int[m];
+        int[] depMinute = new int[m];
+        int[] arrMinute = new int[m];
+        int[] duration = new int[m];
+        Flight[] objects = new Flight[m];
+        int i = 0;
+        for (Flight f : flights) {
+            flightId[i] = f.getID();
+            depAirport[i] = ids.get(f.getDepartureAirport());
+            arrAirport[i] = ids.get(f.getArrivalAirport());
+            depMinute[i] = f.getDepartureMinute();
+            arrMinute[i] = f.getArrivalMinute();
+            duration[i] = f.getFlightDuration();
+            objects[i] = f;
+            i++;
+        }
+        return new FlightNetwork(byId, flightId, depAirport, arrAirport, depMinute, arrMinute,
+            duration, objects);
+    }
+
+    /**
+     * Makes a new network with a batch of delays, cancellations and added flights
+     * applied. This network isn't changed. The departure ranges of airports the
+     * batch doesn't touch are copied over as they are, with their flight objects,
+     * and only the touched airports' ranges are sorted again.
+     * @param update: the changes to apply
+     * @return the new network
+     * @throws IllegalArgumentException if the batch refers to an unknown flight or
+     *         airport, adds a flight ID that's taken, or delays a flight before
+     *         midnight
+     */
+    public FlightNetwork withUpdate(TimetableUpdate update) {
+        int n = this.airports.length;
+        int m = this.flightId.length;
+        // find the changed flights and the airports they leave from, checking the
+        // whole batch before building anything
+        HashSet<Integer> changed = update.changedFlights();
+        List<TimetableUpdate.AddedFlight> added = update.addedFlights();
+        HashSet<Integer> addedIds = new HashSet<>();
+        for (TimetableUpdate.AddedFlight flight : added) {
+            // an added flight can reuse the ID of a flight cancelled in the same batch
+            if (!addedIds.add(flight.flightId) || (update.changes(flight.flightId)
+                && !update.isCancelled(flight.flightId))) {
+                throw new IllegalArgumentException("Flight " + flight.flightId
+                    + " already exists");
+            }
+        }
+        // look the IDs up in sorted arrays so scanning the flights doesn't box them
+        int[] changedIds = sortedIds(changed);
+        int[] newIds = sortedIds(addedIds);
+        HashSet<Integer> found = new HashSet<>();
+        boolean[] touched = new boolean[n];
+        int[] count = new int[n];
+        for (int f = 0; f < m; f++) {
+            int id = this.flightId[f];
+            int a = this.depAirport[f];
+            count[a]++;
+            if (Arrays.binarySearch(newIds, id) >= 0 && !update.isCancelled(id)) {
+                throw new IllegalArgumentException("Flight " + id + " already exists");
+            }
+            if (Arrays.binarySearch(changedIds, id) >= 0) {
+                found.add(id);
+                touched[a] = true;
+                if (update.isCancelled(id)) {
+                    count[a]--;
+                } else {
+                    if (this.depMinute[f] + update.delayOf(id) < 0) {
+                        throw new IllegalArgumentException("Flight " + id
+                            + " can't leave before midnight");
+                    }
+                }
+            }
+        }
+        for (Integer id : changed) {
+            if (!found.contains(id)) {
+                throw new IllegalArgumentException("Unknown flight " + id);
+            }
+        }
+        int[] addedFrom = new int[added.size()];
+        int[] addedTo = new int[added.size()];
+        for (int i = 0; i < added.size(); i++) {
+            TimetableUpdate.AddedFlight flight = added.get(i);
+            addedFrom[i] = airportId(flight.departure);
+            addedTo[i] = airportId(flight.arrival);
+            if (addedFrom[i] < 0 || addedTo[i] < 0) {
+                throw new IllegalArgumentException("Unknown airport for flight "
+                    + flight.flightId);
+            }
+            touched[addedFrom[i]] = true;
+            count[addedFrom[i]]++;
+        }
+        int[] first = new int[n + 1];
+        for (int a = 0; a < n; a++) {
+            first[a + 1] = first[a] + count[a];
+        }
+        int total = first[n];
+        int[] flightId = new int[total];
+        int[] depAirport = new int[total];
+        int[] arrAirport = new int[total];
+        int[] depMinute = new int[total];
+        int[] arrMinute = new int[total];
+        int[] duration = new int[total];
+        Flight[] flights = new Flight[total];
+        // flights added at each touched airport, listed in batch order
+        int[] addedNext = new int[added.size()];
+        int[] addedHead = new int[n];
+        Arrays.fill(addedHead, -1);
+        for (int i = added.size() - 1; i >= 0; i--) {
+            addedNext[i] = addedHead[addedFrom[i]];
+            addedHead[addedFrom[i]] = i;
+        }
+        for (int a = 0; a < n; a++) {
+            int from = this.firstFlight[a];
+            int to = this.firstFlight[a + 1];
+            int at = first[a];
+            if (!touched[a]) {
+                // untouched airports keep their sorted range as it is
+                System.arraycopy(this.flightId, from, flightId, at, to - from);
+                System.arraycopy(this.depAirport, from, depAirport, at, to - from);
+                System.arraycopy(this.arrAirport, from, arrAirport, at, to - from);
+                System.arraycopy(this.depMinute, from, depMinute, at, to - from);
+                System.arraycopy(this.arrMinute, from, arrMinute, at, to - from);
+                System.arraycopy(this.duration, from, duration, at, to - from);
+                System.arraycopy(this.flights, from, flights, at, to - from);
+                continue;
+            }
+            // write the surviving and added flights, then sort the range again
+            for (int f = from; f < to; f++) {
+                int id = this.flightId[f];
+                if (update.isCancelled(id)) {
+                    continue;
+                }
+                int delay = update.delayOf(id);
+                flightId[at] = id;
+                depAirport[at] = a;
+                arrAirport[at] = this.arrAirport[f];
+                depMinute[at] = this.depMinute[f] + delay;
+                arrMinute[at] = this.arrMinute[f] + delay;
+                duration[at] = this.duration[f];
+                // a delayed flight gets a new flight object with its new times
+                flights[at] = delay == 0 ? this.flights[f] : null;
+                at++;
+            }
+            for (int i = addedHead[a]; i >= 0; i = addedNext[i]) {
+                TimetableUpdate.AddedFlight flight = added.get(i);
+                flightId[at] = flight.flightId;
+                depAirport[at] = a;
+                arrAirport[at] = addedTo[i];
+                depMinute[at] = flight.departureMinute;
+                arrMinute[at] = flight.arrivalMinute;
+                duration[at] = flight.duration;
+                at++;
+            }
+            int[] order = new int[at - first[a]];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = first[a] + i;
+            }
+            sortByMinute(order, 0, order.length, depMinute);
+            permute(order, first[a], flightId, depAirport, arrAirport, depMinute, arrMinute,
+                duration);
+            Flight[] objects = new Flight[order.length];
+            for (int i = 0; i < order.length; i++) {
+                objects[i] = flights[order[i]];
+            }
+            System.arraycopy(objects, 0, flights, first[a], order.length);
+        }
+        return new FlightNetwork(this, first, flightId, depAirport, arrAirport, depMinute,
+            arrMinute, duration, flights);
+    }
+
+    /**
+     * Gets the network's generation number. A network made later, such as one
+     * with an update applied, always has a larger number.
+     * @return the generation number
+     */
+    public long generation() {
+        return this.generation;
+    }
+
+    /**
+     * Gets the number of airports in the network
+     * @return the number of airports
+     */
+    public int airportCount() {
+        return this.airports.length;
+    }
+
+    /**
+     * Gets the number of flights in the network
+     * @return the number of flights
+     */
+    public int flightCount() {
+        return this.flightId.length;
+    }
+
+    /**
+     * Looks up the id of an airport
+     * @param acronym: the airport's three letter acronym
+     * @return the airport id, or -1 if the airport isn't in the network
+     */
+    public int airportId(String acronym) {
+        Integer id = this.ids.get(acronym);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the acronym of an airport
+     * @param airport: the airport id
+     * @return the airport's acronym
+     */
+    public String acronym(int airport) {
+        return this.acronyms[airport];
+    }
+
+    /**
+     * Gets the airport object of an airport id
+     * @param airport: the airport id
+     * @return the airport object
+     */
+    public Airport airport(int airport) {
+        return this.airports[airport];
+    }
+
+    /**
+     * Gets the first flight leaving an airport
+     * @param airport: the airport id
+     * @return index of the airport's first departing flight
+     */
+    public int firstFlightFrom(int airport) {
+        return this.firstFlight[airport];
+    }
+
+    /**
+     * Gets the end of the range of flights leaving an airport
+     * @param airport: the airport id
+     * @return one past the index of the airport's last departing flight
+     */
+    public int endFlightFrom(int airport) {
+        return this.firstFlight[airport + 1];
+    }
+
+    /**
+     * Finds the first flight leaving an airport at or after a time with a binary
+     * search, so only the flights from there to the end of the airport's range
+     * need to be looked at
+     * @param airport: the airport id
+     * @param minute: the time in minutes after midnight
+     * @return index of the first departing flight at or after the time, or
+     *         endFlightFrom(airport) if there isn't one
+     */
+    public int firstDepartureAtOrAfter(int airport, int minute) {
+        int low = this.firstFlight[airport];
+        int high = this.firstFlight[airport + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.depMinute[mid] < minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the first position of an airport's arrivals. Arrival positions number
+     * the flights grouped by arrival airport and sorted by arrival time; use
+     * arrivalAt to turn one into a flight index.
+     * @param airport: the airport id
+     * @return the position of the airport's first arriving flight
+     */
+    public int firstArrivalTo(int airport) {
+        return arrivals().firstArrival[airport];
+    }
+
+    /**
+     * Gets the end of the range of arrival positions of an airport
+     * @param airport: the airport id
+     * @return one past the position of the airport's last arriving flight
+     */
+    public int endArrivalTo(int airport) {
+        return arrivals().firstArrival[airport + 1];
+    }
+
+    /**
+     * Finds the first flight landing at an airport at or after a time with a binary
+     * search
+     * @param airport: the airport id
+     * @param minute: the time in minutes after midnight
+     * @return the arrival position of the first flight landing at or after the time,
+     *         or endArrivalTo(airport) if there isn't one
+     */
+    public int firstArrivalAtOrAfter(int airport, int minute) {
+        ArrivalIndex index = arrivals();
+        int low = index.firstArrival[airport];
+        int high = index.firstArrival[airport + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index.minute[mid] < minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the flight at an arrival position
+     * @param position: the arrival position
+     * @return the flight index
+     */
+    public int arrivalAt(int position) {
+        return arrivals().order[position];
+    }
+
+    /**
+     * Gets the arrivals index, building it the first time it's asked for
+     * @return the arrivals index
+     */
+    private ArrivalIndex arrivals() {
+        ArrivalIndex index = this.arrivals;
+        // threads racing here may each build an index, and any of them will do
+        if (index == null) {
+            index = new ArrivalIndex(this);
+            this.arrivals = index;
+        }
+        return index;
+    }
+
+    /**
+     * Gets a flight's ID from the timetable
+     * @param flight: the flight index
+     * @return the flight's timetable ID
+     */
+    public int flightId(int flight) {
+        return this.flightId[flight];
+    }
+
+    /**
+     * Gets a flight's departure airport
+     * @param flight: the flight index
+     * @return the departure airport id
+     */
+    public int departureAirport(int flight) {
+        return this.depAirport[flight];
+    }
+
+    /**
+     * Gets a flight's arrival airport
+     * @param flight: the flight index
+     * @return the arrival airport id
+     */
+    public int arrivalAirport(int flight) {
+        return this.arrAirport[flight];
+    }
+
+    /**
+     * Gets a flight's departure time
+     * @param flight: the flight index
+     * @return the departure time in minutes after midnight
+     */
+    public int departureMinute(int flight) {
+        return this.depMinute[flight];
+    }
+
+    /**
+     * Gets a flight's arrival time
+     * @param flight: the flight index
+     * @return the arrival time in minutes after midnight
+     */
+    public int arrivalMinute(int flight) {
+        return this.arrMinute[flight];
+    }
+
+    /**
+     * Gets a flight's duration
+     * @param flight: the flight index
+     * @return the flight time in minutes
+     */
+    public int duration(int flight) {
+        return this.duration[flight];
+    }
+
+    /**
+     * Gets the flight object for a flight index, creating it the first time it's
+     * asked for
+     * @param flight: the flight index
+     * @return the flight object
+     */
+    public Flight flight(int flight) {
+        Flight f = this.flights[flight];
+        // threads racing here may each create a copy, which is harmless since
+        // flights are immutable, so there's no lock on this path
+        if (f == null) {
+            f = new Flight(this.flightId[flight], this.airports[this.depAirport[flight]],
+                this.airports[this.arrAirport[flight]], this.duration[flight],
+                this.depMinute[flight], this.arrMinute[flight]);
+            this.flights[flight] = f;
+        }
+        return f;
+    }
+
+    /**
+     * Lists the flights in timetable order, which is the order of their IDs. The
+     * list is a read-only view of the network: nothing is sorted until it's first
+     * read, and each Flight object is only created when its element is.
+     * @return the flights in ID order
+     */
+    public List<Flight> flightList() {
+        return new FlightsById();
+    }
+
+    /**
+     * The read-only list behind flightList
+     * @author megangibbons
+     *
+     */
+    private final class FlightsById extends AbstractList<Flight> implements RandomAccess {
+        @Override
+        public Flight get(int index) {
+            return flight(idOrder()[index]);
+        }
+
+        @Override
+        public int size() {
+            return flightId.length;
+        }
+    }
+
+    /**
+     * Gets the flight indexes in order of flight ID, sorting them the first time
+     * they're asked for. The ID and the index are packed into one long so the sort
+     * runs on primitives.
+     * @return the flight indexes in ID order
+     */
+    private int[] idOrder() {
+        int[] order = this.idOrder;
+        // threads racing here may each sort a copy, and any of them will do
+        if (order == null) {
+            int m = this.flightId.length;
+            long[] keys = new long[m];
+            for (int f = 0; f < m; f++) {
+                keys[f] = ((long) this.flightId[f] << 32) | f;
+            }
+            Arrays.sort(keys);
+            order = new int[m];
+            for (int i = 0; i < m; i++) {
+                order[i] = (int) keys[i];
+            }
+            this.idOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * Copies a set of flight IDs into a sorted array
+     * @param ids: the flight IDs
+     * @return the sorted IDs
+     */
+    private static int[] sortedIds(HashSet<Integer> ids) {
+        int[] sorted = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            sorted[i++] = id;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Reorders a range of several parallel arrays so that position start + i
+     * holds what was at order[i]
+     * @param order: the old position of each new position in the range
+     * @param start: the first position of the range
+     * @param arrays: the arrays to reorder
+     */
+    private static void permute(int[] order, int start, int[]... arrays) {
+        int[] copy = new int[order.length];
+        for (int[] array : arrays) {
+            for (int i = 0; i < order.length; i++) {
+                copy[i] = array[order[i]];
+            }
+            System.arraycopy(copy, 0, array, start, order.length);
+        }
+    }
+
+    /**
+     * Sorts part of an array of flight positions by their minute, keeping flights
+     * with the same minute in timetable order
+     * @param order: the flight positions to sort
+     * @param from: the first position of the range
+     * @param to: one past the last position of the range
+     * @param minute: the minute of each flight position
+     */
+    private static void sortByMinute(int[] order, int from, int to, int[] minute) {
+        // pack the minute above the position so a plain sort orders by both
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = ((long) minute[order[i]] << 32) | order[i];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            order[i] = (int) keys[i - from];
+        }
+    }
+}
@@ -0,0 +1,519 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves flight queries over HTTP with JSON answers. The network is loaded once and
+ * shared by every request, and path queries go through a FlightQueryService so they
+ * get its bounded queue and deadlines: a full queue answers 503 and a missed
+ * deadline 504. A handler thread never waits for a search. It hands the query to
+ * the service and moves on, and the answer is sent by whichever thread completes
+ * the query, so requests can't queue up behind blocked handlers. Every answer has
+ * a Content-Length, so clients can keep their connections open across requests.
+ *
+ * GET /fastest?from=MSN&to=SLC[&departAfter=8:00]
+ * GET /departures?airport=ORD[&after=6:00&before=9:00][&cursor=0&limit=100]
+ * GET /arrivals?airport=ORD[&after=6:00&before=9:00][&cursor=0&limit=100]
+ * GET /health
+ * GET /metrics
+ * @author megangibbons
+ *
+ */
+public class FlightQueryServer implements AutoCloseable {
+    private static final int DEFAULT_PAGE = 100; // board flights per page unless a limit is given
+    private static final int MAX_PAGE = 1000; // the largest board page a request can ask for
+    private static final int ANSWER_LATER = 0; // status of an endpoint that sends its answer itself
+    private final HttpServer server; // the HTTP listener
+    private final ThreadPoolExecutor handlers; // the threads that handle requests, with a bounded queue
+    private final ThreadLocal<Long> received = new ThreadLocal<>(); // when the request being handled reached the server
+    private final FlightQueryService service; // runs the path queries
+    private final LongAdder requests = new LongAdder(); // requests handled
+    private final LongAdder clientErrors = new LongAdder(); // requests answered with a 4xx
+    private final LongAdder serverErrors = new LongAdder(); // requests answered with a 5xx
+
+    /**
+     * Creates a server and starts listening
+     * @param network: the network to serve
+     * @param port: the port to listen on, or 0 for any free port
+     * @param threads: the number of request handling threads, which is also the
+     *        number of search workers
+     * @param timeoutMillis: how long a path query may take, counted from when the
+     *        request reached the server
+     * @throws IOException if the port can't be opened
+     */
+    public FlightQueryServer(FlightNetwork network, int port, int threads, long timeoutMillis)
+        throws IOException {
+        this(network, port, threads, 1024 * threads, timeoutMillis);
+    }
+
+    /**
+     * Creates a server with a given number of path queries allowed to wait, and
+     * starts listening
+     * @param network: the network to serve
+     * @param port: the port to listen on, or 0 for any free port
+     * @param threads: the number of request handling threads, which is also the
+     *        number of search workers
+     * @param queueCapacity: the most path queries that can wait for a worker before
+     *        the rest are answered 503
+     * @param timeoutMillis: how long a path query may take, counted from when the
+     *        request reached the server
+     * @throws IOException if the port can't be opened
+     */
+    public FlightQueryServer(FlightNetwork network, int port, int threads, int queueCapacity,
+        long timeoutMillis) throws IOException {
+        if (network == null || threads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.service = new FlightQueryService(network, threads, queueCapacity, timeoutMillis);
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        // a fixed pool of platform threads, since Java 17 has no virtual threads. The
+        // handlers only parse requests and never wait for a search, so their queue
+        // stays short; if it does fill up, the listener thread handles the request
+        // itself, which stops it accepting more until it's done.
+        this.handlers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1024 * threads), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server.setExecutor(task -> {
+            // note when the request arrived, so time spent waiting for a handler
+            // counts against its deadline
+            long arrived = System.nanoTime();
+            this.handlers.execute(() -> {
+                this.received.set(arrived);
+                task.run();
+            });
+        });
+        this.server.createContext("/fastest", handler(this::fastest));
+        this.server.createContext("/departures", handler(this::departures));
+        this.server.createContext("/arrivals", handler(this::arrivals));
+        this.server.createContext("/health", handler(this::health));
+        this.server.createContext("/metrics", handler(this::metrics));
+        this.server.start();
+    }
+
+    /**
+     * An endpoint that turns query parameters into a JSON answer
+     * @author megangibbons
+     *
+     */
+    private interface Endpoint {
+        /**
+         * Answers a request
+         * @param exchange: the request, for endpoints that answer later
+         * @param params: the request's query parameters
+         * @param json: where the JSON answer is built
+         * @return the HTTP status code, or ANSWER_LATER if the endpoint sends the
+         *         answer itself once it's ready
+         */
+        int answer(HttpExchange exchange, HashMap<String, String> params, StringBuilder json);
+    }
+
+    /**
+     * Gets the port the server is listening on
+     * @return the port
+     */
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Starts serving a new network, such as one with live updates applied
+     * @param network: the network to serve
+     */
+    public void setNetwork(FlightNetwork network) {
+        this.service.setNetwork(network);
+    }
+
+    /**
+     * Stops listening and waits up to a second for requests being handled
+     */
+    @Override
+    public void close() {
+        this.server.stop(1);
+        this.handlers.shutdown();
+        this.service.close();
+    }
+
+    /**
+     * Wraps an endpoint in the HTTP handling every endpoint shares
+     * @param endpoint: the endpoint
+     * @return the HTTP handler
+     */
+    private HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            this.requests.increment();
+            StringBuilder json = new StringBuilder(256);
+            int status;
+            try {
+                // drain any request body so the connection can be reused
+                try (InputStream body = exchange.getRequestBody()) {
+                    body.transferTo(OutputStream.nullOutputStream());
+                }
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    status = error(405, "Only GET is supported", json);
+                } else {
+                    status = endpoint.answer(exchange, params(exchange), json);
+                }
+            } catch (RuntimeException e) {
+                json.setLength(0);
+                status = error(500, String.valueOf(e.getMessage()), json);
+            }
+            if (status != ANSWER_LATER) {
+                respond(exchange, status, json);
+            }
+        };
+    }
+
+    /**
+     * Sends an answer and counts it
+     * @param exchange: the request
+     * @param status: the HTTP status code
+     * @param json: the JSON answer
+     * @throws IOException if the answer can't be sent
+     */
+    private void respond(HttpExchange exchange, int status, StringBuilder json)
+        throws IOException {
+        if (status >= 500) {
+            this.serverErrors.increment();
+        } else if (status >= 400) {
+            this.clientErrors.increment();
+        }
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Answers /fastest: the fastest path over the whole day, or the earliest
+     * arriving path when a departure time is given. A bad request is answered
+     * straight away; otherwise the query is queued and answered when it completes.
+     * @param exchange: the request
+     * @param params: from, to and optionally departAfter
+     * @param json: where the answer is built
+     * @return the HTTP status code, or ANSWER_LATER once the query is queued
+     */
+    private int fastest(HttpExchange exchange, HashMap<String, String> params,
+        StringBuilder json) {
+        FlightNetwork current = this.service.getNetwork();
+        String from = params.get("from");
+        String to = params.get("to");
+        if (from == null || to == null) {
+            return error(400, "from and to are required", json);
+        }
+        from = from.toUpperCase();
+        to = to.toUpperCase();
+        if (current.airportId(from) < 0 || current.airportId(to) < 0) {
+            return error(404, "Unknown airport", json);
+        }
+        int departAfter = -1;
+        if (params.containsKey("departAfter")) {
+            departAfter = minuteOf(params.get("departAfter"));
+            if (departAfter < 0) {
+                return error(400, "Invalid departAfter", json);
+            }
+        }
+        Long arrived = this.received.get();
+        long receivedNanos = arrived == null ? System.nanoTime() : arrived;
+        CompletableFuture<Path> query = departAfter < 0
+            ? this.service.fastestFlight(from, to, receivedNanos)
+            : this.service.earliestArrival(from, to, departAfter, receivedNanos);
+        String start = from;
+        String end = to;
+        query.whenComplete((path, failure) -> {
+            StringBuilder answer = new StringBuilder(256);
+            int status;
+            try {
+                status = pathAnswer(start, end, path, failure, answer);
+            } catch (RuntimeException e) {
+                answer.setLength(0);
+                status = error(500, String.valueOf(e.getMessage()), answer);
+            }
+            try {
+                respond(exchange, status, answer);
+            } catch (IOException e) {
+                // the client has gone, so there's no one to tell
+                exchange.close();
+            }
+        });
+        return ANSWER_LATER;
+    }
+
+    /**
+     * Builds the answer to a /fastest query once it has completed
+     * @param from: the departure airport's acronym
+     * @param to: the arrival airport's acronym
+     * @param path: the path found, or null if there isn't one
+     * @param failure: why the query failed, or null if it didn't
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private static int pathAnswer(String from, String to, Path path, Throwable failure,
+        StringBuilder json) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure instanceof RejectedExecutionException) {
+            return error(503, "Too many queries, try again later", json);
+        }
+        if (failure instanceof TimeoutException) {
+            return error(504, "Query timed out", json);
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+        if (path == null) {
+            return error(404, "No itinerary", json);
+        }
+        json.append("{\"from\":\"").append(from).append("\",\"to\":\"").append(to)
+            .append("\",\"departure\":\"").append(path.getStartTime())
+            .append("\",\"arrival\":\"").append(path.getEndTime())
+            .append("\",\"totalMinutes\":").append(path.totalTime).append(",\"flights\":[");
+        List<Flight> legs = path.getFlights();
+        for (int i = 0; i < legs.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            flightJson(legs.get(i), json);
+        }
+        json.append("]}");
+        return 200;
+    }
+
+    /**
+     * Answers /departures: a page of the flights leaving an airport in a time
+     * range, in departure order
+     * @param exchange: not used
+     * @param params: airport, and optionally after and before times and the page's
+     *        cursor and limit
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private int departures(HttpExchange exchange, HashMap<String, String> params,
+        StringBuilder json) {
+        return board(params, false, json);
+    }
+
+    /**
+     * Answers /arrivals: a page of the flights landing at an airport in a time
+     * range, in arrival order
+     * @param exchange: not used
+     * @param params: airport, and optionally after and before times and the page's
+     *        cursor and limit
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private int arrivals(HttpExchange exchange, HashMap<String, String> params,
+        StringBuilder json) {
+        return board(params, true, json);
+    }
+
+    /**
+     * Answers a board request with one page of the board. The answer's "next" is
+     * the cursor of the following page, or null on the last page.
+     * @param params: the request's query parameters
+     * @param arrivals: whether it's an arrivals board
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private int board(HashMap<String, String> params, boolean arrivals, StringBuilder json) {
+        FlightNetwork current = this.service.getNetwork();
+        int airport = airportOf(current, params.get("airport"));
+        int[] range = rangeOf(params);
+        if (airport < 0) {
+            return error(404, "Unknown airport", json);
+        }
+        if (range == null) {
+            return error(400, "Invalid after or before", json);
+        }
+        int cursor;
+        int limit;
+        try {
+            cursor = Integer.parseInt(params.getOrDefault("cursor", "0"));
+            limit = Integer.parseInt(params.getOrDefault("limit", "" + DEFAULT_PAGE));
+        } catch (NumberFormatException e) {
+            return error(400, "Invalid cursor or limit", json);
+        }
+        if (cursor < 0 || limit < 1 || limit > MAX_PAGE) {
+            return error(400, "Invalid cursor or limit", json);
+        }
+        String acronym = current.acronym(airport);
+        FlightBoard board = arrivals ? FlightBoard.arrivals(current, acronym, range[0], range[1])
+            : FlightBoard.departures(current, acronym, range[0], range[1]);
+        json.append("{\"airport\":\"").append(acronym).append("\",\"total\":")
+            .append(board.size()).append(",\"flights\":[");
+        List<Flight> page = board.page(cursor, limit);
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            flightJson(page.get(i), json);
+        }
+        int next = board.nextCursor(cursor, limit);
+        json.append("],\"next\":").append(next < 0 ? "null" : String.valueOf(next)).append('}');
+        return 200;
+    }
+
+    /**
+     * Answers /health
+     * @param exchange: not used
+     * @param params: not used
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private int health(HttpExchange exchange, HashMap<String, String> params,
+        StringBuilder json) {
+        FlightNetwork current = this.service.getNetwork();
+        json.append("{\"status\":\"ok\",\"airports\":").append(current.airportCount())
+            .append(",\"flights\":").append(current.flightCount()).append('}');
+        return 200;
+    }
+
+    /**
+     * Answers /metrics with the server's and the query service's counters
+     * @param exchange: not used
+     * @param params: not used
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private int metrics(HttpExchange exchange, HashMap<String, String> params,
+        StringBuilder json) {
+        json.append("{\"requests\":").append(this.requests.sum())
+            .append(",\"clientErrors\":").append(this.clientErrors.sum())
+            .append(",\"serverErrors\":").append(this.serverErrors.sum())
+            .append(",\"queriesCompleted\":").append(this.service.completedCount())
+            .append(",\"queriesRejected\":").append(this.service.rejectedCount())
+            .append(",\"queriesTimedOut\":").append(this.service.timedOutCount())
+            .append(",\"queriesQueued\":").append(this.service.queuedCount()).append('}');
+        return 200;
+    }
+
+    /**
+     * Appends a flight as a JSON object
+     * @param f: the flight
+     * @param json: where the object is appended
+     */
+    private static void flightJson(Flight f, StringBuilder json) {
+        json.append("{\"id\":").append(f.getID())
+            .append(",\"from\":\"").append(f.getDepartureAirport().getAcronym())
+            .append("\",\"to\":\"").append(f.getArrivalAirport().getAcronym())
+            .append("\",\"departure\":\"").append(f.getDepartureTime())
+            .append("\",\"arrival\":\"").append(f.getArrivalTime())
+            .append("\",\"minutes\":").append(f.getFlightDuration()).append('}');
+    }
+
+    /**
+     * Builds an error answer
+     * @param status: the HTTP status code
+     * @param message: what went wrong
+     * @param json: where the answer is built
+     * @return the HTTP status code
+     */
+    private static int error(int status, String message, StringBuilder json) {
+        json.append("{\"error\":\"");
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c >= ' ') {
+                json.append(c);
+            }
+        }
+        json.append("\"}");
+        return status;
+    }
+
+    /**
+     * Reads the query parameters of a request
+     * @param exchange: the request
+     * @return the parameters by name
+     */
+    private static HashMap<String, String> params(HttpExchange exchange) {
+        HashMap<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Looks up an airport parameter
+     * @param current: the network being served
+     * @param acronym: the airport parameter, or null
+     * @return the airport id, or -1 if it's missing or unknown
+     */
+    private static int airportOf(FlightNetwork current, String acronym) {
+        return acronym == null ? -1 : current.airportId(acronym.toUpperCase());
+    }
+
+    /**
+     * Reads the after and before times of a board request
+     * @param params: the request's query parameters
+     * @return the first and last minute of the range, or null if a time is invalid
+     */
+    private static int[] rangeOf(HashMap<String, String> params) {
+        int after = params.containsKey("after") ? minuteOf(params.get("after")) : 0;
+        int before = params.containsKey("before") ? minuteOf(params.get("before"))
+            : Integer.MAX_VALUE;
+        return after < 0 || before < 0 ? null : new int[] {after, before};
+    }
+
+    /**
+     * Reads a time given as "H:MM" or as minutes after midnight
+     * @param time: the time
+     * @return the minutes after midnight, or -1 if the time is invalid
+     */
+    private static int minuteOf(String time) {
+        try {
+            int minute = time.indexOf(':') >= 0 ? Flight.toMinutes(time) : Integer.parseInt(time);
+            return minute < 0 ? -1 : minute;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Loads the timetable and serves it until the process is stopped, for example
+     * "java FlightQueryServer 8080 8"
+     * @param args: the port (8080 if not given) and the number of threads (one per
+     *        core if not given)
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        try {
+            FlightNetwork network = NetworkSnapshot.loadOrImport("airports.csv", "flights.csv",
+                "timetable.snapshot");
+            FlightQueryServer server = new FlightQueryServer(network, port, threads, 1000);
+            System.out.println("Serving flight queries on port " + server.getPort() + " with "
+                + threads + " threads");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
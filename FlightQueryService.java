@@ -0,0 +1,268 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Runs many flight queries at once on a fixed pool of worker threads. The network
+ * is immutable and every worker searches in its own workspace, so queries share no
+ * locks. The pool's queue is bounded: when it's full a new query is rejected right
+ * away instead of piling up, and callers can back off and retry. Every query also
+ * has a deadline, and one that is still waiting in the queue when its deadline
+ * passes is dropped without being run.
+ * @author megangibbons
+ *
+ */
+public class FlightQueryService implements AutoCloseable {
+    private final ThreadPoolExecutor pool; // the worker threads and their bounded queue
+    private final long timeoutNanos; // how long a query may take, queue time included
+    private volatile Engines engines; // the network being served and its engine
+    private final LongAdder completed = new LongAdder(); // queries answered
+    private final LongAdder rejected = new LongAdder(); // queries turned away by a full queue
+    private final LongAdder timedOut = new LongAdder(); // queries that missed their deadline
+
+    /**
+     * A network and the engine that searches it, swapped together so a query never
+     * pairs one network with another network's engine
+     * @author megangibbons
+     *
+     */
+    private static final class Engines {
+        private final FlightNetwork network; // the network being served
+        private final EarliestArrivalSearch search; // the engine over the network
+
+        /**
+         * Creates the engine for a network
+         * @param network: the network to serve
+         */
+        private Engines(FlightNetwork network) {
+            this.network = network;
+            this.search = new EarliestArrivalSearch(network);
+        }
+    }
+
+    /**
+     * Creates a service with one worker per core and a queue of 1024 queries per
+     * worker
+     * @param network: the network to serve
+     * @param timeoutMillis: how long a query may take, queue time included
+     */
+    public FlightQueryService(FlightNetwork network, long timeoutMillis) {
+        this(network, Runtime.getRuntime().availableProcessors(),
+            1024 * Runtime.getRuntime().availableProcessors(), timeoutMillis);
+    }
+
+    /**
+     * Creates a service
+     * @param network: the network to serve
+     * @param threads: the number of worker threads
+     * @param queueCapacity: the most queries that can wait for a worker
+     * @param timeoutMillis: how long a query may take, queue time included
+     */
+    public FlightQueryService(FlightNetwork network, int threads, int queueCapacity,
+        long timeoutMillis) {
+        if (network == null || threads < 1 || queueCapacity < 1 || timeoutMillis < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.engines = new Engines(network);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        AtomicInteger number = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "flight-query-" + number.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // the default abort policy is the backpressure: a full queue rejects
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), factory);
+    }
+
+    /**
+     * Gets the network being served
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return this.engines.network;
+    }
+
+    /**
+     * Starts serving a new network, such as one with live updates applied. Queries
+     * that have already started finish on the old network.
+     * @param network: the network to serve
+     */
+    public void setNetwork(FlightNetwork network) {
+        if (network == null) {
+            throw new IllegalArgumentException();
+        }
+        this.engines = new Engines(network);
+    }
+
+    /**
+     * Finds the fastest path between two airports over the whole day
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return a future holding the path, or null if there isn't one. It fails with
+     *         a RejectedExecutionException if the queue is full and a
+     *         TimeoutException if the deadline passes.
+     */
+    public CompletableFuture<Path> fastestFlight(String start, String end) {
+        return fastestFlight(start, end, System.nanoTime());
+    }
+
+    /**
+     * Finds the fastest path between two airports over the whole day, with the
+     * deadline counted from when the request was received rather than from now
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param receivedNanos: when the request was received, from System.nanoTime
+     * @return a future holding the path, or null if there isn't one. It fails with
+     *         a RejectedExecutionException if the queue is full and a
+     *         TimeoutException if the deadline passes.
+     */
+    public CompletableFuture<Path> fastestFlight(String start, String end, long receivedNanos) {
+        return submit(e -> e.search.fastestFlight(start, end), receivedNanos);
+    }
+
+    /**
+     * Finds the path that arrives the earliest when leaving no earlier than a time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return a future holding the path, or null if there isn't one. It fails with
+     *         a RejectedExecutionException if the queue is full and a
+     *         TimeoutException if the deadline passes.
+     */
+    public CompletableFuture<Path> earliestArrival(String start, String end, int departAfter) {
+        return earliestArrival(start, end, departAfter, System.nanoTime());
+    }
+
+    /**
+     * Finds the path that arrives the earliest when leaving no earlier than a time,
+     * with the deadline counted from when the request was received rather than
+     * from now
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param receivedNanos: when the request was received, from System.nanoTime
+     * @return a future holding the path, or null if there isn't one. It fails with
+     *         a RejectedExecutionException if the queue is full and a
+     *         TimeoutException if the deadline passes.
+     */
+    public CompletableFuture<Path> earliestArrival(String start, String end, int departAfter,
+        long receivedNanos) {
+        return submit(e -> e.search.earliestArrival(start, end, departAfter), receivedNanos);
+    }
+
+    /**
+     * Finds the fastest path between two airports and waits for the answer
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the path, or null if there isn't one
+     * @throws RejectedExecutionException if the queue is full
+     * @throws TimeoutException if the deadline passes first
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Path fastestFlightNow(String start, String end)
+        throws TimeoutException, InterruptedException {
+        try {
+            return fastestFlight(start, end).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Gets the number of queries answered
+     * @return the number of completed queries
+     */
+    public long completedCount() {
+        return this.completed.sum();
+    }
+
+    /**
+     * Gets the number of queries turned away because the queue was full
+     * @return the number of rejected queries
+     */
+    public long rejectedCount() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * Gets the number of queries that missed their deadline
+     * @return the number of timed out queries
+     */
+    public long timedOutCount() {
+        return this.timedOut.sum();
+    }
+
+    /**
+     * Gets the number of queries waiting for a worker
+     * @return the queue length
+     */
+    public int queuedCount() {
+        return this.pool.getQueue().size();
+    }
+
+    /**
+     * Stops accepting queries and lets the queued ones finish
+     */
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Queues a query against the current network
+     * @param query: the query to run with the engines it should use
+     * @param receivedNanos: when the request was received, which starts the deadline
+     * @return a future holding the query's result
+     */
+    private CompletableFuture<Path> submit(Function<Engines, Path> query, long receivedNanos) {
+        // read the engines once so the whole query runs on one network
+        Engines current = this.engines;
+        long deadline = receivedNanos + this.timeoutNanos;
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            // the request waited out its deadline before it got here
+            this.timedOut.increment();
+            return CompletableFuture.failedFuture(new TimeoutException());
+        }
+        CompletableFuture<Path> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> {
+                // don't spend a worker on a query whose caller has given up
+                if (System.nanoTime() - deadline > 0) {
+                    throw new CompletionException(new TimeoutException());
+                }
+                Path path = query.apply(current);
+                this.completed.increment();
+                return path;
+            }, this.pool);
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.orTimeout(remaining, TimeUnit.NANOSECONDS)
+            .whenComplete((path, error) -> {
+                if (error instanceof TimeoutException
+                    || (error != null && error.getCause() instanceof TimeoutException)) {
+                    this.timedOut.increment();
+                }
+            });
+    }
+}
@@ -0,0 +1,418 @@
+import java.util.Arrays;
+
+/**
+ * Finds earliest arrival paths with A* search, using landmark (ALT) lower bounds
+ * on the time left to reach the destination. The bounds come from a static graph
+ * whose edge between two airports is the quickest flight between them, measured
+ * from departure to arrival. Shortest distances to and from a few landmark airports
+ * are computed once, and the triangle inequality turns them into a bound for any
+ * pair. Airports are settled in order of arrival plus bound, so the search heads
+ * for the destination instead of spreading out in every direction, and airports
+ * that can't reach the destination at all are never queued. Each query only uses
+ * the few landmarks that give the tightest bound between its origin and target, so
+ * a bound costs a handful of reads from one row instead of a pass over every
+ * landmark.
+ * @author megangibbons
+ *
+ */
+public class GoalDirectedSearch {
+    // the distance of airports that can't be reached in the static graph
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    // the number of landmarks each query computes its bounds from
+    private static final int ACTIVE_LANDMARKS = 3;
+
+    private FlightNetwork network; // the compiled timetable being searched
+    private int minConnection; // minutes needed between landing and taking off again
+    private int[] landmarks; // the landmark airport ids
+    // static distances of airport a, to landmark l at a * 2k + 2l and from it at
+    // a * 2k + 2l + 1, so all of an airport's distances share a cache line or two
+    private int[] distances;
+
+    /**
+     * Creates a search with eight landmarks and the default connection time
+     * @param network: the airports and flights to search
+     */
+    public GoalDirectedSearch(FlightNetwork network) {
+        this(network, 8, FlightNetwork.MIN_CONNECTION_MINUTES);
+    }
+
+    /**
+     * Creates a search and precomputes its landmark distances
+     * @param network: the airports and flights to search
+     * @param landmarkCount: the number of landmarks, more give tighter bounds
+     * @param minConnection: minutes needed between landing and taking off again
+     */
+    public GoalDirectedSearch(FlightNetwork network, int landmarkCount, int minConnection) {
+        if (network == null || landmarkCount < 1 || minConnection < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.minConnection = minConnection;
+        int n = network.airportCount();
+        int[] toLandmark = new int[Math.min(landmarkCount, n) * n]; // to landmark l at l * n + a
+        int[] fromLandmark = new int[toLandmark.length]; // from landmark l at l * n + a
+        // the quickest flight between each pair of airports, in both directions
+        int[][] forward = staticGraph(network, false);
+        int[][] backward = staticGraph(network, true);
+        int count = Math.min(landmarkCount, n);
+        this.landmarks = new int[count];
+        // start at the busiest airport, then keep adding the airport that is
+        // farthest from all the landmarks picked so far
+        int busiest = 0;
+        for (int a = 1; a < n; a++) {
+            if (network.endFlightFrom(a) - network.firstFlightFrom(a)
+                > network.endFlightFrom(busiest) - network.firstFlightFrom(busiest)) {
+                busiest = a;
+            }
+        }
+        int chosen = 0;
+        int next = busiest;
+        while (chosen < count && next >= 0) {
+            this.landmarks[chosen] = next;
+            staticDistances(forward, next, fromLandmark, chosen * n);
+            staticDistances(backward, next, toLandmark, chosen * n);
+            chosen++;
+            next = -1;
+            long farthest = 0;
+            for (int a = 0; a < n; a++) {
+                long nearest = Long.MAX_VALUE;
+                for (int l = 0; l < chosen; l++) {
+                    int there = fromLandmark[l * n + a];
+                    int back = toLandmark[l * n + a];
+                    // airports cut off from a landmark make poor landmarks
+                    if (there == UNREACHABLE || back == UNREACHABLE) {
+                        nearest = 0;
+                        break;
+                    }
+                    nearest = Math.min(nearest, (long) there + back);
+                }
+                if (nearest > farthest) {
+                    farthest = nearest;
+                    next = a;
+                }
+            }
+        }
+        // fewer landmarks than asked for if the rest would all be useless
+        this.landmarks = Arrays.copyOf(this.landmarks, chosen);
+        this.distances = new int[2 * chosen * n];
+        for (int a = 0, i = 0; a < n; a++) {
+            for (int l = 0; l < chosen; l++) {
+                this.distances[i++] = toLandmark[l * n + a];
+                this.distances[i++] = fromLandmark[l * n + a];
+            }
+        }
+    }
+
+    /**
+     * Gets the network the search was created over
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Gets the number of landmarks the bounds are computed from
+     * @return the number of landmarks
+     */
+    public int landmarkCount() {
+        return this.landmarks.length;
+    }
+
+    /**
+     * Gets a lower bound on the minutes needed to get from one airport to another,
+     * whatever the time of day, using every landmark
+     * @param airport: the airport id to start from
+     * @param target: the arrival airport id
+     * @return the bound in minutes, or Integer.MAX_VALUE if the target can't be
+     *         reached from the airport at all
+     */
+    public int lowerBound(int airport, int target) {
+        int bound = 0;
+        for (int l = 0; l < this.landmarks.length; l++) {
+            bound = Math.max(bound, landmarkBound(l, airport, target));
+            if (bound == UNREACHABLE) {
+                break;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Gets the lower bound one landmark gives on the minutes from one airport to
+     * another
+     * @param l: the landmark's index
+     * @param airport: the airport id to start from
+     * @param target: the arrival airport id
+     * @return the bound in minutes, or Integer.MAX_VALUE if the landmark shows the
+     *         target can't be reached from the airport
+     */
+    private int landmarkBound(int l, int airport, int target) {
+        int stride = 2 * this.landmarks.length;
+        int airportRow = airport * stride + 2 * l;
+        int targetRow = target * stride + 2 * l;
+        int bound = 0;
+        // d(a, t) >= d(a, L) - d(t, L), and if the target reaches the
+        // landmark but the airport doesn't, the airport can't reach the target
+        int airportTo = this.distances[airportRow];
+        int targetTo = this.distances[targetRow];
+        if (targetTo != UNREACHABLE) {
+            if (airportTo == UNREACHABLE) {
+                return UNREACHABLE;
+            }
+            bound = Math.max(bound, airportTo - targetTo);
+        }
+        // d(a, t) >= d(L, t) - d(L, a), and if the landmark reaches the
+        // airport but not the target, neither does the airport
+        int airportFrom = this.distances[airportRow + 1];
+        int targetFrom = this.distances[targetRow + 1];
+        if (airportFrom != UNREACHABLE) {
+            if (targetFrom == UNREACHABLE) {
+                return UNREACHABLE;
+            }
+            bound = Math.max(bound, targetFrom - airportFrom);
+        }
+        return bound;
+    }
+
+    /**
+     * Picks the landmarks that give the tightest bounds from the origin to the target
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @return for each picked landmark, its offset in an airport's row followed by
+     *         the target's distances to and from it, or null if the target can't be
+     *         reached from the origin at all
+     */
+    private int[] activeLandmarks(int origin, int target) {
+        int count = Math.min(ACTIVE_LANDMARKS, this.landmarks.length);
+        int[] picked = new int[count]; // landmark indexes, tightest bound first
+        int[] bounds = new int[count];
+        Arrays.fill(bounds, -1);
+        for (int l = 0; l < this.landmarks.length; l++) {
+            int bound = landmarkBound(l, origin, target);
+            if (bound == UNREACHABLE) {
+                return null;
+            }
+            // insertion into the few best so far
+            int i = count;
+            while (i > 0 && bounds[i - 1] < bound) {
+                if (i < count) {
+                    bounds[i] = bounds[i - 1];
+                    picked[i] = picked[i - 1];
+                }
+                i--;
+            }
+            if (i < count) {
+                bounds[i] = bound;
+                picked[i] = l;
+            }
+        }
+        int[] active = new int[3 * count];
+        int targetRow = target * 2 * this.landmarks.length;
+        for (int i = 0; i < count; i++) {
+            active[3 * i] = 2 * picked[i];
+            active[3 * i + 1] = this.distances[targetRow + 2 * picked[i]];
+            active[3 * i + 2] = this.distances[targetRow + 2 * picked[i] + 1];
+        }
+        return active;
+    }
+
+    /**
+     * Gets the lower bound from an airport to the query's target using only the
+     * landmarks picked for the query
+     * @param active: the picked landmarks, from activeLandmarks
+     * @param airport: the airport id to start from
+     * @return the bound in minutes, or Integer.MAX_VALUE if the target can't be
+     *         reached from the airport
+     */
+    private int activeBound(int[] active, int airport) {
+        int row = airport * 2 * this.landmarks.length;
+        int bound = 0;
+        for (int i = 0; i < active.length; i += 3) {
+            int airportTo = this.distances[row + active[i]];
+            int targetTo = active[i + 1];
+            if (targetTo != UNREACHABLE) {
+                if (airportTo == UNREACHABLE) {
+                    return UNREACHABLE;
+                }
+                bound = Math.max(bound, airportTo - targetTo);
+            }
+            int airportFrom = this.distances[row + active[i] + 1];
+            int targetFrom = active[i + 2];
+            if (airportFrom != UNREACHABLE) {
+                if (targetFrom == UNREACHABLE) {
+                    return UNREACHABLE;
+                }
+                bound = Math.max(bound, targetFrom - airportFrom);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Finds the path that reaches the arrival airport as early as possible when
+     * leaving the departure airport no earlier than the given time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving path, or null if there isn't one
+     */
+    public Path earliestArrival(String start, String end, int departAfter) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        search(origin, target, departAfter, ws);
+        return ws.buildPath(this.network, target);
+    }
+
+    /**
+     * Finds the earliest arrival minute at an airport without building a path
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the arrival minute, or -1 if the target can't be reached
+     */
+    public int earliestArrivalMinute(int origin, int target, int departAfter) {
+        SearchWorkspace ws = SearchWorkspace.get(this.network.airportCount());
+        search(origin, target, departAfter, ws);
+        return ws.previous(target) < 0 ? -1 : ws.arrival(target);
+    }
+
+    /**
+     * Labels airports with their earliest arrival time, settling them in order of
+     * arrival plus lower bound until the target is settled. The bounds never drop
+     * by more than a flight takes, so an airport's arrival is final once settled.
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param ws: a freshly reset workspace to hold the labels
+     */
+    public void search(int origin, int target, int departAfter, SearchWorkspace ws) {
+        FlightNetwork net = this.network;
+        IndexedMinHeap queue = ws.queue();
+        int[] active = activeLandmarks(origin, target);
+        ws.label(origin, departAfter, -1);
+        if (active == null) {
+            return;
+        }
+        int originBound = activeBound(active, origin);
+        queue.insertOrDecrease(origin, departAfter + originBound);
+        while (!queue.isEmpty()) {
+            int curr = queue.poll();
+            ws.settle(curr);
+            if (curr == target) {
+                break;
+            }
+            int ready = curr == origin ? departAfter : ws.arrival(curr) + this.minConnection;
+            int end = net.endFlightFrom(curr);
+            // every flight out of here still has at least the bound left to fly, so
+            // stop at the first one that can't land at the target before its label
+            int left = curr == origin ? originBound : ws.bound(curr);
+            for (int f = net.firstDepartureAtOrAfter(curr, ready); f < end; f++) {
+                if (net.departureMinute(f) + left >= ws.arrival(target)) {
+                    break;
+                }
+                int next = net.arrivalAirport(f);
+                int arrive = net.arrivalMinute(f);
+                if (ws.isSettled(next) || arrive >= ws.arrival(next)) {
+                    continue;
+                }
+                // skip airports that can't reach the target in time to beat it
+                int bound = ws.bound(next);
+                if (bound < 0) {
+                    bound = activeBound(active, next);
+                    ws.setBound(next, bound);
+                }
+                if (bound == UNREACHABLE || arrive + bound >= ws.arrival(target)) {
+                    continue;
+                }
+                ws.label(next, arrive, f);
+                queue.insertOrDecrease(next, arrive + bound);
+            }
+        }
+    }
+
+    /**
+     * Builds the static graph with one edge per pair of airports that has a direct
+     * flight, weighted by the quickest such flight
+     * @param network: the compiled timetable
+     * @param reverse: true to point every edge from the arrival airport back to the
+     *        departure airport
+     * @return for each airport, its neighbors and edge weights interleaved
+     */
+    private static int[][] staticGraph(FlightNetwork network, boolean reverse) {
+        int n = network.airportCount();
+        int[][] quickest = new int[n][];
+        int[] weight = new int[n]; // quickest flight to each neighbor of one airport
+        Arrays.fill(weight, UNREACHABLE);
+        int[][] incoming = null;
+        if (reverse) {
+            // group the flights by arrival airport first
+            int[] counts = new int[n];
+            for (int f = 0; f < network.flightCount(); f++) {
+                counts[network.arrivalAirport(f)]++;
+            }
+            incoming = new int[n][];
+            for (int a = 0; a < n; a++) {
+                incoming[a] = new int[counts[a]];
+                counts[a] = 0;
+            }
+            for (int f = 0; f < network.flightCount(); f++) {
+                int a = network.arrivalAirport(f);
+                incoming[a][counts[a]++] = f;
+            }
+        }
+        int[] neighbors = new int[n];
+        for (int a = 0; a < n; a++) {
+            int degree = 0;
+            int count = reverse ? incoming[a].length
+                : network.endFlightFrom(a) - network.firstFlightFrom(a);
+            for (int i = 0; i < count; i++) {
+                int f = reverse ? incoming[a][i] : network.firstFlightFrom(a) + i;
+                int other = reverse ? network.departureAirport(f) : network.arrivalAirport(f);
+                int minutes = network.arrivalMinute(f) - network.departureMinute(f);
+                if (weight[other] == UNREACHABLE) {
+                    neighbors[degree++] = other;
+                }
+                weight[other] = Math.min(weight[other], minutes);
+            }
+            quickest[a] = new int[degree * 2];
+            for (int i = 0; i < degree; i++) {
+                quickest[a][2 * i] = neighbors[i];
+                quickest[a][2 * i + 1] = weight[neighbors[i]];
+                weight[neighbors[i]] = UNREACHABLE;
+            }
+        }
+        return quickest;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm on a static graph from one airport
+     * @param graph: the neighbors and edge weights of each airport
+     * @param source: the airport id to start from
+     * @param distance: the array to write the distances into
+     * @param offset: where the source's row starts in the distance array
+     */
+    private static void staticDistances(int[][] graph, int source, int[] distance, int offset) {
+        int n = graph.length;
+        Arrays.fill(distance, offset, offset + n, UNREACHABLE);
+        IndexedMinHeap queue = new IndexedMinHeap(n);
+        distance[offset + source] = 0;
+        queue.insertOrDecrease(source, 0);
+        while (!queue.isEmpty()) {
+            int curr = queue.poll();
+            int[] edges = graph[curr];
+            for (int i = 0; i < edges.length; i += 2) {
+                int next = edges[i];
+                int d = distance[offset + curr] + edges[i + 1];
+                if (d < distance[offset + next]) {
+                    distance[offset + next] = d;
+                    queue.insertOrDecrease(next, d);
+                }
+            }
+        }
+    }
+}
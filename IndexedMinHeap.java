@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+/**
+ * A binary min heap of integer ids ordered by integer keys. Each id can be in the
+ * heap at most once, which lets searches lower an id's key in place instead of
+ * adding duplicate entries.
+ * @author megangibbons
+ *
+ */
+public class IndexedMinHeap {
+    private int[] heap; // ids stored in heap order
+    private int[] keys; // key of each id, indexed by id
+    private int[] position; // where each id sits in the heap, or -1 if it's not in it
+    private int size; // number of ids currently in the heap
+
+    /**
+     * Creates an empty heap that can hold the ids 0 to capacity - 1
+     * @param capacity: the number of distinct ids
+     */
+    public IndexedMinHeap(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.position = new int[capacity];
+        Arrays.fill(this.position, -1);
+        this.size = 0;
+    }
+
+    /**
+     * Checks whether the heap has no ids left
+     * @return true if the heap is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Gets the number of ids in the heap
+     * @return the heap size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Checks whether an id is currently in the heap
+     * @param id: the id to look for
+     * @return true if the id is in the heap
+     */
+    public boolean contains(int id) {
+        return this.position[id] >= 0;
+    }
+
+    /**
+     * Adds an id to the heap, or lowers its key if it's already in the heap with a
+     * larger key
+     * @param id: the id to add or update
+     * @param key: the id's new key
+     */
+    public void insertOrDecrease(int id, int key) {
+        int pos = this.position[id];
+        if (pos < 0) {
+            // add the id at the bottom of the heap and let it rise
+            pos = this.size++;
+            this.heap[pos] = id;
+            this.position[id] = pos;
+            this.keys[id] = key;
+            siftUp(pos);
+        } else if (key < this.keys[id]) {
+            this.keys[id] = key;
+            siftUp(pos);
+        }
+    }
+
+    /**
+     * Removes the id with the smallest key
+     * @return the removed id
+     */
+    public int poll() {
+        if (this.size == 0) {
+            throw new IllegalStateException("Heap is empty");
+        }
+        int top = this.heap[0];
+        this.position[top] = -1;
+        this.size--;
+        if (this.size > 0) {
+            // move the last id to the top and let it sink
+            int last = this.heap[this.size];
+            this.heap[0] = last;
+            this.position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Gets the key an id was last given
+     * @param id: the id to look up
+     * @return the id's key
+     */
+    public int keyOf(int id) {
+        return this.keys[id];
+    }
+
+    /**
+     * Removes every id from the heap. Only the ids still in the heap are touched,
+     * so this costs nothing after a search that emptied the heap.
+     */
+    public void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.position[this.heap[i]] = -1;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Moves the id at a heap position up until its parent has a smaller key
+     * @param pos: the heap position to move up
+     */
+    private void siftUp(int pos) {
+        int id = this.heap[pos];
+        int key = this.keys[id];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int parentId = this.heap[parent];
+            if (this.keys[parentId] <= key) {
+                break;
+            }
+            this.heap[pos] = parentId;
+            this.position[parentId] = pos;
+            pos = parent;
+        }
+        this.heap[pos] = id;
+        this.position[id] = pos;
+    }
+
+    /**
+     * Moves the id at a heap position down until both children have larger keys
+     * @param pos: the heap position to move down
+     */
+    private void siftDown(int pos) {
+        int id = this.heap[pos];
+        int key = this.keys[id];
+        int half = this.size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < this.size && this.keys[this.heap[right]] < this.keys[this.heap[child]]) {
+                child = right;
+            }
+            int childId = this.heap[child];
+            if (key <= this.keys[childId]) {
+                break;
+            }
+            this.heap[pos] = childId;
+            this.position[childId] = pos;
+            pos = child;
+        }
+        this.heap[pos] = id;
+        this.position[id] = pos;
+    }
+}
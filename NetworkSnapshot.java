@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves a compiled FlightNetwork to a binary file and loads it back. The file holds
+ * the airport table and the flight arrays already in compiled order, so loading is
+ * a memory map and one bulk copy per array instead of parsing text. The header keeps
+ * a checksum of the .csv files the network was imported from, so a snapshot that's
+ * older than the .csv files is ignored and rebuilt.
+ *
+ * File layout, little endian:
+ * magic "FFGSNAP1", int version, long source checksum, int airport count,
+ * int flight count, the airports as four length-prefixed UTF-8 strings each, then
+ * the int arrays firstFlight, flightId, depAirport, arrAirport, depMinute,
+ * arrMinute and duration, then an int checksum of everything before it.
+ * @author megangibbons
+ *
+ */
+public class NetworkSnapshot {
+    // format version, raised whenever the layout or the meaning of a field changes.
+    // Version 2 stores overnight arrivals as minutes after the departure day's
+    // midnight, so they're 1440 or more.
+    public static final int VERSION = 2;
+    // identifies snapshot files
+    private static final byte[] MAGIC = "FFGSNAP1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Computes a checksum over the contents of the given files
+     * @param files: the files to include, in order
+     * @return the checksum
+     * @throws IOException if a file can't be read
+     */
+    public static long checksum(String... files) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (String file : files) {
+            try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+                long size = channel.size();
+                // map the file a gigabyte at a time so any size works
+                for (long pos = 0; pos < size; pos += 1 << 30) {
+                    long length = Math.min(1 << 30, size - pos);
+                    crc.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, length));
+                }
+            }
+            // separate the files so moving bytes from one to the next is noticed
+            crc.update(0);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes a network to a snapshot file
+     * @param network: the network to save
+     * @param sourceChecksum: checksum of the .csv files the network came from
+     * @param fileName: the snapshot file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(FlightNetwork network, long sourceChecksum, String fileName)
+        throws IOException {
+        int n = network.airportCount();
+        int m = network.flightCount();
+        byte[][] text = new byte[n * 4][];
+        long textBytes = 0;
+        for (int a = 0; a < n; a++) {
+            Airport airport = network.airport(a);
+            text[a * 4] = airport.getAcronym().getBytes(StandardCharsets.UTF_8);
+            text[a * 4 + 1] = airport.getAirport().getBytes(StandardCharsets.UTF_8);
+            text[a * 4 + 2] = airport.getCity().getBytes(StandardCharsets.UTF_8);
+            text[a * 4 + 3] = airport.getState().getBytes(StandardCharsets.UTF_8);
+        }
+        for (byte[] t : text) {
+            textBytes += 4 + t.length;
+        }
+        long size = MAGIC.length + 4 + 8 + 4 + 4 + textBytes + 4L * (n + 1) + 4L * 6 * m + 4;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Network is too large for a snapshot");
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(sourceChecksum);
+        buf.putInt(n);
+        buf.putInt(m);
+        for (byte[] t : text) {
+            buf.putInt(t.length);
+            buf.put(t);
+        }
+        IntBuffer ints = buf.asIntBuffer();
+        for (int a = 0; a <= n; a++) {
+            ints.put(a < n ? network.firstFlightFrom(a) : m);
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.flightId(f));
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.departureAirport(f));
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.arrivalAirport(f));
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.departureMinute(f));
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.arrivalMinute(f));
+        }
+        for (int f = 0; f < m; f++) {
+            ints.put(network.duration(f));
+        }
+        buf.position(buf.position() + ints.position() * 4);
+        // finish with a checksum of the whole file so a torn write isn't trusted
+        CRC32C crc = new CRC32C();
+        crc.update(buf.duplicate().flip());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        // write to a temporary file first so readers never see half a snapshot
+        // (java.nio.file.Path is spelled out because this project has its own Path)
+        java.nio.file.Path target = Paths.get(fileName);
+        java.nio.file.Path temp = Paths.get(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a network back from a snapshot file
+     * @param fileName: the snapshot file
+     * @param expectedChecksum: checksum of the current .csv files
+     * @return the network, or null if the file is missing, from another version,
+     *         damaged, or made from different .csv files
+     * @throws IOException if the file exists but can't be read
+     */
+    public static FlightNetwork read(String fileName, long expectedChecksum) throws IOException {
+        if (!Files.isRegularFile(Paths.get(fileName))) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+            StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAGIC.length + 24 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION
+                || buf.getLong() != expectedChecksum) {
+                return null;
+            }
+            // check the trailing checksum before trusting any of the counts
+            CRC32C crc = new CRC32C();
+            crc.update(buf.duplicate().position(0).limit((int) size - 4));
+            if ((int) crc.getValue() != buf.getInt((int) size - 4)) {
+                return null;
+            }
+            int n = buf.getInt();
+            int m = buf.getInt();
+            Airport[] airports = new Airport[n];
+            for (int a = 0; a < n; a++) {
+                airports[a] = new Airport(readString(buf), readString(buf), readString(buf),
+                    readString(buf));
+            }
+            IntBuffer ints = buf.asIntBuffer();
+            int[][] arrays = new int[7][];
+            arrays[0] = new int[n + 1];
+            for (int i = 1; i < 7; i++) {
+                arrays[i] = new int[m];
+            }
+            // one bulk copy per array straight out of the mapped file
+            for (int[] array : arrays) {
+                ints.get(array);
+            }
+            return FlightNetwork.fromCompiled(airports, arrays[0], arrays[1], arrays[2],
+                arrays[3], arrays[4], arrays[5], arrays[6]);
+        }
+    }
+
+    /**
+     * Loads the network from the snapshot when it matches the .csv files, and
+     * otherwise imports the .csv files and writes a fresh snapshot
+     * @param airportsFile: the airport .csv file
+     * @param flightsFile: the flight .csv file
+     * @param snapshotFile: the snapshot file to use
+     * @return the network
+     * @throws IOException if the .csv files can't be read
+     */
+    public static FlightNetwork loadOrImport(String airportsFile, String flightsFile,
+        String snapshotFile) throws IOException {
+        long start = System.nanoTime();
+        long checksum = checksum(airportsFile, flightsFile);
+        FlightNetwork network = read(snapshotFile, checksum);
+        if (network != null) {
+            System.out.println("Loaded " + network.airportCount() + " airports and "
+                + network.flightCount() + " flights from " + snapshotFile + " in "
+                + ((System.nanoTime() - start) / 1_000_000) + " ms");
+            return network;
+        }
+        TimetableLoader loader = new TimetableLoader();
+        network = loader.load(airportsFile, flightsFile);
+        System.out.println(loader.getReport());
+        try {
+            write(network, checksum, snapshotFile);
+        } catch (IOException e) {
+            // the snapshot only speeds up the next start, so carry on without it
+            System.out.println("Could not write " + snapshotFile + ": " + e.getMessage());
+        }
+        return network;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string
+     * @param buf: the buffer positioned at the string
+     * @return the string
+     */
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,73 +1,94 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Generates a total flight path from one airport to another
+ * Generates a total flight path from one airport to another. A path is immutable
+ * and only stores its last flight and the path it extends, so extending a path
+ * takes constant time and paths with a common beginning share it instead of
+ * copying it.
  * @author megangibbons
  *
  */
 public class Path implements Comparable<Path> {
-    public String startTime; // start time of the entire path
-    public Flight start; // first flight
-    public int totalTime; // total time for flights and layovers
-    public List<Flight> dataSequence; // list of flights in order
-    public Flight end; // last flight
-    public String endTime; // end time of entire flight sequence
+    public final Path parent; // the path this one extends, or null for a single flight
+    public final Flight start; // first flight
+    public final Flight end; // last flight
+    public final int legs; // number of flights in the path
+    public final int startMinute; // start time of the entire path in minutes after midnight
+    public final int endMinute; // end time of the entire path in minutes after midnight
+    public final int totalTime; // total time for flights and layovers
 
     /**
      * Creates a path object
      * @param start: the first flight of the path
      */
     public Path(Flight start) {
-        this.start = start; 
-        // set the path time to be the time of the first flight
-        this.totalTime = start.getFlightDuration();
-        // add the first flight to the sequence of flights
-        this.dataSequence = new LinkedList<>();
-        this.dataSequence.add(start);
+        this.parent = null;
+        this.start = start;
         // set the end at the first flight, too
         this.end = start;
+        this.legs = 1;
+        // set the path time to be the time of the first flight
+        this.totalTime = start.getFlightDuration();
         // copy over the arrival and departures times from the first flight
-        this.startTime = start.getDepartureTime();
-        this.endTime = start.getArrivalTime();
+        this.startMinute = start.getDepartureMinute();
+        this.endMinute = start.getArrivalMinute();
     }
 
-
     /**
-     * Updates an existing path object by adding a new flight
-     * @param copyPath: the path to copy
+     * Creates a new path by adding a flight to the end of an existing path. The
+     * existing path is shared, not copied.
+     * @param copyPath: the path to extend
      * @param extendBy: the flight by which to extend the path
      */
     public Path(Path copyPath, Flight extendBy) {
-        // add the new flight's in air time to the total path duration
-        this.totalTime = copyPath.totalTime + extendBy.getFlightDuration();
-        // add the layover time between the current end flight and the new flight
-        // to the total path time
-        String[] pathTime = copyPath.endTime.split(":");
-        String[] flightTime = extendBy.getDepartureTime().split(":");
-        int pathHour = Integer.parseInt(pathTime[0]);
-        int pathMin = Integer.parseInt(pathTime[1]);
-        int flightHour = Integer.parseInt(flightTime[0]);
-        int flightMin = Integer.parseInt(flightTime[1]);
-        int layover = ((flightHour - pathHour) * 60) + flightMin - pathMin;
-        this.totalTime += layover;
-        // copy over the existing path's sequence of flights to the new path
+        this.parent = copyPath;
         this.start = copyPath.start;
-        this.dataSequence = new LinkedList<>();
-        for (int i = 0; i < copyPath.dataSequence.size(); i++) {
-            this.dataSequence.add(i, copyPath.dataSequence.get(i));
-        }
-        // add the new flight to the end of the path
-        this.dataSequence.add(copyPath.dataSequence.size(), extendBy);
         this.end = extendBy;
-        // copy forward the path's departure time
-        this.startTime = copyPath.startTime;
-        // update the path's arrival time to be the new flight's arrival time
-        this.endTime = extendBy.getArrivalTime();
+        this.legs = copyPath.legs + 1;
+        // add the new flight's in air time and the layover between the current end
+        // flight and the new flight to the total path time
+        int layover = extendBy.getDepartureMinute() - copyPath.endMinute;
+        this.totalTime = copyPath.totalTime + layover + extendBy.getFlightDuration();
+        // copy forward the path's departure time and update the arrival time to be
+        // the new flight's arrival time
+        this.startMinute = copyPath.startMinute;
+        this.endMinute = extendBy.getArrivalMinute();
+    }
+
+    /**
+     * Gets the time the path starts
+     * @return the departure time of the first flight as "H:MM"
+     */
+    public String getStartTime() {
+        return Flight.formatMinutes(this.startMinute);
+    }
+
+    /**
+     * Gets the time the path ends
+     * @return the arrival time of the last flight as "H:MM"
+     */
+    public String getEndTime() {
+        return Flight.formatMinutes(this.endMinute);
+    }
+
+    /**
+     * Gets the path's flights in order. The list is built from the parent links
+     * each time it's asked for.
+     * @return an unmodifiable list of the flights from first to last
+     */
+    public List<Flight> getFlights() {
+        ArrayList<Flight> flights = new ArrayList<>(this.legs);
+        for (Path p = this; p != null; p = p.parent) {
+            flights.add(p.end);
+        }
+        Collections.reverse(flights);
+        return Collections.unmodifiableList(flights);
     }
 
     /**
-     * Compares path's to one another. Allows the natural ordering of paths to 
+     * Compares path's to one another. Allows the natural ordering of paths to
      * be increasing with path duration.
      * @param other is the other path that is being compared to this one
          * @return -1 when this path has a smaller duration than the other,
@@ -84,11 +105,11 @@ public class Path implements Comparable<Path> {
      */
     @Override
     public String toString() {
-        String path = "";
-        for (int i = 0; i < dataSequence.size(); i++) {
-            path += (dataSequence.get(i).toString() + "\n");
+        StringBuilder path = new StringBuilder();
+        for (Flight f : getFlights()) {
+            path.append(f.toString()).append("\n");
         }
-        path += "Total time traveling: " + totalTime/60 + " hours and " + totalTime%60 + " minutes.\n";
-        return path;
+        path.append("Total time traveling: " + totalTime/60 + " hours and " + totalTime%60 + " minutes.\n");
+        return path.toString();
     }
 }
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Answers profile queries: every journey between two airports that leaves inside a
+ * departure window and isn't beaten by another journey that leaves no earlier and
+ * arrives no later. One scan over the flights, latest departure first, builds these
+ * (departure, arrival) pairs for every airport at once, so the whole window costs
+ * about as much as a single earliest arrival query instead of one per departure.
+ * @author megangibbons
+ *
+ */
+public class ProfileSearch {
+    private final FlightNetwork network; // the compiled timetable being scanned
+    private final int minConnection; // minutes needed between landing and taking off again
+    private final int[] flight; // network flight index of each connection
+    private final int[] depAirport; // departure airport of each connection
+    private final int[] arrAirport; // arrival airport of each connection
+    private final int[] depMinute; // departure minute of each connection
+    private final int[] arrMinute; // arrival minute of each connection
+    private final int[] lastLanding; // latest arrival minute at each airport, or -1
+
+    /**
+     * Creates the sorted connection arrays with the default connection time
+     * @param network: the airports and flights to scan
+     */
+    public ProfileSearch(FlightNetwork network) {
+        this(network, FlightNetwork.MIN_CONNECTION_MINUTES);
+    }
+
+    /**
+     * Creates the sorted connection arrays from a compiled timetable
+     * @param network: the airports and flights to scan
+     * @param minConnection: minutes needed between landing and taking off again
+     */
+    public ProfileSearch(FlightNetwork network, int minConnection) {
+        if (network == null || minConnection < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.minConnection = minConnection;
+        // sort by departure and then arrival, so scanning backwards sees a flight
+        // before any flight that leaves the same minute it lands
+        int m = network.flightCount();
+        Integer[] order = new Integer[m];
+        for (int f = 0; f < m; f++) {
+            order[f] = f;
+        }
+        Arrays.sort(order, Comparator.comparingInt(network::departureMinute)
+            .thenComparingInt(network::arrivalMinute));
+        this.flight = new int[m];
+        this.depAirport = new int[m];
+        this.arrAirport = new int[m];
+        this.depMinute = new int[m];
+        this.arrMinute = new int[m];
+        for (int c = 0; c < m; c++) {
+            int f = order[c];
+            this.flight[c] = f;
+            this.depAirport[c] = network.departureAirport(f);
+            this.arrAirport[c] = network.arrivalAirport(f);
+            this.depMinute[c] = network.departureMinute(f);
+            this.arrMinute[c] = network.arrivalMinute(f);
+        }
+        this.lastLanding = new int[network.airportCount()];
+        Arrays.fill(this.lastLanding, -1);
+        for (int f = 0; f < m; f++) {
+            int a = network.arrivalAirport(f);
+            this.lastLanding[a] = Math.max(this.lastLanding[a], network.arrivalMinute(f));
+        }
+    }
+
+    /**
+     * Gets the network the search was created over
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Finds every journey between two airports that leaves inside a window and
+     * isn't beaten by a later or equal departure, inside the window or after it,
+     * that arrives no later
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param windowStart: the earliest departure time in minutes after midnight
+     * @param windowEnd: the latest departure time in minutes after midnight
+     * @return the journeys ordered by departure time, empty if there are none
+     */
+    public List<Path> profile(String start, String end, int windowStart, int windowEnd) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return Collections.emptyList();
+        }
+        return profile(origin, target, windowStart, windowEnd);
+    }
+
+    /**
+     * Finds every journey between two airports that leaves inside a window and
+     * isn't beaten by a later or equal departure, inside the window or after it,
+     * that arrives no later
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param windowStart: the earliest departure time in minutes after midnight
+     * @param windowEnd: the latest departure time in minutes after midnight
+     * @return the journeys ordered by departure time, empty if there are none
+     */
+    public List<Path> profile(int origin, int target, int windowStart, int windowEnd) {
+        if (windowStart > windowEnd) {
+            throw new IllegalArgumentException("The window ends before it starts");
+        }
+        int n = this.network.airportCount();
+        // each airport's profile is a stack of (departure, arrival) pairs. Pairs
+        // are pushed in falling departure order and only when they arrive strictly
+        // earlier than the top pair, so both columns fall from bottom to top.
+        int[][] dep = new int[n][];
+        int[][] arr = new int[n][];
+        int[][] conn = new int[n][];
+        int[][] next = new int[n][]; // pair of the arrival airport that follows, or -1
+        int[] size = new int[n];
+        // nothing departing after the last landing at the target can reach it
+        int c = lastDepartingBy(this.lastLanding[target]);
+        for (; c >= 0 && this.depMinute[c] >= windowStart; c--) {
+            int from = this.depAirport[c];
+            int to = this.arrAirport[c];
+            // journeys never pass back through the origin or leave the target
+            if (to == origin || from == target) {
+                continue;
+            }
+            int arrival;
+            int following = -1;
+            if (to == target) {
+                arrival = this.arrMinute[c];
+            } else {
+                // the earliest arrival from the next airport is the pair with the
+                // smallest departure that still makes the connection
+                following = lastDepartingAt(dep[to], size[to],
+                    this.arrMinute[c] + this.minConnection);
+                if (following < 0) {
+                    continue;
+                }
+                arrival = arr[to][following];
+            }
+            int top = size[from] - 1;
+            if (top >= 0 && arrival >= arr[from][top]) {
+                continue;
+            }
+            // a pair departing the same minute as the top pair replaces it
+            if (top < 0 || dep[from][top] != this.depMinute[c]) {
+                top++;
+                if (dep[from] == null) {
+                    dep[from] = new int[4];
+                    arr[from] = new int[4];
+                    conn[from] = new int[4];
+                    next[from] = new int[4];
+                } else if (top == dep[from].length) {
+                    dep[from] = Arrays.copyOf(dep[from], top * 2);
+                    arr[from] = Arrays.copyOf(arr[from], top * 2);
+                    conn[from] = Arrays.copyOf(conn[from], top * 2);
+                    next[from] = Arrays.copyOf(next[from], top * 2);
+                }
+                size[from] = top + 1;
+            }
+            dep[from][top] = this.depMinute[c];
+            arr[from][top] = arrival;
+            conn[from][top] = c;
+            next[from][top] = following;
+        }
+        // the origin's stack holds the answer, latest departure at the bottom. Pairs
+        // leaving after the window were kept so that waiting for them beats any
+        // slower journey inside the window, but they aren't returned.
+        List<Path> journeys = new ArrayList<>();
+        for (int p = size[origin] - 1; p >= 0; p--) {
+            if (dep[origin][p] > windowEnd) {
+                break;
+            }
+            Path path = null;
+            int airport = origin;
+            int pair = p;
+            while (pair >= 0) {
+                Flight leg = this.network.flight(this.flight[conn[airport][pair]]);
+                path = path == null ? new Path(leg) : new Path(path, leg);
+                int nextPair = next[airport][pair];
+                airport = this.arrAirport[conn[airport][pair]];
+                pair = nextPair;
+            }
+            journeys.add(path);
+        }
+        return journeys;
+    }
+
+    /**
+     * Finds the last connection departing at or before a time with a binary search
+     * @param minute: the time in minutes after midnight
+     * @return position of the connection, or -1 if every connection departs later
+     */
+    private int lastDepartingBy(int minute) {
+        int low = 0;
+        int high = this.flight.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.depMinute[mid] <= minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Finds the pair in a profile with the smallest departure at or after a time.
+     * Departures fall from the bottom of the stack to the top, so this is the
+     * highest pair that still departs late enough.
+     * @param dep: the profile's departure column
+     * @param size: the number of pairs in the profile
+     * @param minute: the time in minutes after midnight
+     * @return position of the pair, or -1 if every pair departs earlier
+     */
+    private static int lastDepartingAt(int[] dep, int size, int minute) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dep[mid] >= minute) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+}
@@ -0,0 +1,371 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe cache of path query results keyed by origin, destination and
+ * departure window. It holds at most a fixed number of results and forgets results
+ * after a time limit. The results are split over several segments by key, each with
+ * its own lock and its own share of the size, so lookups of different keys rarely
+ * wait on each other; a full segment drops its least recently used result, which
+ * makes the whole cache roughly least recently used. When several
+ * threads miss on the same key at once, only one of them runs the search and the
+ * others wait for its answer. Switching to a newer network clears the cache in one
+ * step, so no result from an old timetable is ever returned, and queries still
+ * running on an older network skip the cache.
+ * @author megangibbons
+ *
+ */
+public class QueryCache {
+    // window used for queries that consider every departure time of the day
+    public static final int WHOLE_DAY = -1;
+    private static final int SEGMENTS = 16; // most segments the results are split over
+
+    private final int segmentEntries; // most results kept in each segment
+    private final long ttlNanos; // how long a result stays valid
+    private final Segment[] segments; // the results, split by key
+    private final ConcurrentHashMap<Key, CompletableFuture<Path>> inFlight; // searches being run
+    private volatile Generation current; // where the cached results came from, null at first
+    private final LongAdder hits = new LongAdder(); // lookups answered from the cache
+    private final LongAdder misses = new LongAdder(); // lookups that ran a search
+    private final LongAdder evictions = new LongAdder(); // results dropped for size or age
+
+    /**
+     * A network and the cache generation its results are stored under. It's
+     * replaced, never changed, whenever the cache is cleared.
+     */
+    private static final class Generation {
+        final FlightNetwork network; // the network the results come from
+        final int number; // bumped every time the cache is cleared
+
+        /**
+         * Creates a generation
+         * @param network: the network the results come from
+         * @param number: the generation number
+         */
+        Generation(FlightNetwork network, int number) {
+            this.network = network;
+            this.number = number;
+        }
+    }
+
+    /**
+     * One share of the results, in least recently used order. Callers lock the
+     * segment while they use its map.
+     */
+    private static final class Segment {
+        final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // LRU order
+    }
+
+    /**
+     * A cached result and when it stops being valid
+     */
+    private static class Entry {
+        final Path path; // the result, or null if there was no path
+        final long expires; // System.nanoTime() after which the result is stale
+
+        /**
+         * Creates a cache entry
+         * @param path: the result
+         * @param expires: when the result stops being valid
+         */
+        Entry(Path path, long expires) {
+            this.path = path;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The origin, destination and departure window of a query, plus the cache
+     * generation it was asked in
+     */
+    private static final class Key {
+        final String origin; // acronym of the departure airport
+        final String destination; // acronym of the arrival airport
+        final int window; // start of the departure window, or WHOLE_DAY
+        final int generation; // cache generation the key belongs to
+
+        /**
+         * Creates a key
+         * @param origin: acronym of the departure airport
+         * @param destination: acronym of the arrival airport
+         * @param window: start of the departure window
+         * @param generation: cache generation the key belongs to
+         */
+        Key(String origin, String destination, int window, int generation) {
+            this.origin = origin;
+            this.destination = destination;
+            this.window = window;
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return this.window == k.window && this.generation == k.generation
+                && this.origin.equals(k.origin) && this.destination.equals(k.destination);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((this.origin.hashCode() * 31 + this.destination.hashCode()) * 31
+                + this.window) * 31 + this.generation;
+        }
+    }
+
+    /**
+     * Creates a cache
+     * @param maxEntries: most results kept at once
+     * @param ttlMillis: how long a result stays valid in milliseconds
+     */
+    public QueryCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        // never more segments than results, so the segments' shares add up to at
+        // most maxEntries
+        this.segments = new Segment[Math.min(SEGMENTS, maxEntries)];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentEntries = maxEntries / this.segments.length;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Finds the departure window a query falls in. Every departure time between
+     * two consecutive departures from the origin gives the same answer, so they
+     * share a window that starts at the next departure.
+     * @param network: the network being searched
+     * @param origin: the departure airport id
+     * @param departAfter: the requested earliest departure in minutes after midnight
+     * @return the departure minute of the next flight, or Integer.MAX_VALUE if
+     *         there is no later flight
+     */
+    public static int windowFor(FlightNetwork network, int origin, int departAfter) {
+        int f = network.firstDepartureAtOrAfter(origin, departAfter);
+        return f < network.endFlightFrom(origin) ? network.departureMinute(f) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the cached result of a query, or runs the search and caches its result
+     * @param network: the network the query is for
+     * @param origin: acronym of the departure airport
+     * @param destination: acronym of the arrival airport
+     * @param window: the query's departure window, or WHOLE_DAY
+     * @param search: runs the query when the result isn't cached
+     * @return the query's path, or null if there is none
+     */
+    public Path get(FlightNetwork network, String origin, String destination, int window,
+        Supplier<Path> search) {
+        Generation generation = generationFor(network);
+        if (generation == null) {
+            // a query that started before an update finishes on its old network
+            // without the cache, so it can't clear the newer network's results
+            this.misses.increment();
+            return search.get();
+        }
+        Key key = new Key(origin, destination, window, generation.number);
+        Entry cached = lookup(key);
+        if (cached != null) {
+            this.hits.increment();
+            return cached.path;
+        }
+        this.misses.increment();
+        // only the first thread to miss on a key runs the search
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = this.inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                // throw what the searching thread threw, not the future's wrapper
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            // another thread may have stored the result just before this one started
+            Entry e = lookup(key);
+            if (e != null) {
+                mine.complete(e.path);
+                return e.path;
+            }
+            Path path = search.get();
+            store(key, path);
+            mine.complete(path);
+            return path;
+        } catch (RuntimeException | Error e) {
+            // waiting threads get the same exception instead of waiting forever
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Removes every cached result
+     */
+    public synchronized void invalidateAll() {
+        Generation generation = this.current;
+        if (generation != null) {
+            clear(generation.network, generation.number + 1);
+        }
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache
+     * @return the hit count
+     */
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to run a search
+     * @return the miss count
+     */
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the number of results dropped because the cache was full or they expired
+     * @return the eviction count
+     */
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Gets the number of cached results
+     * @return the cache size
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the cache's counters
+     * @return the cache statistics in a String
+     */
+    @Override
+    public String toString() {
+        return "Cache size: " + size() + ", hits: " + hits() + ", misses: " + misses()
+            + ", evictions: " + evictions();
+    }
+
+    /**
+     * Gets the generation results for a network are stored under, clearing the
+     * cache first if the network is newer than the one the results came from
+     * @param network: the network a query is for
+     * @return the generation, or null if the network is older than the cached one
+     */
+    private Generation generationFor(FlightNetwork network) {
+        Generation generation = this.current;
+        if (generation != null && generation.network == network) {
+            return generation;
+        }
+        synchronized (this) {
+            generation = this.current;
+            if (generation == null || network.generation() > generation.network.generation()) {
+                // results from a different network must never be returned
+                clear(network, generation == null ? 0 : generation.number + 1);
+                return this.current;
+            }
+            return generation.network == network ? generation : null;
+        }
+    }
+
+    /**
+     * Finds an unexpired result, dropping it if it has expired
+     * @param key: the query
+     * @return the entry, or null if there isn't an unexpired one
+     */
+    private Entry lookup(Key key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry e = segment.entries.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (e.expires - System.nanoTime() > 0) {
+                return e;
+            }
+            segment.entries.remove(key);
+        }
+        this.evictions.increment();
+        return null;
+    }
+
+    /**
+     * Saves a search result, unless the cache was cleared while it was running
+     * @param key: the query
+     * @param path: the result
+     */
+    private void store(Key key, Path path) {
+        if (key.generation != this.current.number) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        int evicted = 0;
+        synchronized (segment) {
+            segment.entries.put(key, new Entry(path, System.nanoTime() + this.ttlNanos));
+            // expired results are dropped when they're next looked up, and the least
+            // recently used ones are dropped here when the segment is over its share
+            Iterator<Key> itr = segment.entries.keySet().iterator();
+            while (segment.entries.size() > this.segmentEntries) {
+                itr.next();
+                itr.remove();
+                evicted++;
+            }
+        }
+        this.evictions.add(evicted);
+    }
+
+    /**
+     * Gets the segment a key's result is kept in
+     * @param key: the query
+     * @return the segment
+     */
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        return this.segments[Math.floorMod(h ^ (h >>> 16), this.segments.length)];
+    }
+
+    /**
+     * Moves to a new generation, so searches that are still running don't store
+     * their results, and drops every result. Callers hold the cache's lock.
+     * @param network: the network results will come from
+     * @param number: the new generation number
+     */
+    private void clear(FlightNetwork network, int number) {
+        this.current = new Generation(network, number);
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+}
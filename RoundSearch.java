@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the itineraries that trade arrival time against the number of flights, in
+ * the style of RAPTOR. Round k only extends the airports that were improved in round
+ * k - 1, so after round k every airport's label is its earliest arrival using at
+ * most k flights. Each airport keeps one label per round, and a label is only kept
+ * if it beats both the airport's best arrival so far and the best arrival at the
+ * destination, which keeps every round small.
+ * @author megangibbons
+ *
+ */
+public class RoundSearch {
+    private final FlightNetwork network; // the compiled timetable being searched
+    private final int minConnection; // minutes needed between landing and taking off again
+
+    /**
+     * Creates a round search with the default connection time
+     * @param network: the airports and flights to search
+     */
+    public RoundSearch(FlightNetwork network) {
+        this(network, FlightNetwork.MIN_CONNECTION_MINUTES);
+    }
+
+    /**
+     * Creates a round search over a compiled timetable
+     * @param network: the airports and flights to search
+     * @param minConnection: minutes needed between landing and taking off again
+     */
+    public RoundSearch(FlightNetwork network, int minConnection) {
+        if (network == null || minConnection < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.network = network;
+        this.minConnection = minConnection;
+    }
+
+    /**
+     * Gets the network the search was created over
+     * @return the compiled timetable
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Finds every itinerary between two airports that no other itinerary beats on
+     * both arrival time and number of flights
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param maxTransfers: the most connections an itinerary may have
+     * @return the itineraries ordered by number of flights, empty if there are none
+     */
+    public List<Path> paretoFront(String start, String end, int departAfter, int maxTransfers) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return Collections.emptyList();
+        }
+        return paretoFront(origin, target, departAfter, maxTransfers);
+    }
+
+    /**
+     * Finds every itinerary between two airports that no other itinerary beats on
+     * both arrival time and number of flights
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param maxTransfers: the most connections an itinerary may have
+     * @return the itineraries ordered by number of flights, empty if there are none
+     */
+    public List<Path> paretoFront(int origin, int target, int departAfter, int maxTransfers) {
+        if (maxTransfers < 0) {
+            throw new IllegalArgumentException("The number of transfers can't be negative");
+        }
+        int n = this.network.airportCount();
+        // a label is only kept if it beats the airport's best arrival, so an
+        // itinerary never passes through an airport twice and has at most n - 1
+        // flights however many transfers are allowed
+        int rounds = Math.min(maxTransfers, n - 2) + 1;
+        SearchWorkspace ws = SearchWorkspace.get(n); // best arrival at each airport over all rounds
+        Labels labels = Labels.get(n);
+        ws.label(origin, departAfter, -1);
+        labels.nextRound();
+        labels.reach(origin, -1, departAfter, -1);
+        // labels from .. to - 1 are the airports improved in the last round
+        int from = 0;
+        int to = labels.count;
+        int bestTarget = Integer.MAX_VALUE; // the destination's best arrival, kept at hand
+        List<Path> front = new ArrayList<>();
+        // stop early once a round improves nothing, since later rounds can't either
+        for (int k = 1; k <= rounds && from < to; k++) {
+            labels.nextRound();
+            for (int i = from; i < to; i++) {
+                int curr = labels.airport[i];
+                // the destination is never extended, it only records the front
+                if (curr == target) {
+                    continue;
+                }
+                // the first flight may leave at the requested time, connecting
+                // flights need the minimum connection time after landing
+                int ready = k == 1 ? departAfter : labels.arrival[i] + this.minConnection;
+                int end = this.network.endFlightFrom(curr);
+                for (int f = this.network.firstDepartureAtOrAfter(curr, ready); f < end; f++) {
+                    // flights leave in time order, so once one leaves after the
+                    // destination's best arrival none of the rest can help
+                    if (this.network.departureMinute(f) >= bestTarget) {
+                        break;
+                    }
+                    int next = this.network.arrivalAirport(f);
+                    int arr = this.network.arrivalMinute(f);
+                    if (arr >= bestTarget || arr >= ws.arrival(next)) {
+                        continue;
+                    }
+                    if (next == target) {
+                        bestTarget = arr;
+                    }
+                    ws.label(next, arr, f);
+                    labels.reach(next, f, arr, i);
+                }
+            }
+            from = to;
+            to = labels.count;
+            for (int i = from; i < to; i++) {
+                if (labels.airport[i] == target) {
+                    front.add(buildPath(labels, i, k));
+                }
+            }
+        }
+        return front;
+    }
+
+    /**
+     * Builds the itinerary of a label by following each label back to the one it
+     * was reached from
+     * @param labels: the labels of the search
+     * @param label: the label at the end of the itinerary
+     * @param round: the label's round, which is the number of flights in the itinerary
+     * @return the path
+     */
+    private Path buildPath(Labels labels, int label, int round) {
+        int[] chain = new int[round];
+        for (int k = round; k >= 1; k--) {
+            chain[k - 1] = labels.flight[label];
+            label = labels.parent[label];
+        }
+        Path path = new Path(this.network.flight(chain[0]));
+        for (int k = 1; k < round; k++) {
+            path = new Path(path, this.network.flight(chain[k]));
+        }
+        return path;
+    }
+
+    /**
+     * The labels of one round search, one per airport improved in each round. Each
+     * round's labels come right after the previous round's, and each label points at
+     * the label its flight left from. Like SearchWorkspace, every thread reuses its
+     * own arrays, and a round stamp instead of clearing tells which airports already
+     * have a label in the current round.
+     * @author megangibbons
+     *
+     */
+    private static final class Labels {
+        // the labels of each thread, grown whenever a search needs more room
+        private static final ThreadLocal<Labels> LOCAL = ThreadLocal.withInitial(Labels::new);
+
+        private int[] airport = new int[64]; // airport of each label
+        private int[] flight = new int[64]; // flight that reached the airport, or -1 for the origin
+        private int[] arrival = new int[64]; // arrival minute of each label
+        private int[] parent = new int[64]; // label the flight left from, or -1 for the origin
+        private int count; // labels in the current search
+        private int[] roundStamp = new int[0]; // round in which each airport was last labelled
+        private int[] roundLabel = new int[0]; // label of each airport in that round
+        private int round; // number of the current round, counted across searches
+
+        /**
+         * Gets the calling thread's labels, emptied for a new search
+         * @param airportCount: the number of airports in the network being searched
+         * @return the thread's labels
+         */
+        private static Labels get(int airportCount) {
+            Labels labels = LOCAL.get();
+            if (labels.roundStamp.length < airportCount) {
+                labels.roundStamp = new int[airportCount];
+                labels.roundLabel = new int[airportCount];
+                labels.round = 0;
+            }
+            labels.count = 0;
+            return labels;
+        }
+
+        /**
+         * Starts a new round, so no airport has a label in it yet. This only moves
+         * the round number, except when it wraps around.
+         */
+        private void nextRound() {
+            this.round++;
+            if (this.round == 0) {
+                Arrays.fill(this.roundStamp, 0);
+                this.round = 1;
+            }
+        }
+
+        /**
+         * Records that a flight improves an airport in the current round, replacing
+         * the airport's earlier label of this round if it has one
+         * @param at: the airport id
+         * @param by: the flight index, or -1 for the origin
+         * @param minute: the arrival minute
+         * @param from: the label the flight left from, or -1 for the origin
+         */
+        private void reach(int at, int by, int minute, int from) {
+            int label;
+            if (this.roundStamp[at] == this.round) {
+                label = this.roundLabel[at];
+            } else {
+                if (this.count == this.airport.length) {
+                    int size = this.count * 2;
+                    this.airport = Arrays.copyOf(this.airport, size);
+                    this.flight = Arrays.copyOf(this.flight, size);
+                    this.arrival = Arrays.copyOf(this.arrival, size);
+                    this.parent = Arrays.copyOf(this.parent, size);
+                }
+                label = this.count++;
+                this.roundStamp[at] = this.round;
+                this.roundLabel[at] = label;
+                this.airport[label] = at;
+            }
+            this.flight[label] = by;
+            this.arrival[label] = minute;
+            this.parent[label] = from;
+        }
+    }
+}
@@ -0,0 +1,1554 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Small command line benchmarks for the search engines. Run it from the folder with
+ * the .csv files, for example "java SearchBenchmark allocation". Benchmarks that
+ * need more airports than the bundled timetable has use a generated one instead.
+ * @author megangibbons
+ *
+ */
+public class SearchBenchmark {
+
+    /**
+     * Measures how many bytes the calling thread allocates while running earliest
+     * arrival queries between every pair of airports at every hour of the day. The
+     * queries are run once to warm up first, so a result of zero means steady-state
+     * queries create no garbage.
+     * @param network: the network to query
+     * @param rounds: how many times to repeat the full set of queries
+     */
+    public static void allocationPerQuery(FlightNetwork network, int rounds) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        // warm up so class loading, the workspace, and the JIT aren't measured
+        runQueries(search, network, rounds);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long queries = runQueries(search, network, rounds);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("Queries: " + queries);
+        System.out.println("Average latency: " + (elapsed / queries) + " ns");
+        System.out.println("Allocated per query: " + ((double) allocated / queries) + " bytes");
+    }
+
+    /**
+     * Times the all-pairs matrix precompute on pools of 1, 2, 4, ... threads up to
+     * the number of cores, and prints the speedup over one thread. Each pool size is
+     * run a few times and the best time is kept. First checks that every path the
+     * matrix rebuilds takes the matrix's total time.
+     * @param network: the network to precompute
+     * @return the number of paths whose total time differs from the matrix
+     */
+    public static long allPairsScaling(FlightNetwork network) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Airports: " + network.airportCount() + ", flights: "
+            + network.flightCount() + ", cores: " + cores);
+        // warm up the JIT on every core before timing anything, and check that each
+        // rebuilt path takes the time its matrix entry says
+        AllPairsMatrix matrix = new AllPairsMatrix(network);
+        long mismatches = 0;
+        for (int o = 0; o < network.airportCount(); o++) {
+            for (int d = 0; d < network.airportCount(); d++) {
+                Path path = matrix.pathFor(o, d);
+                if ((path == null ? -1 : path.totalTime) != matrix.totalTime(o, d)) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Path mismatches: " + mismatches);
+        long single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                new AllPairsMatrix(network, pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            if (threads == 1) {
+                single = best;
+            }
+            System.out.printf("Threads: %d, time: %d ms, speedup: %.2f%n", threads,
+                best / 1000000, (double) single / best);
+            if (threads == cores) {
+                break;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Compares one profile query over the whole day with the per-departure searches
+     * it replaces: an earliest arrival query for every distinct departure time from
+     * the origin. Both are run for every airport pair.
+     * @param network: the network to query
+     * @param rounds: how many times to repeat the full set of queries
+     */
+    public static void profileVersusDepartures(FlightNetwork network, int rounds) {
+        ProfileSearch profiles = new ProfileSearch(network);
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        long profileTime = 0;
+        long departuresTime = 0;
+        long journeys = 0;
+        // the first round only warms up the JIT
+        for (int r = 0; r <= rounds; r++) {
+            long start = System.nanoTime();
+            for (int origin = 0; origin < n; origin++) {
+                for (int target = 0; target < n; target++) {
+                    if (origin != target) {
+                        journeys += profiles.profile(origin, target, 0, 24 * 60 - 1).size();
+                    }
+                }
+            }
+            long middle = System.nanoTime();
+            for (int origin = 0; origin < n; origin++) {
+                for (int target = 0; target < n; target++) {
+                    int last = -1;
+                    for (int f = network.firstFlightFrom(origin);
+                        f < network.endFlightFrom(origin); f++) {
+                        if (origin != target && network.departureMinute(f) != last) {
+                            last = network.departureMinute(f);
+                            search.earliestArrivalMinute(origin, target, last);
+                        }
+                    }
+                }
+            }
+            if (r > 0) {
+                profileTime += middle - start;
+                departuresTime += System.nanoTime() - middle;
+            }
+        }
+        long pairs = (long) rounds * n * (n - 1);
+        System.out.println("Pairs: " + pairs + ", journeys per pair: "
+            + ((double) journeys / (pairs + (long) n * (n - 1))));
+        System.out.println("Profile query: " + (profileTime / pairs) + " ns per pair");
+        System.out.println("Query per departure: " + (departuresTime / pairs) + " ns per pair");
+    }
+
+    /**
+     * Compares the goal-directed search with the plain search on every airport pair
+     * at every hour of the day: how many airports each one settles, how long each
+     * query takes, and whether they ever disagree on the arrival time
+     * @param network: the network to query
+     * @param rounds: how many times to repeat the timed queries
+     * @return the number of queries where the arrival times differ
+     */
+    public static long goalDirectedReport(FlightNetwork network, int rounds) {
+        EarliestArrivalSearch plain = new EarliestArrivalSearch(network);
+        long start = System.nanoTime();
+        GoalDirectedSearch goal = new GoalDirectedSearch(network);
+        long precompute = System.nanoTime() - start;
+        int n = network.airportCount();
+        long plainSettled = 0;
+        long goalSettled = 0;
+        long queries = 0;
+        long mismatches = 0;
+        for (int origin = 0; origin < n; origin++) {
+            for (int target = 0; target < n; target++) {
+                for (int hour = 0; hour < 24 && origin != target; hour++) {
+                    SearchWorkspace ws = SearchWorkspace.get(n);
+                    plain.search(origin, target, hour * 60, ws);
+                    plainSettled += ws.settledCount();
+                    int expected = ws.previous(target) < 0 ? -1 : ws.arrival(target);
+                    ws = SearchWorkspace.get(n);
+                    goal.search(origin, target, hour * 60, ws);
+                    goalSettled += ws.settledCount();
+                    int actual = ws.previous(target) < 0 ? -1 : ws.arrival(target);
+                    if (actual != expected) {
+                        mismatches++;
+                    }
+                    queries++;
+                }
+            }
+        }
+        long plainTime = 0;
+        long goalTime = 0;
+        // the first round only warms up the JIT
+        for (int r = 0; r <= rounds; r++) {
+            long before = System.nanoTime();
+            runQueries(plain, network, 1);
+            long middle = System.nanoTime();
+            for (int origin = 0; origin < n; origin++) {
+                for (int target = 0; target < n; target++) {
+                    for (int hour = 0; hour < 24; hour++) {
+                        goal.earliestArrivalMinute(origin, target, hour * 60);
+                    }
+                }
+            }
+            if (r > 0) {
+                plainTime += middle - before;
+                goalTime += System.nanoTime() - middle;
+            }
+        }
+        long timed = (long) rounds * n * n * 24;
+        System.out.println("Landmarks: " + goal.landmarkCount() + ", precompute: "
+            + (precompute / 1000) + " us");
+        System.out.printf("Settled per query: plain %.2f, goal-directed %.2f (%.1f%% fewer)%n",
+            (double) plainSettled / queries, (double) goalSettled / queries,
+            100.0 * (plainSettled - goalSettled) / plainSettled);
+        System.out.println("Average latency: plain " + (plainTime / timed) + " ns, goal-directed "
+            + (goalTime / timed) + " ns");
+        System.out.println("Arrival mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Precomputes the transfer patterns, saves and reloads them, and checks the
+     * reloaded patterns against the plain search on random queries. Prints how long
+     * each step took and how the query latencies compare.
+     * @param network: the network to precompute
+     * @param queries: the number of random queries to check
+     * @param seed: seed for picking the random queries
+     * @return the number of queries where the answers differ, or 1 if the saved
+     *         patterns can't be read back
+     * @throws IOException if the patterns can't be saved or reloaded
+     */
+    public static long transferPatternCheck(FlightNetwork network, int queries, long seed)
+        throws IOException {
+        long start = System.nanoTime();
+        TransferPatterns built = new TransferPatterns(network);
+        long precompute = System.nanoTime() - start;
+        String file = "benchmark.patterns";
+        built.write(file);
+        start = System.nanoTime();
+        TransferPatterns patterns = TransferPatterns.read(file, network);
+        long reload = System.nanoTime() - start;
+        java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(file));
+        if (patterns == null) {
+            System.out.println("The saved patterns could not be read back");
+            return 1;
+        }
+        System.out.println("Patterns: " + patterns.patternCount() + ", prefix tree nodes: "
+            + patterns.nodeCount() + ", precompute: " + (precompute / 1_000_000)
+            + " ms, reload: " + (reload / 1_000_000) + " ms");
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        int[] origins = new int[queries];
+        int[] targets = new int[queries];
+        int[] times = new int[queries];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int q = 0; q < queries; q++) {
+            origins[q] = random.nextInt(n);
+            targets[q] = random.nextInt(n);
+            times[q] = random.nextInt(24 * 60);
+        }
+        long mismatches = 0;
+        long searchTime = 0;
+        long patternTime = 0;
+        // the first round only warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            long before = System.nanoTime();
+            int[] expected = new int[queries];
+            for (int q = 0; q < queries; q++) {
+                expected[q] = origins[q] == targets[q] ? -1
+                    : search.earliestArrivalMinute(origins[q], targets[q], times[q]);
+            }
+            long middle = System.nanoTime();
+            int[] actual = new int[queries];
+            for (int q = 0; q < queries; q++) {
+                actual[q] = patterns.earliestArrivalMinute(origins[q], targets[q], times[q]);
+            }
+            searchTime = middle - before;
+            patternTime = System.nanoTime() - middle;
+            for (int q = 0; q < queries && round == 1; q++) {
+                if (actual[q] != expected[q]) {
+                    mismatches++;
+                    if (mismatches <= 5) {
+                        System.out.println("Mismatch: " + network.acronym(origins[q]) + " to "
+                            + network.acronym(targets[q]) + " after "
+                            + Flight.formatMinutes(times[q]) + ", search " + expected[q]
+                            + ", patterns " + actual[q]);
+                    }
+                }
+            }
+        }
+        System.out.println("Average latency: search " + (searchTime / queries)
+            + " ns, patterns " + (patternTime / queries) + " ns");
+        System.out.println("Mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Checks the round search's Pareto fronts on random queries. Each front has to
+     * go from fewer flights and later arrivals to more flights and earlier ones,
+     * stay within its transfer limit, and only hold itineraries that can be flown.
+     * With no limit on transfers the last entry has to arrive when the earliest
+     * arrival search says, and the front is empty only if the search finds nothing.
+     * @param network: the network to query
+     * @param queries: the number of random queries to check
+     * @param seed: seed for picking the random queries
+     * @return the number of queries whose front is wrong
+     */
+    public static long paretoCheck(FlightNetwork network, int queries, long seed) {
+        RoundSearch rounds = new RoundSearch(network);
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(seed);
+        long mismatches = 0;
+        long entries = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            int target = random.nextInt(n);
+            int departAfter = random.nextInt(24 * 60);
+            // half the queries have no limit, the rest allow up to 5 transfers
+            int maxTransfers = random.nextBoolean() ? Integer.MAX_VALUE : random.nextInt(6);
+            if (origin == target) {
+                continue;
+            }
+            List<Path> front = rounds.paretoFront(origin, target, departAfter, maxTransfers);
+            entries += front.size();
+            String problem = null;
+            for (int i = 0; i < front.size() && problem == null; i++) {
+                Path path = front.get(i);
+                if (i > 0 && (path.legs <= front.get(i - 1).legs
+                    || path.endMinute >= front.get(i - 1).endMinute)) {
+                    problem = "entry " + i + " isn't in Pareto order";
+                } else if (path.legs - 1 > maxTransfers) {
+                    problem = "entry " + i + " has too many transfers";
+                } else {
+                    problem = flownProblem(network, path, origin, target, departAfter);
+                }
+            }
+            if (problem == null && maxTransfers == Integer.MAX_VALUE) {
+                int expected = search.earliestArrivalMinute(origin, target, departAfter);
+                int actual = front.isEmpty() ? -1 : front.get(front.size() - 1).endMinute;
+                if (actual != expected) {
+                    problem = "last entry arrives at " + actual + ", search says " + expected;
+                }
+            }
+            if (problem != null) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch: " + network.acronym(origin) + " to "
+                        + network.acronym(target) + " after " + Flight.formatMinutes(departAfter)
+                        + ": " + problem);
+                }
+            }
+        }
+        System.out.println("Front entries: " + entries + ", average latency: "
+            + ((System.nanoTime() - start) / queries) + " ns");
+        System.out.println("Mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Checks that an itinerary can be flown: it leaves the origin no earlier than
+     * asked, each flight leaves from where the last one landed after the minimum
+     * connection time, and it ends at the destination
+     * @param network: the network the itinerary is from
+     * @param path: the itinerary
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return what's wrong with the itinerary, or null if nothing is
+     */
+    private static String flownProblem(FlightNetwork network, Path path, int origin,
+        int target, int departAfter) {
+        List<Flight> flights = path.getFlights();
+        int at = origin;
+        int ready = departAfter;
+        for (Flight f : flights) {
+            if (network.airportId(f.getDepartureAirport().getAcronym()) != at
+                || f.getDepartureMinute() < ready) {
+                return "flight " + f.getID() + " can't be taken";
+            }
+            at = network.airportId(f.getArrivalAirport().getAcronym());
+            ready = f.getArrivalMinute() + FlightNetwork.MIN_CONNECTION_MINUTES;
+        }
+        return at == target ? null : "it doesn't end at the destination";
+    }
+
+    /**
+     * Checks FlightNetwork.withUpdate against compiling the changed timetable from
+     * scratch. Each batch mixes delays, cancellations, cancelling a flight and
+     * adding it back with the same ID, and new flights, and is applied to the
+     * network the last batch made, so later batches also run on carried-over
+     * flight objects. Every batch is also followed by the ways a batch can be
+     * turned down, each of which must throw IllegalArgumentException.
+     * @param base: the network to start from
+     * @param batches: the number of batches to apply
+     * @param seed: seed for making the random batches
+     * @return the number of batches or rejections that went wrong
+     */
+    public static long updateCheck(FlightNetwork base, int batches, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int n = base.airportCount();
+        // the timetable as rows of departure airport, arrival airport, departure
+        // minute, arrival minute and duration, changed along with the network
+        HashMap<Integer, int[]> rows = new HashMap<>();
+        int nextId = 0;
+        for (int f = 0; f < base.flightCount(); f++) {
+            rows.put(base.flightId(f), new int[] {base.departureAirport(f),
+                base.arrivalAirport(f), base.departureMinute(f), base.arrivalMinute(f),
+                base.duration(f)});
+            nextId = Math.max(nextId, base.flightId(f) + 1);
+        }
+        FlightNetwork current = base;
+        long mismatches = 0;
+        long updateTime = 0;
+        long rebuildTime = 0;
+        for (int b = 0; b < batches; b++) {
+            TimetableUpdate update = new TimetableUpdate();
+            HashMap<Integer, int[]> expected = new HashMap<>(rows);
+            List<Integer> ids = new ArrayList<>(rows.keySet());
+            for (int c = 1 + random.nextInt(20); c > 0; c--) {
+                int id = ids.get(random.nextInt(ids.size()));
+                int[] row = expected.get(id);
+                // change each flight at most once per batch so the rows stay simple
+                if (row != rows.get(id)) {
+                    continue;
+                }
+                switch (random.nextInt(4)) {
+                    case 0:
+                        int delay = random.nextInt(-row[2], 301);
+                        update.delay(id, delay);
+                        expected.put(id, new int[] {row[0], row[1], row[2] + delay,
+                            row[3] + delay, row[4]});
+                        break;
+                    case 1:
+                        update.cancel(id);
+                        expected.remove(id);
+                        break;
+                    case 2:
+                        int[] again = randomRow(random, n);
+                        update.cancel(id).add(id, current.acronym(again[0]),
+                            current.acronym(again[1]), again[2], again[3], again[4]);
+                        expected.put(id, again);
+                        break;
+                    default:
+                        int[] added = randomRow(random, n);
+                        update.add(nextId, current.acronym(added[0]), current.acronym(added[1]),
+                            added[2], added[3], added[4]);
+                        expected.put(nextId++, added);
+                        break;
+                }
+            }
+            long before = System.nanoTime();
+            FlightNetwork updated = update.applyTo(current);
+            long middle = System.nanoTime();
+            FlightNetwork rebuilt = compileRows(base, expected);
+            rebuildTime += System.nanoTime() - middle;
+            updateTime += middle - before;
+            String problem = timetableDifference(updated, rebuilt);
+            if (problem != null) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch after batch " + b + ": " + problem);
+                }
+            }
+            mismatches += rejectionCheck(updated, random, nextId);
+            current = updated;
+            rows = expected;
+        }
+        System.out.println("Flights: " + current.flightCount() + ", average batch: update "
+            + (updateTime / batches / 1000) + " us, rebuild " + (rebuildTime / batches / 1000)
+            + " us");
+        System.out.println("Mismatches: " + mismatches + " of " + batches + " batches");
+        return mismatches;
+    }
+
+    /**
+     * Makes a random flight row for updateCheck
+     * @param random: the random number generator
+     * @param n: the number of airports
+     * @return departure airport, arrival airport, departure minute, arrival minute
+     *         and duration
+     */
+    private static int[] randomRow(SplittableRandom random, int n) {
+        int from = random.nextInt(n);
+        int to = (from + 1 + random.nextInt(n - 1)) % n;
+        int departure = random.nextInt(24 * 60);
+        int duration = 30 + random.nextInt(600);
+        return new int[] {from, to, departure, departure + duration, duration};
+    }
+
+    /**
+     * Compiles flight rows from scratch into a network with a base network's
+     * airports
+     * @param base: the network whose airports are used
+     * @param rows: the flight rows by ID
+     * @return the network
+     */
+    private static FlightNetwork compileRows(FlightNetwork base, HashMap<Integer, int[]> rows) {
+        Hashtable<String, Airport> airports = new Hashtable<>();
+        for (int a = 0; a < base.airportCount(); a++) {
+            airports.put(base.acronym(a), base.airport(a));
+        }
+        List<Flight> flights = new ArrayList<>();
+        rows.forEach((id, row) -> flights.add(new Flight(id, base.airport(row[0]),
+            base.airport(row[1]), row[4], row[2], row[3])));
+        return FlightNetwork.compile(airports, flights);
+    }
+
+    /**
+     * Compares two networks flight by flight. Each airport must have the same
+     * flights leaving it, in departure order, the flight objects must match the
+     * arrays, and both must list their flights in the same ID order.
+     * @param actual: the network being checked
+     * @param expected: the network it should match
+     * @return what differs, or null if nothing does
+     */
+    private static String timetableDifference(FlightNetwork actual, FlightNetwork expected) {
+        if (actual.flightCount() != expected.flightCount()) {
+            return actual.flightCount() + " flights instead of " + expected.flightCount();
+        }
+        for (int a = 0; a < actual.airportCount(); a++) {
+            int b = expected.airportId(actual.acronym(a));
+            int[] mine = departures(actual, a, expected);
+            int[] theirs = departures(expected, b, expected);
+            if (mine == null) {
+                return actual.acronym(a) + "'s departures aren't in time order";
+            }
+            if (!Arrays.equals(mine, theirs)) {
+                return actual.acronym(a) + "'s departures differ";
+            }
+            for (int f = actual.firstFlightFrom(a); f < actual.endFlightFrom(a); f++) {
+                Flight object = actual.flight(f);
+                if (object.getID() != actual.flightId(f)
+                    || object.getDepartureMinute() != actual.departureMinute(f)
+                    || object.getArrivalMinute() != actual.arrivalMinute(f)) {
+                    return "flight " + actual.flightId(f) + "'s object is out of date";
+                }
+            }
+        }
+        List<Flight> mine = actual.flightList();
+        List<Flight> theirs = expected.flightList();
+        for (int i = 0; i < mine.size(); i++) {
+            if (mine.get(i).getID() != theirs.get(i).getID()) {
+                return "the flight lists aren't in the same ID order";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists an airport's departures in order of flight ID as the ID, arrival
+     * airport, times and duration of each, checking on the way that the departures
+     * are in time order
+     * @param network: the network
+     * @param airport: the airport id
+     * @param ids: the network whose airport ids the arrival airports are given in
+     * @return five ints per flight, or null if the departures aren't in time order
+     */
+    private static int[] departures(FlightNetwork network, int airport, FlightNetwork ids) {
+        int from = network.firstFlightFrom(airport);
+        long[] byId = new long[network.endFlightFrom(airport) - from];
+        for (int f = from; f < from + byId.length; f++) {
+            if (f > from && network.departureMinute(f) < network.departureMinute(f - 1)) {
+                return null;
+            }
+            byId[f - from] = ((long) network.flightId(f) << 32) | f;
+        }
+        Arrays.sort(byId);
+        int[] rows = new int[byId.length * 5];
+        for (int i = 0; i < byId.length; i++) {
+            int f = (int) byId[i];
+            rows[i * 5] = network.flightId(f);
+            rows[i * 5 + 1] = ids.airportId(network.acronym(network.arrivalAirport(f)));
+            rows[i * 5 + 2] = network.departureMinute(f);
+            rows[i * 5 + 3] = network.arrivalMinute(f);
+            rows[i * 5 + 4] = network.duration(f);
+        }
+        return rows;
+    }
+
+    /**
+     * Tries each way a batch can be turned down against a network: cancelling or
+     * delaying an unknown flight, delaying a flight to before midnight, adding a
+     * flight ID that's taken or that the batch adds twice, and adding a flight at an
+     * unknown airport
+     * @param network: the network to update
+     * @param random: the random number generator
+     * @param freeId: a flight ID no flight has
+     * @return the number of bad batches that weren't turned down
+     */
+    private static long rejectionCheck(FlightNetwork network, SplittableRandom random,
+        int freeId) {
+        int f = random.nextInt(network.flightCount());
+        int id = network.flightId(f);
+        String from = network.acronym(network.departureAirport(f));
+        String to = network.acronym(network.arrivalAirport(f));
+        TimetableUpdate[] bad = {
+            new TimetableUpdate().cancel(freeId),
+            new TimetableUpdate().delay(freeId, 10),
+            new TimetableUpdate().delay(id, -network.departureMinute(f) - 1),
+            new TimetableUpdate().add(id, from, to, 600, 700, 100),
+            new TimetableUpdate().add(freeId, from, to, 600, 700, 100)
+                .add(freeId, from, to, 800, 900, 100),
+            new TimetableUpdate().add(freeId, from, "???", 600, 700, 100),
+        };
+        long mismatches = 0;
+        for (int i = 0; i < bad.length; i++) {
+            try {
+                bad[i].applyTo(network);
+                mismatches++;
+                System.out.println("Bad batch " + i + " wasn't turned down");
+            } catch (IllegalArgumentException e) {
+                // turned down as it should be
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Checks BatchQueryRunner on random requests. Each request is asked twice in a
+     * row, once as a CSV line and once as a JSON line, with a few unknown airports
+     * mixed in, and the window is small so the batch spans many windows. The
+     * answers have to come back in request order, agree with the earliest arrival
+     * search, and agree between the two formats. Feeding the answers back in as
+     * requests has to give the same answers again.
+     * @param network: the network to query
+     * @param queries: the number of random requests
+     * @param seed: seed for picking the random requests
+     * @return the number of requests answered wrongly, plus one if the answers
+     *         don't survive the round trip
+     * @throws IOException if the batch can't be read or written
+     */
+    public static long batchCheck(FlightNetwork network, int queries, long seed)
+        throws IOException {
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] from = new String[queries];
+        String[] to = new String[queries];
+        int[] departAfter = new int[queries];
+        StringBuilder requests = new StringBuilder("from,to,departAfter\n");
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            int target = random.nextInt(n);
+            // origin == target is kept, since it has its own error
+            from[q] = random.nextInt(50) == 0 ? "XXX9" : network.acronym(origin);
+            to[q] = network.acronym(target);
+            departAfter[q] = random.nextInt(3) == 0 ? -1 : random.nextInt(24 * 60);
+            String time = departAfter[q] < 0 ? null : Flight.formatMinutes(departAfter[q]);
+            requests.append(from[q]).append(',').append(to[q])
+                .append(time == null ? "" : "," + time).append('\n');
+            requests.append("{\"from\":\"").append(from[q]).append("\",\"to\":\"").append(to[q])
+                .append(time == null ? "\"}" : "\",\"departAfter\":\"" + time + "\"}")
+                .append('\n');
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        BatchQueryRunner runner = new BatchQueryRunner(network, 64, pool);
+        StringWriter answers = new StringWriter();
+        BatchQueryRunner.BatchReport report = runner.run(
+            new StringReader(requests.toString()), answers);
+        String[] lines = answers.toString().split("\\R");
+        long mismatches = 0;
+        for (int q = 0; q < queries; q++) {
+            String problem = null;
+            if (lines.length != 2 * queries + 1) {
+                problem = lines.length + " answer lines for " + (2 * queries) + " requests";
+                q = queries;
+            } else {
+                String[] csv = lines[2 * q + 1].split(",", -1);
+                String json = lines[2 * q + 2];
+                Path expected = null;
+                if (!from[q].equals(to[q]) && network.airportId(from[q]) >= 0) {
+                    expected = departAfter[q] < 0 ? search.fastestFlight(from[q], to[q])
+                        : search.earliestArrival(from[q], to[q], departAfter[q]);
+                }
+                if (csv.length != 8 || !csv[0].equals(from[q]) || !csv[1].equals(to[q])
+                    || !json.startsWith("{\"from\":\"" + from[q] + "\",\"to\":\"" + to[q] + "\"")) {
+                    problem = "answer is out of order: " + lines[2 * q + 1];
+                } else if (expected == null) {
+                    if (!csv[5].isEmpty() || csv[7].isEmpty() || !json.contains("\"error\":")) {
+                        problem = "answered without an itinerary: " + lines[2 * q + 1];
+                    }
+                } else if (departAfter[q] < 0
+                    ? !csv[5].equals(String.valueOf(expected.totalTime))
+                    : !csv[4].equals(expected.getEndTime())) {
+                    problem = "answer " + lines[2 * q + 1] + ", search says "
+                        + expected.getStartTime() + " to " + expected.getEndTime() + ", "
+                        + expected.totalTime + " minutes";
+                } else if (!json.contains("\"departure\":\"" + csv[3] + "\",\"arrival\":\""
+                    + csv[4] + "\",\"totalMinutes\":" + csv[5] + ",\"flights\":["
+                    + csv[6].replace(' ', ',') + "]")) {
+                    problem = "JSON answer " + json + " differs from CSV " + lines[2 * q + 1];
+                }
+            }
+            if (problem != null) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch: request " + q + ": " + problem);
+                }
+            }
+        }
+        // every answer line is a request for the same query
+        StringWriter again = new StringWriter();
+        runner.run(new StringReader(answers.toString()), again);
+        if (!again.toString().equals(answers.toString())) {
+            mismatches++;
+            System.out.println("Mismatch: answers changed when asked again as requests");
+        }
+        pool.shutdown();
+        System.out.println(report);
+        System.out.println("Mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Checks FlightQueryServer over HTTP: bad requests answer 400, 404 or 405,
+     * /fastest agrees with the earliest arrival search, and walking a board page by
+     * page with its next cursors gives the same flights as the FlightBoard. Two
+     * more servers with a single worker are then flooded with whole-day queries,
+     * one with a single queue slot, which has to answer some of them 503, and one
+     * with a 1 ms deadline, which has to answer some of them 504. Their /metrics
+     * counts have to match the answers.
+     * @param network: the network to serve
+     * @param flood: the network to flood with queries, big enough that a whole-day
+     *        query takes several milliseconds
+     * @param seed: seed for picking the random queries
+     * @return the number of answers that went wrong
+     * @throws IOException if a server can't be started or reached
+     */
+    public static long serverCheck(FlightNetwork network, FlightNetwork flood, long seed)
+        throws IOException {
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(seed);
+        HttpClient client = HttpClient.newHttpClient();
+        long mismatches = 0;
+        try (FlightQueryServer server = new FlightQueryServer(network, 0, 2, 5000)) {
+            String base = "http://localhost:" + server.getPort();
+            String known = network.acronym(0);
+            String[][] bad = {
+                {"/fastest", "400"},
+                {"/fastest?from=XXX9&to=" + known, "404"},
+                {"/fastest?from=" + known + "&to=" + network.acronym(1) + "&departAfter=x", "400"},
+                {"/departures?airport=XXX9", "404"},
+                {"/departures?airport=" + known + "&after=x", "400"},
+                {"/arrivals?airport=" + known + "&cursor=-1", "400"},
+                {"/arrivals?airport=" + known + "&limit=0", "400"},
+                {"/departures?airport=" + known + "&limit=1001", "400"},
+                {"/health", "200"},
+                {"/metrics", "200"},
+            };
+            for (String[] request : bad) {
+                HttpResponse<String> answer = get(client, base + request[0]);
+                if (answer.statusCode() != Integer.parseInt(request[1])) {
+                    mismatches++;
+                    System.out.println("Mismatch: " + request[0] + " answered "
+                        + answer.statusCode() + ", expected " + request[1]);
+                }
+            }
+            HttpResponse<String> post = client.send(HttpRequest.newBuilder(
+                URI.create(base + "/health")).POST(HttpRequest.BodyPublishers.ofString("x"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+            if (post.statusCode() != 405) {
+                mismatches++;
+                System.out.println("Mismatch: POST /health answered " + post.statusCode());
+            }
+            for (int q = 0; q < 200; q++) {
+                String from = network.acronym(random.nextInt(n));
+                String to = network.acronym(random.nextInt(n));
+                int departAfter = random.nextBoolean() ? -1 : random.nextInt(24 * 60);
+                if (from.equals(to)) {
+                    continue;
+                }
+                Path expected = departAfter < 0 ? search.fastestFlight(from, to)
+                    : search.earliestArrival(from, to, departAfter);
+                String url = "/fastest?from=" + from + "&to=" + to
+                    + (departAfter < 0 ? "" : "&departAfter=" + Flight.formatMinutes(departAfter));
+                HttpResponse<String> answer = get(client, base + url);
+                boolean right = expected == null ? answer.statusCode() == 404
+                    : answer.statusCode() == 200 && answer.body().contains(departAfter < 0
+                        ? "\"totalMinutes\":" + expected.totalTime + ","
+                        : "\"arrival\":\"" + expected.getEndTime() + "\"");
+                if (!right) {
+                    mismatches++;
+                    System.out.println("Mismatch: " + url + " answered " + answer.statusCode()
+                        + " " + answer.body());
+                }
+            }
+            for (int q = 0; q < 40; q++) {
+                String airport = network.acronym(random.nextInt(n));
+                boolean arrivals = q % 2 == 1;
+                int after = random.nextInt(24 * 60);
+                int before = after + random.nextInt(12 * 60);
+                int limit = 1 + random.nextInt(10);
+                FlightBoard board = arrivals ? FlightBoard.arrivals(network, airport, after, before)
+                    : FlightBoard.departures(network, airport, after, before);
+                StringBuilder expected = new StringBuilder();
+                for (Flight f : board) {
+                    expected.append(f.getID()).append(' ');
+                }
+                StringBuilder walked = new StringBuilder();
+                String cursor = "0";
+                int pages = 0;
+                while (cursor != null && pages <= board.size()) {
+                    HttpResponse<String> answer = get(client, base
+                        + (arrivals ? "/arrivals" : "/departures") + "?airport=" + airport
+                        + "&after=" + after + "&before=" + before + "&limit=" + limit
+                        + "&cursor=" + cursor);
+                    Matcher ids = Pattern.compile("\"id\":(\\d+)").matcher(answer.body());
+                    while (ids.find()) {
+                        walked.append(ids.group(1)).append(' ');
+                    }
+                    Matcher next = Pattern.compile("\"next\":(\\d+|null)")
+                        .matcher(answer.body());
+                    cursor = answer.statusCode() == 200 && next.find()
+                        && !next.group(1).equals("null") ? next.group(1) : null;
+                    pages++;
+                }
+                if (!walked.toString().equals(expected.toString())
+                    || pages != Math.max(1, (board.size() + limit - 1) / limit)) {
+                    mismatches++;
+                    System.out.println("Mismatch: " + (arrivals ? "arrivals" : "departures")
+                        + " of " + airport + " in " + pages + " pages of " + limit + ": "
+                        + walked + "instead of " + expected);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return mismatches + 1;
+        }
+        mismatches += floodCheck(client, flood, 1, 60000, 503);
+        mismatches += floodCheck(client, flood, 1024, 1, 504);
+        System.out.println("Mismatches: " + mismatches);
+        return mismatches;
+    }
+
+    /**
+     * Sends a burst of whole-day queries at once to a server with a single worker
+     * and checks the answers and the server's /metrics against each other
+     * @param client: the HTTP client
+     * @param network: the network to serve
+     * @param queueCapacity: the most queries that can wait for the worker
+     * @param timeoutMillis: the deadline of each query
+     * @param status: the error status that some of the answers must have
+     * @return the number of things that went wrong
+     * @throws IOException if the server can't be started or reached
+     */
+    private static long floodCheck(HttpClient client, FlightNetwork network,
+        int queueCapacity, long timeoutMillis, int status) throws IOException {
+        SplittableRandom random = new SplittableRandom(status);
+        int n = network.airportCount();
+        long mismatches = 0;
+        try (FlightQueryServer server = new FlightQueryServer(network, 0, 1, queueCapacity,
+            timeoutMillis)) {
+            String base = "http://localhost:" + server.getPort();
+            List<CompletableFuture<HttpResponse<String>>> answers = new ArrayList<>();
+            for (int q = 0; q < 200; q++) {
+                int origin = random.nextInt(n);
+                int target = (origin + 1 + random.nextInt(n - 1)) % n;
+                answers.add(client.sendAsync(HttpRequest.newBuilder(
+                    URI.create(base + "/fastest?from=" + network.acronym(origin)
+                    + "&to=" + network.acronym(target))).build(),
+                    HttpResponse.BodyHandlers.ofString()));
+            }
+            HashMap<Integer, Integer> counts = new HashMap<>();
+            for (CompletableFuture<HttpResponse<String>> answer : answers) {
+                counts.merge(answer.join().statusCode(), 1, Integer::sum);
+            }
+            String metrics = get(client, base + "/metrics").body();
+            int expected = counts.getOrDefault(status, 0);
+            String counter = status == 503 ? "\"queriesRejected\":" + expected + ","
+                : "\"queriesTimedOut\":" + expected + ",";
+            int other = status == 503 ? 504 : 503;
+            if (expected == 0 || counts.containsKey(other) || counts.containsKey(500)
+                || !metrics.contains(counter)) {
+                mismatches++;
+                System.out.println("Mismatch: flooding a queue of " + queueCapacity + " with a "
+                    + timeoutMillis + " ms deadline answered " + counts + ", metrics " + metrics);
+            } else {
+                System.out.println("Flooding a queue of " + queueCapacity + " with a "
+                    + timeoutMillis + " ms deadline answered " + counts);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return mismatches + 1;
+        }
+        return mismatches;
+    }
+
+    /**
+     * Sends a GET request and waits for the answer
+     * @param client: the HTTP client
+     * @param url: the URL to get
+     * @return the answer
+     * @throws IOException if the server can't be reached
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static HttpResponse<String> get(HttpClient client, String url)
+        throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Checks flight boards against a scan of the whole timetable on random airports
+     * and time ranges, including empty and reversed ranges and ranges past midnight.
+     * A board has to hold exactly the flights of its airport in the range, in time
+     * order, its pages have to add up to the board with the right next cursors, and
+     * firstArrivalAtOrAfter has to split an airport's arrivals at the given minute.
+     * @param network: the network to check
+     * @param boards: the number of random boards to check
+     * @param seed: seed for picking the random boards
+     * @return the number of boards that went wrong
+     */
+    public static long boardCheck(FlightNetwork network, int boards, long seed) {
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(seed);
+        long mismatches = 0;
+        for (int b = 0; b < boards; b++) {
+            int airport = random.nextInt(n);
+            boolean arrivals = random.nextBoolean();
+            int after = random.nextInt(2 * 24 * 60);
+            int before = random.nextInt(10) == 0 ? Integer.MAX_VALUE
+                : after - 60 + random.nextInt(16 * 60);
+            String acronym = network.acronym(airport);
+            FlightBoard board = arrivals ? FlightBoard.arrivals(network, acronym, after, before)
+                : FlightBoard.departures(network, acronym, after, before);
+            // the flights the board should have, scanned from the whole timetable
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int f = 0; f < network.flightCount(); f++) {
+                int at = arrivals ? network.arrivalAirport(f) : network.departureAirport(f);
+                int minute = arrivals ? network.arrivalMinute(f) : network.departureMinute(f);
+                if (at == airport && minute >= after && minute <= before) {
+                    expected.add(f);
+                }
+            }
+            String problem = null;
+            ArrayList<Integer> actual = new ArrayList<>();
+            for (int i = 0; i < board.size(); i++) {
+                actual.add(board.flightIndex(i));
+            }
+            for (int i = 1; i < actual.size() && problem == null; i++) {
+                int previous = actual.get(i - 1);
+                int f = actual.get(i);
+                if ((arrivals ? network.arrivalMinute(f) < network.arrivalMinute(previous)
+                    : network.departureMinute(f) < network.departureMinute(previous))) {
+                    problem = "flights out of time order";
+                }
+            }
+            ArrayList<Integer> sorted = new ArrayList<>(actual);
+            sorted.sort(null);
+            if (problem == null && !sorted.equals(expected)) {
+                problem = "board has " + actual.size() + " flights, timetable has "
+                    + expected.size();
+            }
+            // read it back in pages, following the next cursors
+            int limit = 1 + random.nextInt(8);
+            ArrayList<Integer> paged = new ArrayList<>();
+            int cursor = 0;
+            while (problem == null && cursor >= 0) {
+                List<Flight> page = board.page(cursor, limit);
+                int next = board.nextCursor(cursor, limit);
+                // only a full page that isn't the last has a next page
+                if (page.size() > limit || next >= board.size()
+                    || (next >= 0 && (page.size() != limit || next != cursor + limit))) {
+                    problem = "page at " + cursor + " has " + page.size() + " flights, next "
+                        + next;
+                }
+                for (int i = 0; i < page.size(); i++) {
+                    if (page.get(i) != board.flight(cursor + i)) {
+                        problem = "page at " + cursor + " differs from the board";
+                    }
+                    paged.add(board.flightIndex(cursor + i));
+                }
+                cursor = next;
+            }
+            if (problem == null && !paged.equals(actual)) {
+                problem = "pages hold " + paged.size() + " of " + actual.size() + " flights";
+            }
+            if (problem == null && !board.page(board.size(), limit).isEmpty()) {
+                problem = "page past the end isn't empty";
+            }
+            // every arrival before the split lands earlier than the minute
+            int minute = random.nextInt(2 * 24 * 60);
+            int first = network.firstArrivalTo(airport);
+            int end = network.endArrivalTo(airport);
+            int split = network.firstArrivalAtOrAfter(airport, minute);
+            if (problem == null && (split < first || split > end)) {
+                problem = "firstArrivalAtOrAfter " + minute + " is " + split + ", outside "
+                    + first + " to " + end;
+            }
+            for (int p = first; p < end && problem == null; p++) {
+                int arrive = network.arrivalMinute(network.arrivalAt(p));
+                if (network.arrivalAirport(network.arrivalAt(p)) != airport
+                    || (p < split) != (arrive < minute)) {
+                    problem = "arrival " + p + " at " + arrive + " is on the wrong side of "
+                        + minute;
+                }
+            }
+            if (problem != null) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch: " + (arrivals ? "arrivals" : "departures")
+                        + " of " + acronym + " from " + after + " to " + before + ": " + problem);
+                }
+            }
+        }
+        System.out.println("Mismatches: " + mismatches + " of " + boards);
+        return mismatches;
+    }
+
+    /**
+     * Runs random earliest arrival queries and prints the time they took along with
+     * the search statistics. Run it with and without -Dffg.stats=true to see what
+     * the statistics cost.
+     * @param network: the network to query
+     * @param queries: the number of queries to run
+     */
+    public static void searchStatsReport(FlightNetwork network, int queries) {
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(7);
+        String[] from = new String[queries];
+        String[] to = new String[queries];
+        int[] departAfter = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            int target = random.nextInt(n - 1);
+            from[q] = network.acronym(origin);
+            to[q] = network.acronym(target >= origin ? target + 1 : target);
+            departAfter[q] = 5 * 60 + random.nextInt(12 * 60);
+        }
+        long elapsed = 0;
+        // the first round only warms up the JIT
+        for (int r = 0; r < 2; r++) {
+            SearchStats.reset();
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                search.earliestArrival(from[q], to[q], departAfter[q]);
+            }
+            elapsed = System.nanoTime() - start;
+        }
+        System.out.println(queries + " earliest arrival queries in " + (elapsed / 1_000_000)
+            + " ms (" + (elapsed / queries) + " ns/query), statistics "
+            + (SearchStats.ENABLED ? "on" : "off"));
+        System.out.print(SearchStats.dump(10));
+    }
+
+    /**
+     * Gives every flight random weekdays, and checks the multi-day search against a
+     * scan of every flight on every day it runs, in order of departure. Prints how
+     * long the queries took and how many answers differ.
+     * @param network: the network to query
+     * @param queries: the number of random queries to check
+     * @param seed: seed for picking the weekdays and the queries
+     * @return the number of queries where the answers differ
+     * @throws IOException if the calendar file can't be written or read
+     */
+    public static long calendarCheck(FlightNetwork scheduled, int queries, long seed)
+        throws IOException {
+        final int day = 24 * 60;
+        LocalDate start = LocalDate.of(2026, 1, 5); // a Monday
+        int days = 28;
+        SplittableRandom random = new SplittableRandom(seed);
+        // delay one flight in 20 by up to 17 hours, which pushes the late ones past
+        // midnight, so the search has to look back a day for them
+        TimetableUpdate delays = new TimetableUpdate();
+        for (int f = 0; f < scheduled.flightCount(); f++) {
+            if (random.nextInt(20) == 0) {
+                delays.delay(scheduled.flightId(f), 60 + random.nextInt(17 * 60));
+            }
+        }
+        FlightNetwork network = delays.applyTo(scheduled);
+        int m = network.flightCount();
+        int pastMidnight = 0;
+        for (int f = 0; f < m; f++) {
+            if (network.departureMinute(f) >= day) {
+                pastMidnight++;
+            }
+        }
+        // about a third of the flights have no row and run every day
+        boolean[][] runs = new boolean[m][8];
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("ffg-calendar", ".csv");
+        try (PrintWriter out = new PrintWriter(file.toFile())) {
+            for (int f = 0; f < m; f++) {
+                if (random.nextInt(3) == 0) {
+                    Arrays.fill(runs[f], true);
+                    continue;
+                }
+                StringBuilder weekdays = new StringBuilder();
+                for (int d = 1; d <= 7; d++) {
+                    if (random.nextBoolean()) {
+                        runs[f][d] = true;
+                        weekdays.append(d);
+                    }
+                }
+                out.println(network.flightId(f) + "," + weekdays);
+            }
+        }
+        long start0 = System.nanoTime();
+        ServiceCalendar calendar = ServiceCalendar.load(network, file.toString(), start, days);
+        long load = System.nanoTime() - start0;
+        java.nio.file.Files.deleteIfExists(file);
+        System.out.println("Flights: " + m + ", delayed past midnight: " + pastMidnight
+            + ", distinct calendars: " + calendar.calendarCount() + ", load: "
+            + (load / 1_000_000) + " ms");
+        // every flight on every day it runs, in order of departure
+        int connections = 0;
+        long[] byDeparture = new long[m * days];
+        for (int d = 0; d < days; d++) {
+            int weekday = start.plusDays(d).getDayOfWeek().getValue();
+            for (int f = 0; f < m; f++) {
+                if (runs[f][weekday]) {
+                    byDeparture[connections++] = ((long) (d * day + network.departureMinute(f))
+                        << 32) | ((long) d << 24) | f;
+                }
+            }
+        }
+        Arrays.sort(byDeparture, 0, connections);
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        int[] arrival = new int[n];
+        long mismatches = 0;
+        long searchTime = 0;
+        long scanTime = 0;
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            int target = random.nextInt(n - 1);
+            target = target >= origin ? target + 1 : target;
+            int departAt = random.nextInt(days) * day + random.nextInt(day);
+            int lastDay = Math.min(days - 1, departAt / day + ServiceCalendar.MAX_TRIP_DAYS - 1);
+            long before = System.nanoTime();
+            int actual = search.earliestArrivalMinute(origin, target, departAt, calendar);
+            long middle = System.nanoTime();
+            Arrays.fill(arrival, Integer.MAX_VALUE);
+            arrival[origin] = departAt;
+            for (int c = 0; c < connections; c++) {
+                int dep = (int) (byDeparture[c] >>> 32);
+                int d = (int) (byDeparture[c] >>> 24) & 0xff;
+                int f = (int) byDeparture[c] & 0xffffff;
+                if (dep >= arrival[target]) {
+                    break;
+                }
+                // a flight delayed past midnight sorts among the next day's flights
+                if (d > lastDay) {
+                    continue;
+                }
+                int from = network.departureAirport(f);
+                if (arrival[from] == Integer.MAX_VALUE || dep < (from == origin ? departAt
+                    : arrival[from] + FlightNetwork.MIN_CONNECTION_MINUTES)) {
+                    continue;
+                }
+                int to = network.arrivalAirport(f);
+                if (to != origin) {
+                    arrival[to] = Math.min(arrival[to], d * day + network.arrivalMinute(f));
+                }
+            }
+            scanTime += System.nanoTime() - middle;
+            searchTime += middle - before;
+            int expected = arrival[target] == Integer.MAX_VALUE ? -1 : arrival[target];
+            if (actual != expected) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch: " + network.acronym(origin) + " to "
+                        + network.acronym(target) + " at minute " + departAt + ", search "
+                        + actual + ", scan " + expected);
+                }
+            }
+        }
+        System.out.println("Average latency: search " + (searchTime / queries) + " ns, scan "
+            + (scanTime / queries) + " ns");
+        System.out.println("Mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Measures the query service's throughput with 1, 2, 4, ... worker threads up
+     * to the number of cores. Random earliest arrival queries are submitted from
+     * one thread, which keeps at most a queue's worth of them in flight and waits
+     * for the oldest whenever the service pushes back.
+     * @param network: the network to query
+     * @param queries: the number of queries to run at each thread count
+     */
+    public static void serviceThroughput(FlightNetwork network, int queries) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int n = network.airportCount();
+        System.out.println("Airports: " + n + ", flights: " + network.flightCount()
+            + ", cores: " + cores);
+        double single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            int capacity = 1024 * threads;
+            try (FlightQueryService service = new FlightQueryService(network, threads, capacity,
+                60_000)) {
+                // the first run only warms up the JIT
+                double rate = 0;
+                for (int run = 0; run < 2; run++) {
+                    SplittableRandom random = new SplittableRandom(run);
+                    ArrayDeque<CompletableFuture<Path>> inFlight = new ArrayDeque<>();
+                    long start = System.nanoTime();
+                    for (int q = 0; q < queries; q++) {
+                        if (inFlight.size() == capacity) {
+                            inFlight.poll().join();
+                        }
+                        String from = network.acronym(random.nextInt(n));
+                        String to = network.acronym(random.nextInt(n));
+                        inFlight.add(service.earliestArrival(from, to, random.nextInt(24 * 60)));
+                    }
+                    while (!inFlight.isEmpty()) {
+                        inFlight.poll().join();
+                    }
+                    rate = queries / ((System.nanoTime() - start) / 1e9);
+                }
+                if (threads == 1) {
+                    single = rate;
+                }
+                System.out.printf("Threads: %d, throughput: %.0f queries/s, speedup: %.2f,"
+                    + " rejected: %d%n", threads, rate, rate / single, service.rejectedCount());
+            }
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs an earliest arrival query for every airport pair and every hour
+     * @param search: the engine to query
+     * @param network: the network being searched
+     * @param rounds: how many times to repeat the full set of queries
+     * @return the number of queries run
+     */
+    private static long runQueries(EarliestArrivalSearch search, FlightNetwork network,
+        int rounds) {
+        int n = network.airportCount();
+        long queries = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (int origin = 0; origin < n; origin++) {
+                for (int target = 0; target < n; target++) {
+                    for (int hour = 0; hour < 24; hour++) {
+                        search.earliestArrivalMinute(origin, target, hour * 60);
+                        queries++;
+                    }
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Checks the search engine against ShortestFlightPath's original shortestFlight
+     * on every airport pair of the loaded timetable. The original only connects to a
+     * flight whose hour isn't earlier and whose minute is later than the landing's,
+     * which turns down some connections the engine takes, such as 10:50 to 11:05.
+     * So the engine must never be slower than the original, must find a path
+     * whenever the original does, and must find the same least total time whenever
+     * every connection of its path passes the original's test. The two only have to
+     * agree when each
+     * flight's duration matches its clock times: the original adds up durations
+     * and layovers, while the engine compares clock times, and the bundled
+     * flights.csv has time zones and a few rows whose durations are off.
+     * @return the number of pairs where they differ
+     */
+    public static long originalSearchCheck() {
+        FlightNetwork network = ShortestFlightPath.network;
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        int n = network.airportCount();
+        long mismatches = 0;
+        long originalTime = 0;
+        long searchTime = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (a == b) {
+                    continue;
+                }
+                String from = network.acronym(a);
+                String to = network.acronym(b);
+                long before = System.nanoTime();
+                Path expected = ShortestFlightPath.shortestFlight(from, to);
+                long middle = System.nanoTime();
+                Path actual = search.fastestFlight(from, to);
+                searchTime += System.nanoTime() - middle;
+                originalTime += middle - before;
+                int want = expected == null ? -1 : expected.totalTime;
+                int got = actual == null ? -1 : actual.totalTime;
+                boolean wrong = want >= 0 && (got < 0 || got > want);
+                if (!wrong && actual != null && originalConnects(actual)) {
+                    wrong = want != got;
+                }
+                if (wrong) {
+                    mismatches++;
+                    if (mismatches <= 5) {
+                        System.out.println("Mismatch: " + from + " to " + to + ", original "
+                            + want + ", search " + got);
+                    }
+                }
+            }
+        }
+        long pairs = (long) n * (n - 1);
+        System.out.println("Airports: " + n + ", flights: " + network.flightCount());
+        System.out.println("Average latency: original " + (originalTime / pairs)
+            + " ns, search " + (searchTime / pairs) + " ns");
+        System.out.println("Mismatches: " + mismatches + " of " + pairs);
+        return mismatches;
+    }
+
+    /**
+     * Checks the connection scan against the Dijkstra search engine on random
+     * queries: both must find the same earliest arrival after a random time, and
+     * the same least total time over the whole day
+     * @param network: the network to query
+     * @param queries: the number of random queries of each kind
+     * @param seed: seed for picking the random queries
+     * @return the number of queries where the engines differ
+     */
+    public static long connectionScanCheck(FlightNetwork network, int queries, long seed) {
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        ConnectionScan scan = new ConnectionScan(network);
+        int n = network.airportCount();
+        SplittableRandom random = new SplittableRandom(seed);
+        long mismatches = 0;
+        long searchTime = 0;
+        long scanTime = 0;
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            int target = random.nextInt(n);
+            int departAfter = random.nextInt(24 * 60);
+            if (origin == target) {
+                continue;
+            }
+            String from = network.acronym(origin);
+            String to = network.acronym(target);
+            long before = System.nanoTime();
+            int want = search.earliestArrivalMinute(origin, target, departAfter);
+            Path wantPath = search.fastestFlight(from, to);
+            long middle = System.nanoTime();
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            scan.scan(origin, target, departAfter, ws);
+            int got = ws.arrival(target) == Integer.MAX_VALUE ? -1 : ws.arrival(target);
+            Path gotPath = scan.fastestFlight(from, to);
+            scanTime += System.nanoTime() - middle;
+            searchTime += middle - before;
+            int wantTotal = wantPath == null ? -1 : wantPath.totalTime;
+            int gotTotal = gotPath == null ? -1 : gotPath.totalTime;
+            if (want != got || wantTotal != gotTotal) {
+                mismatches++;
+                if (mismatches <= 5) {
+                    System.out.println("Mismatch: " + from + " to " + to + " after "
+                        + Flight.formatMinutes(departAfter) + ", search arrives " + want
+                        + " fastest " + wantTotal + ", scan arrives " + got + " fastest "
+                        + gotTotal);
+                }
+            }
+        }
+        System.out.println("Average latency: search " + (searchTime / queries)
+            + " ns, connection scan " + (scanTime / queries) + " ns");
+        System.out.println("Mismatches: " + mismatches + " of " + queries);
+        return mismatches;
+    }
+
+    /**
+     * Checks whether every connection of a path passes the original shortestFlight's
+     * test, which compares the hour and the minute of the times separately
+     * @param path: the path
+     * @return true if the original could have built the path
+     */
+    private static boolean originalConnects(Path path) {
+        List<Flight> flights = path.getFlights();
+        for (int i = 1; i < flights.size(); i++) {
+            int landed = flights.get(i - 1).getArrivalMinute();
+            int leaves = flights.get(i).getDepartureMinute();
+            if (landed / 60 > leaves / 60 || leaves % 60 <= landed % 60) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a disrupted timetable, with flights that land after midnight and
+     * flights delayed past it, and loads it through ShortestFlightPath's .csv
+     * readers in place of the bundled one
+     * @param airports: the number of airports to generate
+     * @param flights: the number of flights to generate
+     * @throws IOException if the .csv files can't be written
+     */
+    private static void loadDisrupted(int airports, int flights) throws IOException {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("ffg-check");
+        java.nio.file.Path airportsFile = directory.resolve("airports.csv");
+        java.nio.file.Path flightsFile = directory.resolve("flights.csv");
+        new TimetableGenerator(42, airports, flights, true).writeCsv(airportsFile.toString(),
+            flightsFile.toString());
+        ShortestFlightPath.readAirportsFromCSV(airportsFile.toString());
+        ShortestFlightPath.readFlightsFromCSV(flightsFile.toString());
+        java.nio.file.Files.delete(airportsFile);
+        java.nio.file.Files.delete(flightsFile);
+        java.nio.file.Files.delete(directory);
+    }
+
+    /**
+     * Loads the bundled timetable and runs the chosen benchmark. The checks,
+     * "allpairs", "batch", "boards", "calendar", "differential", "goal", "pareto",
+     * "patterns", "server" and "updates", exit with status 1 when they find a
+     * mismatch, so they can be run from scripts, and check disrupted timetables when
+     * asked for a generated one.
+     * @param args: the benchmark name, "allocation" by default, and for every
+     * benchmark but "allocation" and "profile" optionally the number of airports and
+     * flights to generate; "differential" always checks a generated timetable, 20
+     * airports and 1000 flights by default
+     */
+    public static void main(String[] args) {
+        ShortestFlightPath.readAirportsFromCSV("airports.csv");
+        ShortestFlightPath.readFlightsFromCSV("flights.csv");
+        String which = args.length > 0 ? args[0] : "allocation";
+        long mismatches = 0;
+        switch (which) {
+            case "differential":
+                // the original search is slow, so keep generated timetables small
+                try {
+                    loadDisrupted(args.length > 2 ? Integer.parseInt(args[1]) : 20,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+                    mismatches = originalSearchCheck()
+                        + connectionScanCheck(ShortestFlightPath.network, 20000, 7);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mismatches = 1;
+                }
+                break;
+            case "allocation":
+                allocationPerQuery(ShortestFlightPath.network, 200);
+                break;
+            case "profile":
+                profileVersusDepartures(ShortestFlightPath.network, 200);
+                break;
+            case "goal":
+                if (args.length > 2) {
+                    mismatches = goalDirectedReport(new TimetableGenerator(42,
+                        Integer.parseInt(args[1]), Integer.parseInt(args[2]), true).generate(), 1);
+                } else {
+                    mismatches = goalDirectedReport(ShortestFlightPath.network, 200);
+                }
+                break;
+            case "patterns":
+                try {
+                    if (args.length > 2) {
+                        mismatches = transferPatternCheck(new TimetableGenerator(42,
+                            Integer.parseInt(args[1]), Integer.parseInt(args[2]), true).generate(),
+                            100000, 7);
+                    } else {
+                        mismatches = transferPatternCheck(ShortestFlightPath.network, 100000, 7);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mismatches = 1;
+                }
+                break;
+            case "pareto":
+                if (args.length > 2) {
+                    mismatches = paretoCheck(new TimetableGenerator(42, Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2]), true).generate(), 20000, 7);
+                } else {
+                    mismatches = paretoCheck(ShortestFlightPath.network, 20000, 7);
+                }
+                break;
+            case "updates":
+                if (args.length > 2) {
+                    mismatches = updateCheck(new TimetableGenerator(42, Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2]), true).generate(), 500, 7);
+                } else {
+                    mismatches = updateCheck(ShortestFlightPath.network, 500, 7);
+                }
+                break;
+            case "batch":
+                try {
+                    if (args.length > 2) {
+                        mismatches = batchCheck(new TimetableGenerator(42,
+                            Integer.parseInt(args[1]), Integer.parseInt(args[2]), true).generate(),
+                            5000, 7);
+                    } else {
+                        mismatches = batchCheck(ShortestFlightPath.network, 5000, 7);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mismatches = 1;
+                }
+                break;
+            case "server":
+                // the flooded servers need queries slow enough to pile up
+                try {
+                    FlightNetwork flood = new TimetableGenerator(42, 1000, 200000).generate();
+                    if (args.length > 2) {
+                        mismatches = serverCheck(new TimetableGenerator(42,
+                            Integer.parseInt(args[1]), Integer.parseInt(args[2]), true).generate(),
+                            flood, 7);
+                    } else {
+                        mismatches = serverCheck(ShortestFlightPath.network, flood, 7);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mismatches = 1;
+                }
+                break;
+            case "boards":
+                if (args.length > 2) {
+                    mismatches = boardCheck(new TimetableGenerator(42, Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2]), true).generate(), 2000, 7);
+                } else {
+                    mismatches = boardCheck(ShortestFlightPath.network, 2000, 7);
+                }
+                break;
+            case "service":
+                if (args.length > 2) {
+                    serviceThroughput(new TimetableGenerator(42, Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2])).generate(), 200000);
+                } else {
+                    serviceThroughput(ShortestFlightPath.network, 1000000);
+                }
+                break;
+            case "stats":
+                if (args.length > 2) {
+                    searchStatsReport(new TimetableGenerator(42, Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2])).generate(), 200000);
+                } else {
+                    searchStatsReport(ShortestFlightPath.network, 200000);
+                }
+                break;
+            case "calendar":
+                try {
+                    if (args.length > 2) {
+                        mismatches = calendarCheck(new TimetableGenerator(42,
+                            Integer.parseInt(args[1]), Integer.parseInt(args[2]), true).generate(),
+                            20000, 7);
+                    } else {
+                        mismatches = calendarCheck(ShortestFlightPath.network, 20000, 7);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    mismatches = 1;
+                }
+                break;
+            case "allpairs":
+                int airports = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+                int flights = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+                mismatches = allPairsScaling(new TimetableGenerator(42, airports, flights)
+                    .generate());
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + which);
+                break;
+        }
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
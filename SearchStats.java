@@ -0,0 +1,359 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the earliest arrival search does for each query: airports settled,
+ * flights relaxed, labels set and the largest the queue got, along with how long
+ * the query took. Latencies go into log-linear histograms, one for every query and
+ * one per departure and arrival airport pair ("MSN-*" for searches from MSN to
+ * every airport), and every counter is updated without locks. The statistics can
+ * be read through JMX or as a text dump.
+ *
+ * Statistics are off unless the JVM is started with -Dffg.stats=true. The switch
+ * is a static final field, so when it's off the JIT removes every statistics branch
+ * from the search and the searches run exactly as fast as without them.
+ * @author megangibbons
+ *
+ */
+public final class SearchStats {
+    // whether statistics are collected, read once when the class is loaded
+    public static final boolean ENABLED = Boolean.getBoolean("ffg.stats");
+    // the most airport pairs given their own histogram; later pairs are only counted
+    // in the overall histogram so the memory used stays bounded
+    public static final int MAX_PAIRS = 4096;
+
+    private static final Histogram LATENCY = new Histogram(); // latency of every query
+    private static final ConcurrentHashMap<String, Pair> PAIRS =
+        new ConcurrentHashMap<>(); // statistics by "FROM-TO"
+    private static final LongAdder SETTLED = new LongAdder(); // airports settled by every query
+    private static final LongAdder RELAXED = new LongAdder(); // flights relaxed by every query
+    private static final LongAdder LABELS = new LongAdder(); // labels set by every query
+    private static final LongAccumulator QUEUE_PEAK =
+        new LongAccumulator(Math::max, 0); // the largest any query's queue got
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+                    new ObjectName("FastestFlightGenerator:type=SearchStats"));
+            } catch (JMException e) {
+                // the dump still works without JMX
+                System.out.println("Could not register search statistics: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A latency histogram with buckets that grow with the value: each power of two
+     * is split into 8 buckets, so a value is known to within about 12% over the
+     * whole range of a long, in under 4 KB
+     * @author megangibbons
+     *
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 3; // each power of two is split into 2^SUB_BITS buckets
+        private static final int SUB = 1 << SUB_BITS; // buckets per power of two
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB; // enough for every long
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // values in each bucket
+        private final LongAdder count = new LongAdder(); // number of values recorded
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0); // largest value recorded
+
+        /**
+         * Records a value
+         * @param value: the value, at least 0
+         */
+        public void record(long value) {
+            this.counts.incrementAndGet(bucketOf(Math.max(0, value)));
+            this.count.increment();
+            this.max.accumulate(value);
+        }
+
+        /**
+         * Gets the number of values recorded
+         * @return the count
+         */
+        public long count() {
+            return this.count.sum();
+        }
+
+        /**
+         * Gets the largest value recorded
+         * @return the largest value, or 0 if nothing was recorded
+         */
+        public long max() {
+            return this.max.get();
+        }
+
+        /**
+         * Gets the value that a share of the recorded values are at or below
+         * @param percentile: the share, from 0 to 100
+         * @return the highest value of the bucket holding the percentile, capped at
+         *         the largest value recorded, or 0 if nothing was recorded
+         */
+        public long percentile(double percentile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                snapshot[b] = this.counts.get(b);
+                total += snapshot[b];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += snapshot[b];
+                if (seen >= rank) {
+                    long highest = b + 1 < BUCKETS ? lowestOf(b + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(highest, max());
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Forgets every recorded value
+         */
+        public void reset() {
+            for (int b = 0; b < BUCKETS; b++) {
+                this.counts.set(b, 0);
+            }
+            this.count.reset();
+            this.max.reset();
+        }
+
+        /**
+         * Finds the bucket of a value
+         * @param value: the value, at least 0
+         * @return the bucket index
+         */
+        static int bucketOf(long value) {
+            if (value < SUB) {
+                return (int) value;
+            }
+            // the top bit picks the power of two, the next SUB_BITS bits the bucket
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+            return (exponent - SUB_BITS + 1) * SUB + sub;
+        }
+
+        /**
+         * Finds the lowest value of a bucket
+         * @param bucket: the bucket index
+         * @return the lowest value that falls in the bucket
+         */
+        static long lowestOf(int bucket) {
+            if (bucket < SUB) {
+                return bucket;
+            }
+            int exponent = bucket / SUB + SUB_BITS - 1;
+            return (1L << exponent) | ((long) (bucket % SUB) << (exponent - SUB_BITS));
+        }
+    }
+
+    /**
+     * The statistics of one departure and arrival airport pair
+     * @author megangibbons
+     *
+     */
+    private static final class Pair {
+        private final String name; // "FROM-TO"
+        private final Histogram latency = new Histogram(); // latency of the pair's queries
+        private final LongAdder settled = new LongAdder(); // airports settled by the pair's queries
+        private final LongAdder relaxed = new LongAdder(); // flights relaxed by the pair's queries
+
+        /**
+         * Creates the statistics of a pair
+         * @param name: "FROM-TO"
+         */
+        private Pair(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The JMX view of the statistics
+     * @author megangibbons
+     *
+     */
+    private static final class Bean implements SearchStatsMXBean {
+        @Override
+        public long getQueries() {
+            return LATENCY.count();
+        }
+
+        @Override
+        public long getAirportsSettled() {
+            return SETTLED.sum();
+        }
+
+        @Override
+        public long getFlightsRelaxed() {
+            return RELAXED.sum();
+        }
+
+        @Override
+        public long getLabelsSet() {
+            return LABELS.sum();
+        }
+
+        @Override
+        public long getQueuePeak() {
+            return QUEUE_PEAK.get();
+        }
+
+        @Override
+        public long getLatencyMedianMicros() {
+            return LATENCY.percentile(50) / 1000;
+        }
+
+        @Override
+        public long getLatency99Micros() {
+            return LATENCY.percentile(99) / 1000;
+        }
+
+        @Override
+        public long getLatency999Micros() {
+            return LATENCY.percentile(99.9) / 1000;
+        }
+
+        @Override
+        public long getLatencyMaxMicros() {
+            return LATENCY.max() / 1000;
+        }
+
+        @Override
+        public String dump() {
+            return SearchStats.dump(20);
+        }
+
+        @Override
+        public void reset() {
+            SearchStats.reset();
+        }
+    }
+
+    /**
+     * Not used; statistics are kept in static fields
+     */
+    private SearchStats() {
+    }
+
+    /**
+     * Records one query. Callers check ENABLED first, so this is never reached when
+     * statistics are off.
+     * @param network: the network that was searched
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id, or -1 for a search to every airport
+     * @param nanos: how long the query took
+     * @param settled: airports settled
+     * @param relaxed: flights relaxed
+     * @param labels: labels set
+     * @param queuePeak: the most airports that were in the queue at once
+     */
+    public static void record(FlightNetwork network, int origin, int target, long nanos,
+        long settled, long relaxed, long labels, int queuePeak) {
+        LATENCY.record(nanos);
+        SETTLED.add(settled);
+        RELAXED.add(relaxed);
+        LABELS.add(labels);
+        QUEUE_PEAK.accumulate(queuePeak);
+        String name = network.acronym(origin) + "-"
+            + (target < 0 ? "*" : network.acronym(target));
+        Pair pair = PAIRS.get(name);
+        if (pair == null) {
+            if (PAIRS.size() >= MAX_PAIRS) {
+                return;
+            }
+            pair = PAIRS.computeIfAbsent(name, Pair::new);
+        }
+        pair.latency.record(nanos);
+        pair.settled.add(settled);
+        pair.relaxed.add(relaxed);
+    }
+
+    /**
+     * Gets the latency histogram of every query
+     * @return the histogram, in nanoseconds
+     */
+    public static Histogram latency() {
+        return LATENCY;
+    }
+
+    /**
+     * Gets the latency histogram of one airport pair
+     * @param from: the acronym of the departure airport
+     * @param to: the acronym of the arrival airport
+     * @return the histogram in nanoseconds, or null if the pair has none
+     */
+    public static Histogram latency(String from, String to) {
+        Pair pair = PAIRS.get(from + "-" + to);
+        return pair == null ? null : pair.latency;
+    }
+
+    /**
+     * Forgets every statistic
+     */
+    public static void reset() {
+        LATENCY.reset();
+        PAIRS.clear();
+        SETTLED.reset();
+        RELAXED.reset();
+        LABELS.reset();
+        QUEUE_PEAK.reset();
+    }
+
+    /**
+     * Writes the statistics as text: the totals, the overall latency percentiles,
+     * and the airport pairs with the slowest queries
+     * @param pairs: how many of the slowest pairs to list
+     * @return the statistics in a String
+     */
+    public static String dump(int pairs) {
+        StringBuilder sb = new StringBuilder();
+        long queries = LATENCY.count();
+        sb.append("Search statistics").append(ENABLED ? "" : " (off, start with -Dffg.stats=true)")
+            .append('\n');
+        sb.append("queries ").append(queries).append(", airports settled ").append(SETTLED.sum())
+            .append(", flights relaxed ").append(RELAXED.sum()).append(", labels set ")
+            .append(LABELS.sum()).append(", queue peak ").append(QUEUE_PEAK.get()).append('\n');
+        sb.append("latency ");
+        percentiles(LATENCY, sb);
+        sb.append('\n');
+        // rank the pairs by their 99th percentile, slowest first
+        List<Pair> slowest = new ArrayList<>(PAIRS.values());
+        slowest.sort(Comparator.comparingLong((Pair p) -> p.latency.percentile(99)).reversed());
+        for (int i = 0; i < slowest.size() && i < pairs; i++) {
+            Pair p = slowest.get(i);
+            long count = p.latency.count();
+            sb.append(p.name).append(": ").append(count).append(" queries, ");
+            percentiles(p.latency, sb);
+            sb.append(", settled/query ").append(count == 0 ? 0 : p.settled.sum() / count)
+                .append(", relaxed/query ").append(count == 0 ? 0 : p.relaxed.sum() / count)
+                .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a histogram's percentiles in microseconds
+     * @param h: the histogram, in nanoseconds
+     * @param sb: where the percentiles are appended
+     */
+    private static void percentiles(Histogram h, StringBuilder sb) {
+        sb.append("p50 ").append(h.percentile(50) / 1000).append(" us, p99 ")
+            .append(h.percentile(99) / 1000).append(" us, p99.9 ")
+            .append(h.percentile(99.9) / 1000).append(" us, max ").append(h.max() / 1000)
+            .append(" us");
+    }
+}
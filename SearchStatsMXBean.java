@@ -0,0 +1,72 @@
+/**
+ * The search statistics as seen through JMX, registered as
+ * FastestFlightGenerator:type=SearchStats when statistics are on
+ * @author megangibbons
+ *
+ */
+public interface SearchStatsMXBean {
+    /**
+     * Gets the number of queries recorded
+     * @return the number of queries
+     */
+    long getQueries();
+
+    /**
+     * Gets the airports settled by every query
+     * @return the total
+     */
+    long getAirportsSettled();
+
+    /**
+     * Gets the flights relaxed by every query
+     * @return the total
+     */
+    long getFlightsRelaxed();
+
+    /**
+     * Gets the labels set by every query
+     * @return the total
+     */
+    long getLabelsSet();
+
+    /**
+     * Gets the most airports any query had in its queue at once
+     * @return the queue peak
+     */
+    long getQueuePeak();
+
+    /**
+     * Gets the median query latency
+     * @return the latency in microseconds
+     */
+    long getLatencyMedianMicros();
+
+    /**
+     * Gets the 99th percentile query latency
+     * @return the latency in microseconds
+     */
+    long getLatency99Micros();
+
+    /**
+     * Gets the 99.9th percentile query latency
+     * @return the latency in microseconds
+     */
+    long getLatency999Micros();
+
+    /**
+     * Gets the slowest query latency
+     * @return the latency in microseconds
+     */
+    long getLatencyMaxMicros();
+
+    /**
+     * Writes the statistics as text, with the 20 slowest airport pairs
+     * @return the statistics
+     */
+    String dump();
+
+    /**
+     * Forgets every statistic
+     */
+    void reset();
+}
@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Preallocated label arrays for one search at a time. Every thread gets its own
+ * workspace, and starting a new search only bumps an epoch number: a label whose
+ * stamp doesn't match the current epoch is treated as unset, so nothing has to be
+ * cleared between searches and a search creates no garbage.
+ * @author megangibbons
+ *
+ */
+public class SearchWorkspace {
+    // the workspace of each thread, grown whenever a bigger network is searched
+    private static final ThreadLocal<SearchWorkspace> LOCAL =
+        ThreadLocal.withInitial(() -> new SearchWorkspace(0));
+
+    private int[] arrival; // earliest arrival minute at each airport
+    private int[] previous; // flight used to reach each airport, or -1 for the origin
+    private int[] stamp; // epoch in which each airport's labels were last set
+    private int[] settled; // epoch in which each airport was last settled
+    private int[] bound; // lower bound on the time left from each airport to the target
+    private int[] boundStamp; // epoch in which each airport's bound was last set
+    private int epoch; // number of the current search
+    private int settledCount; // number of airports settled in the current search
+    private int relaxedCount; // flights relaxed in the current search, counted only with SearchStats on
+    private int labelCount; // labels set in the current search, counted only with SearchStats on
+    private int queuePeak; // most airports queued at once in the current search, with SearchStats on
+    private IndexedMinHeap queue; // airports waiting to be settled, keyed by arrival
+
+    /**
+     * Creates a workspace for networks with up to the given number of airports
+     * @param capacity: the number of airports
+     */
+    public SearchWorkspace(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Gets the calling thread's workspace, reset for a new search
+     * @param airportCount: the number of airports in the network being searched
+     * @return the thread's workspace
+     */
+    public static SearchWorkspace get(int airportCount) {
+        SearchWorkspace ws = LOCAL.get();
+        if (ws.capacity() < airportCount) {
+            ws.allocate(airportCount);
+        }
+        ws.reset();
+        return ws;
+    }
+
+    /**
+     * Gets the number of airports the workspace has room for
+     * @return the workspace capacity
+     */
+    public int capacity() {
+        return this.arrival.length;
+    }
+
+    /**
+     * Forgets every label so a new search can start. This only moves to the next
+     * epoch, except once every four billion searches when the stamps wrap around.
+     */
+    public void reset() {
+        this.epoch++;
+        if (this.epoch == 0) {
+            Arrays.fill(this.stamp, 0);
+            Arrays.fill(this.settled, 0);
+            Arrays.fill(this.boundStamp, 0);
+            this.epoch = 1;
+        }
+        this.settledCount = 0;
+        this.relaxedCount = 0;
+        this.labelCount = 0;
+        this.queuePeak = 0;
+        this.queue.clear();
+    }
+
+    /**
+     * Gets the earliest known arrival at an airport in the current search
+     * @param airport: the airport id
+     * @return the arrival minute, or Integer.MAX_VALUE if it hasn't been reached
+     */
+    public int arrival(int airport) {
+        return this.stamp[airport] == this.epoch ? this.arrival[airport] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the flight used to reach an airport in the current search
+     * @param airport: the airport id
+     * @return the flight index, or -1 if it hasn't been reached by a flight
+     */
+    public int previous(int airport) {
+        return this.stamp[airport] == this.epoch ? this.previous[airport] : -1;
+    }
+
+    /**
+     * Labels an airport with a new earliest arrival
+     * @param airport: the airport id
+     * @param minute: the arrival minute
+     * @param flight: the flight used to get there, or -1 for the origin
+     */
+    public void label(int airport, int minute, int flight) {
+        this.stamp[airport] = this.epoch;
+        this.arrival[airport] = minute;
+        this.previous[airport] = flight;
+    }
+
+    /**
+     * Checks whether an airport's arrival is final in the current search
+     * @param airport: the airport id
+     * @return true if the airport has been settled
+     */
+    public boolean isSettled(int airport) {
+        return this.settled[airport] == this.epoch;
+    }
+
+    /**
+     * Marks an airport's arrival as final in the current search
+     * @param airport: the airport id
+     */
+    public void settle(int airport) {
+        this.settled[airport] = this.epoch;
+        this.settledCount++;
+    }
+
+    /**
+     * Gets the number of airports settled so far in the current search
+     * @return the number of settled airports
+     */
+    public int settledCount() {
+        return this.settledCount;
+    }
+
+    /**
+     * Stores the counts of the current search for SearchStats
+     * @param relaxed: flights relaxed
+     * @param labels: labels set
+     * @param peak: the most airports queued at once
+     */
+    public void setCounts(int relaxed, int labels, int peak) {
+        this.relaxedCount = relaxed;
+        this.labelCount = labels;
+        this.queuePeak = peak;
+    }
+
+    /**
+     * Gets the number of flights relaxed in the current search
+     * @return the count, or 0 if SearchStats is off
+     */
+    public int relaxedCount() {
+        return this.relaxedCount;
+    }
+
+    /**
+     * Gets the number of labels set in the current search
+     * @return the count, or 0 if SearchStats is off
+     */
+    public int labelCount() {
+        return this.labelCount;
+    }
+
+    /**
+     * Gets the most airports that were queued at once in the current search
+     * @return the queue peak, or 0 if SearchStats is off
+     */
+    public int queuePeak() {
+        return this.queuePeak;
+    }
+
+    /**
+     * Gets the lower bound remembered for an airport in the current search, so a
+     * goal-directed search computes each airport's bound only once
+     * @param airport: the airport id
+     * @return the bound in minutes, or -1 if it hasn't been set
+     */
+    public int bound(int airport) {
+        return this.boundStamp[airport] == this.epoch ? this.bound[airport] : -1;
+    }
+
+    /**
+     * Remembers the lower bound for an airport in the current search
+     * @param airport: the airport id
+     * @param minutes: the bound in minutes
+     */
+    public void setBound(int airport, int minutes) {
+        this.boundStamp[airport] = this.epoch;
+        this.bound[airport] = minutes;
+    }
+
+    /**
+     * Gets the priority queue of airports waiting to be settled
+     * @return the queue
+     */
+    public IndexedMinHeap queue() {
+        return this.queue;
+    }
+
+    /**
+     * Adds up the total time of the path that reaches an airport, the same way a
+     * Path does: every flight's duration plus every layover
+     * @param network: the network that was searched
+     * @param target: the last airport id in the path
+     * @return the total time in minutes, or -1 if the airport wasn't reached
+     */
+    public int totalTime(FlightNetwork network, int target) {
+        int f = previous(target);
+        if (f < 0) {
+            return -1;
+        }
+        int total = 0;
+        while (f >= 0) {
+            total += network.duration(f);
+            int before = previous(network.departureAirport(f));
+            if (before >= 0) {
+                total += network.departureMinute(f) - network.arrivalMinute(before);
+            }
+            f = before;
+        }
+        return total;
+    }
+
+    /**
+     * Finds the first flight of the path that reaches an airport
+     * @param network: the network that was searched
+     * @param target: the last airport id in the path
+     * @return the flight index, or -1 if the airport wasn't reached
+     */
+    public int firstFlight(FlightNetwork network, int target) {
+        int f = previous(target);
+        while (f >= 0 && previous(network.departureAirport(f)) >= 0) {
+            f = previous(network.departureAirport(f));
+        }
+        return f;
+    }
+
+    /**
+     * Builds the path that reaches an airport in the current search
+     * @param network: the network that was searched
+     * @param target: the last airport id in the path
+     * @return the path ending at the target airport, or null if it wasn't reached
+     */
+    public Path buildPath(FlightNetwork network, int target) {
+        if (previous(target) < 0) {
+            return null;
+        }
+        ArrayList<Flight> legs = new ArrayList<>();
+        int f = previous(target);
+        while (f >= 0) {
+            legs.add(network.flight(f));
+            f = previous(network.departureAirport(f));
+        }
+        // the legs were collected from the end, so extend the path in reverse
+        Path path = new Path(legs.get(legs.size() - 1));
+        for (int i = legs.size() - 2; i >= 0; i--) {
+            path = new Path(path, legs.get(i));
+        }
+        return path;
+    }
+
+    /**
+     * Creates the label arrays with room for the given number of airports
+     * @param capacity: the number of airports
+     */
+    private void allocate(int capacity) {
+        this.arrival = new int[capacity];
+        this.previous = new int[capacity];
+        this.stamp = new int[capacity];
+        this.settled = new int[capacity];
+        this.bound = new int[capacity];
+        this.boundStamp = new int[capacity];
+        this.epoch = 0;
+        this.queue = new IndexedMinHeap(capacity);
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The days each flight runs on over a service period, such as a whole season. The
+ * timetable keeps one row per flight pattern, and the calendar says on which days
+ * of the period each pattern runs, so a season grows the timetable by its number
+ * of patterns rather than by its number of days. Each distinct set of days is
+ * stored once as a bitset with one bit per day, and each flight points at its set,
+ * so checking whether a flight runs on a day is a single bit test.
+ *
+ * Calendars are read from a .csv file with one row per flight:
+ * "flightId,days" or "flightId,days,firstDate,lastDate", where days lists the ISO
+ * weekdays the flight runs on (1 is Monday, so "12345" is weekdays) and the dates
+ * are yyyy-mm-dd. Flights without a row run every day of the period.
+ * @author megangibbons
+ *
+ */
+public class ServiceCalendar {
+    // the most days one journey may span, which bounds how far ahead a multi-day
+    // search looks for a connection
+    public static final int MAX_TRIP_DAYS = 7;
+
+    private final FlightNetwork network; // the network whose flight indexes this calendar uses
+    private final LocalDate start; // the first day of the service period
+    private final int days; // the number of days in the period
+    private final int words; // longs in each bitset
+    private final long[] bits; // every distinct bitset, one after another
+    private final int[] calendarIds; // flight IDs that have a calendar row, sorted
+    private final int[] calendarOfId; // bitset number of each of those flight IDs
+    private final int[] calendarOf; // bitset number of each flight index, null if all use bitset 0
+
+    /**
+     * Creates a calendar and points each of the network's flights at its bitset. A
+     * calendar without rows needs no per-flight table, so making one doesn't depend
+     * on the size of the network.
+     * @param network: the network whose flights the calendar is for
+     * @param start: the first day of the service period
+     * @param days: the number of days in the period
+     * @param bits: every distinct bitset; bitset 0 is every day
+     * @param calendarIds: flight IDs that have a calendar row, sorted
+     * @param calendarOfId: bitset number of each of those flight IDs
+     */
+    private ServiceCalendar(FlightNetwork network, LocalDate start, int days, long[] bits,
+        int[] calendarIds, int[] calendarOfId) {
+        this.network = network;
+        this.start = start;
+        this.days = days;
+        this.words = (days + 63) >>> 6;
+        this.bits = bits;
+        this.calendarIds = calendarIds;
+        this.calendarOfId = calendarOfId;
+        if (calendarIds.length == 0) {
+            this.calendarOf = null;
+            return;
+        }
+        this.calendarOf = new int[network.flightCount()];
+        for (int f = 0; f < this.calendarOf.length; f++) {
+            int at = Arrays.binarySearch(calendarIds, network.flightId(f));
+            this.calendarOf[f] = at >= 0 ? calendarOfId[at] : 0;
+        }
+    }
+
+    /**
+     * Makes a calendar where every flight runs every day of the period. It's cheap
+     * enough to make one per query.
+     * @param network: the network whose flights the calendar is for
+     * @param start: the first day of the service period
+     * @param days: the number of days in the period
+     * @return the calendar
+     */
+    public static ServiceCalendar daily(FlightNetwork network, LocalDate start, int days) {
+        if (network == null || start == null || days < 1) {
+            throw new IllegalArgumentException();
+        }
+        return new ServiceCalendar(network, start, days, everyDay(days), new int[0], new int[0]);
+    }
+
+    /**
+     * Reads flight calendars from a .csv file
+     * @param network: the network whose flights the calendar is for
+     * @param fileName: the calendar .csv file
+     * @param start: the first day of the service period
+     * @param days: the number of days in the period
+     * @return the calendar
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if a row can't be parsed
+     */
+    public static ServiceCalendar load(FlightNetwork network, String fileName, LocalDate start,
+        int days) throws IOException {
+        if (network == null || start == null || days < 1) {
+            throw new IllegalArgumentException();
+        }
+        List<int[]> rows = new ArrayList<>(); // flight ID and bitset number of each row
+        HashMap<BitsetKey, Integer> distinct = new HashMap<>();
+        List<long[]> bitsets = new ArrayList<>();
+        // bitset 0 is every day, used by the flights without a row
+        long[] all = everyDay(days);
+        distinct.put(new BitsetKey(all), 0);
+        bitsets.add(all);
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                // keep empty fields, so "id," is a flight that never runs
+                String[] info = line.split(",", -1);
+                long[] set;
+                int flightId;
+                try {
+                    flightId = Integer.parseInt(info[0].strip());
+                    LocalDate first = info.length > 2 ? LocalDate.parse(info[2].strip()) : start;
+                    LocalDate last = info.length > 3 ? LocalDate.parse(info[3].strip())
+                        : start.plusDays(days - 1);
+                    set = weekdays(start, days, info.length > 1 ? info[1].strip() : "1234567",
+                        first, last);
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    throw new IllegalArgumentException("Invalid calendar on line " + lineNumber
+                        + ": " + line);
+                }
+                // flights with the same days share one bitset
+                BitsetKey key = new BitsetKey(set);
+                Integer id = distinct.get(key);
+                if (id == null) {
+                    id = bitsets.size();
+                    distinct.put(key, id);
+                    bitsets.add(set);
+                }
+                rows.add(new int[] {flightId, id});
+            }
+        }
+        int words = (days + 63) >>> 6;
+        long[] bits = new long[bitsets.size() * words];
+        for (int c = 0; c < bitsets.size(); c++) {
+            System.arraycopy(bitsets.get(c), 0, bits, c * words, words);
+        }
+        // a later row for the same flight wins
+        rows.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] ids = new int[rows.size()];
+        int[] calendars = new int[rows.size()];
+        int count = 0;
+        for (int[] row : rows) {
+            if (count > 0 && ids[count - 1] == row[0]) {
+                count--;
+            }
+            ids[count] = row[0];
+            calendars[count] = row[1];
+            count++;
+        }
+        return new ServiceCalendar(network, start, days, bits, Arrays.copyOf(ids, count),
+            Arrays.copyOf(calendars, count));
+    }
+
+    /**
+     * Makes the same calendar for another version of the network, such as one with
+     * live updates applied. Flights are matched by ID, and flights the calendar has
+     * no row for run every day.
+     * @param other: the network
+     * @return the calendar for the network
+     */
+    public ServiceCalendar forNetwork(FlightNetwork other) {
+        if (other == this.network) {
+            return this;
+        }
+        return new ServiceCalendar(other, this.start, this.days, this.bits, this.calendarIds,
+            this.calendarOfId);
+    }
+
+    /**
+     * Gets the network whose flight indexes the calendar uses
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Gets the first day of the service period
+     * @return the first day
+     */
+    public LocalDate getStart() {
+        return this.start;
+    }
+
+    /**
+     * Gets the number of days in the service period
+     * @return the number of days
+     */
+    public int days() {
+        return this.days;
+    }
+
+    /**
+     * Gets the number of distinct sets of days
+     * @return the number of bitsets
+     */
+    public int calendarCount() {
+        return this.bits.length / this.words;
+    }
+
+    /**
+     * Gets the day number of a date
+     * @param date: the date
+     * @return days since the start of the period, which is outside 0 to days() - 1
+     *         if the date isn't in the period
+     */
+    public int dayOf(LocalDate date) {
+        return (int) ChronoUnit.DAYS.between(this.start, date);
+    }
+
+    /**
+     * Checks whether a flight runs on a day of the period
+     * @param flight: the flight index
+     * @param day: the day number, from 0 to days() - 1
+     * @return true if the flight runs that day
+     */
+    public boolean runsOn(int flight, int day) {
+        int set = this.calendarOf == null ? 0 : this.calendarOf[flight];
+        return (this.bits[set * this.words + (day >>> 6)] & (1L << day)) != 0;
+    }
+
+    /**
+     * Makes the bitset of every day of a period
+     * @param days: the number of days in the period
+     * @return the bitset
+     */
+    private static long[] everyDay(int days) {
+        long[] set = new long[(days + 63) >>> 6];
+        for (int d = 0; d < days; d++) {
+            set[d >>> 6] |= 1L << d;
+        }
+        return set;
+    }
+
+    /**
+     * Makes the bitset of the days of a period that fall on some weekdays and
+     * between two dates
+     * @param start: the first day of the period
+     * @param days: the number of days in the period
+     * @param weekdays: the ISO weekday digits, 1 for Monday to 7 for Sunday
+     * @param first: the first date the flight runs
+     * @param last: the last date the flight runs
+     * @return the bitset
+     */
+    private static long[] weekdays(LocalDate start, int days, String weekdays, LocalDate first,
+        LocalDate last) {
+        boolean[] runs = new boolean[8];
+        for (int i = 0; i < weekdays.length(); i++) {
+            int d = weekdays.charAt(i) - '0';
+            if (d < 1 || d > 7) {
+                throw new NumberFormatException("Invalid weekday " + weekdays.charAt(i));
+            }
+            runs[d] = true;
+        }
+        long[] set = new long[(days + 63) >>> 6];
+        int from = Math.max(0, (int) ChronoUnit.DAYS.between(start, first));
+        int to = Math.min(days - 1, (int) ChronoUnit.DAYS.between(start, last));
+        DayOfWeek weekday = start.plusDays(from).getDayOfWeek();
+        for (int d = from; d <= to; d++) {
+            if (runs[weekday.getValue()]) {
+                set[d >>> 6] |= 1L << d;
+            }
+            weekday = weekday.plus(1);
+        }
+        return set;
+    }
+
+    /**
+     * A bitset as a hash map key, so flights with the same days share one bitset
+     * @author megangibbons
+     *
+     */
+    private static final class BitsetKey {
+        private final long[] set; // the bitset
+        private final int hash; // hash of the bitset
+
+        /**
+         * Wraps a bitset
+         * @param set: the bitset
+         */
+        private BitsetKey(long[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof BitsetKey && Arrays.equals(this.set, ((BitsetKey) other).set);
+        }
+    }
+}
@@ -1,10 +1,14 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Scanner;
 
@@ -18,7 +22,31 @@ public class ShortestFlightPath {
     // stores all the airports and their information
     public static Hashtable<String, Airport> airports;
     // stores all the direct flights
-    public static ArrayList<Flight> flights;
+    public static List<Flight> flights;
+    // compiled copy of the airports and flights that the search engines run on.
+    // It's replaced, never changed, so a query that has read it keeps a consistent
+    // timetable even if an update lands while it runs.
+    public static volatile FlightNetwork network;
+    // the time-dependent search engine over the loaded airports
+    private static volatile EarliestArrivalSearch search;
+    // the connection scan engine over the loaded flights
+    private static volatile ConnectionScan connectionScan;
+    // the profile query engine over the loaded flights
+    private static volatile ProfileSearch profileSearch;
+    // answer path queries with the connection scan instead of the search engine
+    public static volatile boolean useConnectionScan = false;
+    // the landmark search engine for point-to-point queries
+    private static volatile GoalDirectedSearch goalSearch;
+    // answer earliest arrival queries with the landmark search engine, off by default
+    // since on hub-and-spoke timetables it is only a few percent faster than Dijkstra
+    public static volatile boolean useGoalDirected = false;
+    // precomputed transfer patterns, used for earliest arrival queries when they
+    // belong to the current network
+    public static volatile TransferPatterns patterns;
+    // recent path query results, cleared whenever the network is reloaded
+    public static QueryCache cache = new QueryCache(10000, 10 * 60 * 1000);
+    // the days each flight runs on, for dated queries; null until one is loaded
+    public static volatile ServiceCalendar calendar;
     
     /**
      * Reads in all the airport information from a .csv and creates airport objects
@@ -69,7 +97,7 @@ public class ShortestFlightPath {
                     Flight newFlight =
                         new Flight(id, departure, arrival, duration, info[2], info[3]);
                     flights.add(newFlight);
-                    // add the flight to a linked list of flights leaving each airport object
+                    // add the flight to the list of flights leaving each airport object
                     departure.addNewFlightLeaving(newFlight);
                 }
                 line = br.readLine();
@@ -79,6 +107,71 @@ public class ShortestFlightPath {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        // compile the loaded timetable for the search engines
+        network = FlightNetwork.compile(airports, flights);
+    }
+
+    /**
+     * Loads the timetable from the binary snapshot if it's up to date with both .csv
+     * files, and otherwise imports the .csv files with the bulk loader and saves a
+     * new snapshot. The airports and flights fields are filled from the loaded
+     * network so the rest of the program works the same as with readAirportsFromCSV
+     * and readFlightsFromCSV, but nothing is built per flight: the flights list is a
+     * view of the network, and each airport's departure list is only built if the
+     * original shortestFlight asks for it.
+     * @param airportsFile: the name of the airport file
+     * @param flightsFile: the name of the flight file
+     * @param snapshotFile: the name of the snapshot file
+     */
+    public static void loadTimetable(String airportsFile, String flightsFile,
+        String snapshotFile) {
+        try {
+            network = NetworkSnapshot.loadOrImport(airportsFile, flightsFile, snapshotFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        airports = new Hashtable<String, Airport>();
+        for (int a = 0; a < network.airportCount(); a++) {
+            Airport airport = network.airport(a);
+            airport.leavesFrom(network, a);
+            airports.put(airport.getAcronym(), airport);
+        }
+        flights = network.flightList();
+    }
+
+    /**
+     * Applies a batch of delays, cancellations and added flights. Queries that are
+     * already running finish on the old timetable, and every query that starts
+     * afterwards sees the new one. The flights list is replaced too, by the new
+     * network's view, so nothing is sorted until it's read, but the airports' own
+     * departure lists, which only the original shortestFlight uses, keep the
+     * timetable as it was loaded.
+     * @param update: the changes to apply
+     * @return the new network
+     * @throws IllegalArgumentException if the batch can't be applied, in which case
+     *         nothing changes
+     */
+    public static synchronized FlightNetwork applyUpdate(TimetableUpdate update) {
+        FlightNetwork updated = update.applyTo(network);
+        flights = updated.flightList();
+        network = updated;
+        return updated;
+    }
+
+    /**
+     * Reads the days each flight runs on for dated queries. Flights without a row in
+     * the file run every day of the period.
+     * @param fileName: the name of the calendar file
+     * @param start: the first day of the service period
+     * @param days: the number of days in the period
+     */
+    public static void loadCalendar(String fileName, LocalDate start, int days) {
+        try {
+            calendar = ServiceCalendar.load(network, fileName, start, days);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /**
@@ -94,8 +187,15 @@ public class ShortestFlightPath {
      * so that the user can view all of the flight data
      */
     public static void printAllFlights() {
-        for (int i = 0; i < flights.size(); i++) {
-            System.out.println(flights.get(i).toString());
+        try {
+            Writer out = standardOut();
+            for (int i = 0; i < flights.size(); i++) {
+                out.write(flights.get(i).toString());
+                out.write(System.lineSeparator());
+            }
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -104,12 +204,18 @@ public class ShortestFlightPath {
      * @param airport: the String acronym of the departure airport
      */
     public static void printFlightsFromAirport(String airport) {
-        for (int i = 0; i < flights.size(); i++) {
-            Flight curr = flights.get(i);
-            if (airport.equals(curr.getDepartureAirport().getAcronym())) {
-                System.out.println(curr.toString());
-            }
-        }
+        printFlightsFromAirport(airport, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Prints the flights departing from a specific airport in a time range, in
+     * departure order
+     * @param airport: the String acronym of the departure airport
+     * @param after: the earliest departure time in minutes after midnight
+     * @param before: the latest departure time in minutes after midnight
+     */
+    public static void printFlightsFromAirport(String airport, int after, int before) {
+        printBoard(FlightBoard.departures(network, airport, after, before));
     }
 
     /**
@@ -117,17 +223,262 @@ public class ShortestFlightPath {
      * @param airport: the String acronym of the arrival airport
      */
     public static void printFlightsToAirport(String airport) {
-        for (int i = 0; i < flights.size(); i++) {
-            Flight curr = flights.get(i);
-            if (airport.equals(curr.getArrivalAirport().getAcronym())) {
-                System.out.println(curr.toString());
+        printFlightsToAirport(airport, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Prints the flights arriving to a specific airport in a time range, in
+     * arrival order
+     * @param airport: the String acronym of the arrival airport
+     * @param after: the earliest arrival time in minutes after midnight
+     * @param before: the latest arrival time in minutes after midnight
+     */
+    public static void printFlightsToAirport(String airport, int after, int before) {
+        printBoard(FlightBoard.arrivals(network, airport, after, before));
+    }
+
+    /**
+     * Prints a departure or arrival board through one buffer
+     * @param board: the board, or null if the airport isn't in the network
+     */
+    private static void printBoard(FlightBoard board) {
+        if (board == null) {
+            return;
+        }
+        try {
+            Writer out = standardOut();
+            board.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes a buffered writer over standard output, so long listings go out in a
+     * few large writes instead of one per line. It's flushed, never closed.
+     * @return the writer
+     */
+    private static Writer standardOut() {
+        return new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+    }
+
+    /**
+     * Finds the fastest travel route between two airports with the time-dependent
+     * earliest arrival search. A single pair is searched point to point, which
+     * prunes against the best total so far; fastestFlightsFrom is for callers that
+     * want every destination of an airport.
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the fastest path from the departure to the arrival airport, or null
+     *         if there isn't one
+     */
+    public static Path fastestFlight(String start, String end) {
+        FlightNetwork current = network;
+        // if the start and end airport are the same or the airports aren't
+        // in the network, return null
+        if (start.equals(end) || current.airportId(start) < 0 || current.airportId(end) < 0) {
+            return null;
+        }
+        if (useConnectionScan) {
+            return cache.get(current, start, end, QueryCache.WHOLE_DAY,
+                () -> connectionScanFlight(current, start, end));
+        }
+        return cache.get(current, start, end, QueryCache.WHOLE_DAY,
+            () -> searchFor(current).fastestFlight(start, end));
+    }
+
+    /**
+     * Finds the fastest travel route from one airport to every other airport
+     * @param current: the network to search
+     * @param start: the acronym for the departure airport
+     * @return the fastest itineraries, or null if the airport isn't in the network
+     */
+    public static FastestItineraries fastestFlightsFrom(FlightNetwork current, String start) {
+        int origin = current.airportId(start);
+        return origin < 0 ? null : searchFor(current).fastestFrom(origin);
+    }
+
+    /**
+     * Finds the earliest arrival at every airport from one airport
+     * @param start: the acronym for the departure airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arrival tree, or null if the airport isn't in the network
+     */
+    public static EarliestArrivalTree reachableFrom(String start, int departAfter) {
+        FlightNetwork current = network;
+        int origin = current.airportId(start);
+        return origin < 0 ? null : searchFor(current).tree(origin, departAfter);
+    }
+
+    /**
+     * Finds the travel route that arrives the earliest when leaving no earlier than
+     * the given time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving path, or null if there isn't one
+     */
+    public static Path earliestArrival(String start, String end, int departAfter) {
+        FlightNetwork current = network;
+        int origin = current.airportId(start);
+        if (origin < 0) {
+            return null;
+        }
+        // every departure time up to the next flight gives the same answer
+        int window = QueryCache.windowFor(current, origin, departAfter);
+        TransferPatterns precomputed = patterns;
+        if (precomputed != null && precomputed.getNetwork() == current) {
+            return cache.get(current, start, end, window,
+                () -> precomputed.earliestArrival(start, end, departAfter));
+        }
+        if (useGoalDirected) {
+            return cache.get(current, start, end, window,
+                () -> goalSearchFor(current).earliestArrival(start, end, departAfter));
+        }
+        return cache.get(current, start, end, window,
+            () -> searchFor(current).earliestArrival(start, end, departAfter));
+    }
+
+    /**
+     * Finds the travel route that arrives the earliest when leaving on a date no
+     * earlier than the given time, waiting overnight for connections if needed and
+     * only taking flights on the days they run. Every flight runs every day if no
+     * calendar has been loaded.
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param date: the departure date
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving itinerary, or null if there isn't one
+     * @throws IllegalArgumentException if the date isn't in the calendar's period
+     */
+    public static DatedItinerary earliestArrivalOn(String start, String end, LocalDate date,
+        int departAfter) {
+        FlightNetwork current = network;
+        ServiceCalendar days = calendar;
+        if (days == null) {
+            // a daily calendar has no per-flight table, so one per query is cheap
+            days = ServiceCalendar.daily(current, date, ServiceCalendar.MAX_TRIP_DAYS);
+        } else if (days.getNetwork() != current) {
+            // the timetable changed since the calendar was read, so point the new
+            // network's flights at their days; racing threads may both do this
+            days = days.forNetwork(current);
+            calendar = days;
+        }
+        return searchFor(current).earliestArrival(start, end, date, departAfter, days);
+    }
+
+    /**
+     * Gets the search engine for a network, creating a new one if the timetable was
+     * reloaded since the last one was created
+     * @param current: the network to search
+     * @return the search engine
+     */
+    private static EarliestArrivalSearch searchFor(FlightNetwork current) {
+        // no lock: threads racing after a reload may each create an engine, and
+        // any of them will do since engines hold no per-query state
+        EarliestArrivalSearch engine = search;
+        if (engine == null || engine.getNetwork() != current) {
+            engine = new EarliestArrivalSearch(current);
+            search = engine;
+        }
+        return engine;
+    }
+
+    /**
+     * Gets the landmark search engine for a network, computing new landmark
+     * distances if the timetable was reloaded since the last one was created
+     * @param current: the network to search
+     * @return the search engine
+     */
+    private static GoalDirectedSearch goalSearchFor(FlightNetwork current) {
+        // queries read the published engine without a lock, like searchFor. Only
+        // building a new one locks, since the landmark distances are too costly for
+        // racing threads to each compute them.
+        GoalDirectedSearch engine = goalSearch;
+        if (engine == null || engine.getNetwork() != current) {
+            synchronized (ShortestFlightPath.class) {
+                engine = goalSearch;
+                if (engine == null || engine.getNetwork() != current) {
+                    engine = new GoalDirectedSearch(current);
+                    goalSearch = engine;
+                }
             }
         }
+        return engine;
+    }
+
+    /**
+     * Finds the fastest travel route between two airports by scanning the flights
+     * in order of departure time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the fastest path from the departure to the arrival airport, or null
+     *         if there isn't one
+     */
+    public static Path connectionScanFlight(String start, String end) {
+        return connectionScanFlight(network, start, end);
+    }
+
+    /**
+     * Finds the fastest travel route between two airports of a network by scanning
+     * the flights in order of departure time
+     * @param current: the network to scan
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @return the fastest path from the departure to the arrival airport, or null
+     *         if there isn't one
+     */
+    public static Path connectionScanFlight(FlightNetwork current, String start, String end) {
+        // no lock: like searchFor, threads racing after a reload may each sort the
+        // connections, and any of the engines will do
+        ConnectionScan engine = connectionScan;
+        if (engine == null || engine.getNetwork() != current) {
+            engine = new ConnectionScan(current);
+            connectionScan = engine;
+        }
+        return engine.fastestFlight(start, end);
+    }
+
+    /**
+     * Finds every worthwhile travel route between two airports that leaves inside a
+     * time window: each one arrives earlier than any route leaving later
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param windowStart: the earliest departure time in minutes after midnight
+     * @param windowEnd: the latest departure time in minutes after midnight
+     * @return the routes ordered by departure time, empty if there are none
+     */
+    public static List<Path> departureProfile(String start, String end, int windowStart,
+        int windowEnd) {
+        FlightNetwork current = network;
+        // re-sort the connections if the timetable was reloaded; no lock, as above
+        ProfileSearch engine = profileSearch;
+        if (engine == null || engine.getNetwork() != current) {
+            engine = new ProfileSearch(current);
+            profileSearch = engine;
+        }
+        return engine.profile(start, end, windowStart, windowEnd);
+    }
+
+    /**
+     * Finds the travel routes that trade arrival time against the number of
+     * flights: each one arrives earlier than every route with fewer flights
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @param maxTransfers: the most connections a route may have
+     * @return the routes ordered by number of flights, empty if there are none
+     */
+    public static List<Path> fewestFlightsFront(String start, String end, int departAfter,
+        int maxTransfers) {
+        return new RoundSearch(network).paretoFront(start, end, departAfter, maxTransfers);
     }
 
     /**
      * Uses Dijkstra's shortest path algorithm to find the fastest travel route 
-     * in minutes spent traveling between two airports
+     * in minutes spent traveling between two airports. This is the original
+     * implementation, kept as a reference for checking the faster engines.
      * @param start: the acronym for the departure airport
      * @param end: the acronym for the arrival airport
      * @return the shortest path from the departure to the arrival airport
@@ -150,7 +501,7 @@ public class ShortestFlightPath {
         // continue the algorithm while all paths haven't been explored
         while (explored.size() != airports.size()) {
             // get all of the flights/edges leaving from the current airport
-            LinkedList<Flight> flightsLeaving = curr.getFlightsLeaving();
+            ArrayList<Flight> flightsLeaving = curr.getFlightsLeaving();
             // stores the paths that will be updated to include the current airport
             // being explored to avoid a ConcurrentModificationException
             PriorityQueue<Path> intermediatePaths = new PriorityQueue<Path>();
@@ -177,14 +528,14 @@ public class ShortestFlightPath {
                     while (itr.hasNext()) {
                         Path p = itr.next();
                         if (p.end.getArrivalAirport().equals(curr)) {
-                            // parse the time the path ends and when the 
-                            // current flight takes off
-                            String[] pathTime = p.endTime.split(":");
-                            String[] flightTime = currFlight.getDepartureTime().split(":");
-                            int pathHour = Integer.parseInt(pathTime[0]);
-                            int pathMin = Integer.parseInt(pathTime[1]);
-                            int flightHour = Integer.parseInt(flightTime[0]);
-                            int flightMin = Integer.parseInt(flightTime[1]);
+                            // split the time the path ends and when the
+                            // current flight takes off into hours and minutes;
+                            // hours keep counting past midnight, so 1:30 the
+                            // next day is hour 25
+                            int pathHour = p.endMinute / 60;
+                            int pathMin = p.endMinute % 60;
+                            int flightHour = currFlight.getDepartureMinute() / 60;
+                            int flightMin = currFlight.getDepartureMinute() % 60;
                             // make sure the new flight leaves at a time after
                             // the path's last arrival flight
                             if (pathHour <= flightHour && flightMin > pathMin) {
@@ -245,13 +596,26 @@ public class ShortestFlightPath {
      * The main method continually prompts the user for input to run the other 
      * methods, such as printing the airports, finding the shortest flight,
      * and printing the flights
+     * @param args: pass "csa" to answer path queries with the connection scan,
+     *        "goal" to answer earliest arrival queries with the landmark search, or
+     *        "patterns" to answer them from precomputed transfer patterns
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("csa")) {
+            useConnectionScan = true;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("goal")) {
+            useGoalDirected = true;
+        }
         // load in the data for both the flights and airports
-        readAirportsFromCSV(
-            "airports.csv");
-        readFlightsFromCSV(
-            "flights.csv");
+        loadTimetable("airports.csv", "flights.csv", "timetable.snapshot");
+        if (args.length > 0 && args[0].equalsIgnoreCase("patterns")) {
+            try {
+                patterns = TransferPatterns.loadOrCompute(network, "timetable.patterns");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         Scanner scnr = new Scanner(System.in);
         String userIn = "";
         boolean search = true;
@@ -292,7 +656,7 @@ public class ShortestFlightPath {
                     to = scnr.next().toUpperCase();
                     to.strip();
                     // find the shortest path
-                    Path path = shortestFlight(from, to);
+                    Path path = fastestFlight(from, to);
                     // if no path is found, let the user know
                     if (path == null) {
                         System.out.println(
@@ -303,6 +667,9 @@ public class ShortestFlightPath {
                     System.out.print(path.toString());
                     break;
                 case "6":
+                    if (SearchStats.ENABLED) {
+                        System.out.print(SearchStats.dump(20));
+                    }
                     System.out.println("Thank you for using the fastest flight generator!");
                     search = false;
                     break;
@@ -0,0 +1,206 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic hub-and-spoke timetables for benchmarks. The same seed and
+ * sizes always give the same timetable. A few airports are hubs; every flight
+ * either links two hubs or links a spoke airport with a hub, and flight times grow
+ * with the distance between the airports' made-up map positions. A disrupted
+ * timetable also has late flights that land after midnight and delayed flights,
+ * some of which leave after midnight, for checks that need every edge case.
+ * @author megangibbons
+ *
+ */
+public class TimetableGenerator {
+    private final long seed; // seed of the random number generator
+    private final int airportCount; // number of airports to generate
+    private final int flightCount; // number of flights to generate
+    private final int hubCount; // number of hub airports
+    private final boolean disrupted; // whether flights may run past midnight and be delayed
+
+    /**
+     * Creates a generator with one hub for every 20 airports
+     * @param seed: seed of the random number generator
+     * @param airportCount: number of airports to generate
+     * @param flightCount: number of flights to generate
+     */
+    public TimetableGenerator(long seed, int airportCount, int flightCount) {
+        this(seed, airportCount, flightCount, Math.max(1, airportCount / 20));
+    }
+
+    /**
+     * Creates a generator
+     * @param seed: seed of the random number generator
+     * @param airportCount: number of airports to generate, at least 2
+     * @param flightCount: number of flights to generate
+     * @param hubCount: number of hub airports, from 1 to airportCount
+     */
+    public TimetableGenerator(long seed, int airportCount, int flightCount, int hubCount) {
+        this(seed, airportCount, flightCount, hubCount, false);
+    }
+
+    /**
+     * Creates a generator with one hub for every 20 airports that may disrupt the
+     * timetable
+     * @param seed: seed of the random number generator
+     * @param airportCount: number of airports to generate
+     * @param flightCount: number of flights to generate
+     * @param disrupted: whether flights may land after midnight and be delayed
+     */
+    public TimetableGenerator(long seed, int airportCount, int flightCount, boolean disrupted) {
+        this(seed, airportCount, flightCount, Math.max(1, airportCount / 20), disrupted);
+    }
+
+    /**
+     * Creates a generator
+     * @param seed: seed of the random number generator
+     * @param airportCount: number of airports to generate, at least 2
+     * @param flightCount: number of flights to generate
+     * @param hubCount: number of hub airports, from 1 to airportCount
+     * @param disrupted: whether flights may land after midnight and be delayed
+     */
+    public TimetableGenerator(long seed, int airportCount, int flightCount, int hubCount,
+        boolean disrupted) {
+        if (airportCount < 2 || airportCount > 26 * 26 * 26 || flightCount < 0 || hubCount < 1
+            || hubCount > airportCount) {
+            throw new IllegalArgumentException();
+        }
+        this.seed = seed;
+        this.airportCount = airportCount;
+        this.flightCount = flightCount;
+        this.hubCount = hubCount;
+        this.disrupted = disrupted;
+    }
+
+    /**
+     * Makes the three letter acronym of a generated airport
+     * @param airport: the airport number
+     * @return the acronym, AAA for airport 0, AAB for airport 1, and so on
+     */
+    public static String acronym(int airport) {
+        char[] code = new char[3];
+        for (int i = 2; i >= 0; i--) {
+            code[i] = (char) ('A' + airport % 26);
+            airport /= 26;
+        }
+        return new String(code);
+    }
+
+    /**
+     * Generates the airports
+     * @return the airports, sorted by acronym
+     */
+    public Airport[] airports() {
+        Airport[] airports = new Airport[this.airportCount];
+        for (int a = 0; a < this.airportCount; a++) {
+            String code = acronym(a);
+            String kind = a < this.hubCount ? "Hub" : "Regional";
+            airports[a] = new Airport(code, code + " " + kind + " Airport", "City " + code, "ST");
+        }
+        return airports;
+    }
+
+    /**
+     * Generates the full timetable
+     * @return the compiled network
+     */
+    public FlightNetwork generate() {
+        SplittableRandom random = new SplittableRandom(this.seed);
+        int n = this.airportCount;
+        int m = this.flightCount;
+        // place the airports on a 3000 by 3000 mile map
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int a = 0; a < n; a++) {
+            x[a] = random.nextDouble() * 3000;
+            y[a] = random.nextDouble() * 3000;
+        }
+        int[] flightId = new int[m];
+        int[] depAirport = new int[m];
+        int[] arrAirport = new int[m];
+        int[] depMinute = new int[m];
+        int[] arrMinute = new int[m];
+        int[] duration = new int[m];
+        for (int f = 0; f < m; f++) {
+            int from;
+            int to;
+            // a quarter of the flights link two hubs, the rest link a spoke and a hub
+            if (this.hubCount > 1 && (random.nextInt(4) == 0 || n == this.hubCount)) {
+                from = random.nextInt(this.hubCount);
+                to = random.nextInt(this.hubCount - 1);
+                if (to >= from) {
+                    to++;
+                }
+            } else {
+                int hub = random.nextInt(this.hubCount);
+                int spoke = this.hubCount + random.nextInt(n - this.hubCount);
+                boolean outbound = random.nextBoolean();
+                from = outbound ? hub : spoke;
+                to = outbound ? spoke : hub;
+            }
+            // about 500 miles an hour plus half an hour for taxiing
+            double miles = Math.hypot(x[from] - x[to], y[from] - y[to]);
+            int minutes = 30 + (int) (miles / 500 * 60);
+            int dep = 5 * 60 + random.nextInt(18 * 60);
+            if (this.disrupted) {
+                // late flights land after midnight, and one in 20 is delayed by up to
+                // 17 hours, which can push its departure past midnight too
+                if (random.nextInt(20) == 0) {
+                    dep += 60 + random.nextInt(17 * 60);
+                }
+            } else if (dep + minutes > 24 * 60 - 1) {
+                // keep every flight inside the day
+                dep = 24 * 60 - 1 - minutes;
+            }
+            flightId[f] = TimetableLoader.FIRST_FLIGHT_ID + f;
+            depAirport[f] = from;
+            arrAirport[f] = to;
+            depMinute[f] = dep;
+            arrMinute[f] = dep + minutes;
+            duration[f] = minutes;
+        }
+        return new FlightNetwork(airports(), flightId, depAirport, arrAirport, depMinute,
+            arrMinute, duration, null);
+    }
+
+    /**
+     * Writes the generated timetable as airport and flight .csv files in the same
+     * format as airports.csv and flights.csv. Flights are written in ID order, so
+     * loading the files numbers them the same way generate() does.
+     * @param airportsFile: the airport .csv file to write
+     * @param flightsFile: the flight .csv file to write
+     * @throws IOException if either file can't be written
+     */
+    public void writeCsv(String airportsFile, String flightsFile) throws IOException {
+        FlightNetwork network = generate();
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(airportsFile), 1 << 16)) {
+            for (Airport a : airports()) {
+                out.write(a.getAcronym() + "," + a.getAirport() + "," + a.getCity() + ","
+                    + a.getState());
+                out.newLine();
+            }
+        }
+        // the network groups flights by airport, so find each ID's place in it
+        int m = network.flightCount();
+        int[] byId = new int[m];
+        for (int f = 0; f < m; f++) {
+            byId[network.flightId(f) - TimetableLoader.FIRST_FLIGHT_ID] = f;
+        }
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(flightsFile), 1 << 16)) {
+            StringBuilder row = new StringBuilder(64);
+            for (int i = 0; i < m; i++) {
+                int f = byId[i];
+                row.setLength(0);
+                row.append(network.acronym(network.departureAirport(f))).append(',')
+                    .append(network.acronym(network.arrivalAirport(f))).append(',')
+                    .append(Flight.formatMinutes(network.departureMinute(f))).append(',')
+                    .append(Flight.formatMinutes(network.arrivalMinute(f))).append(',')
+                    .append(network.duration(f));
+                out.write(row.toString());
+                out.newLine();
+            }
+        }
+    }
+}
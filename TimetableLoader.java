@@ -0,0 +1,520 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the airport and flight .csv files straight into a FlightNetwork. The flight
+ * file is memory mapped and parsed from its bytes: times go directly to minutes and
+ * airport codes are looked up without creating Strings. Large files are split into
+ * chunks on line boundaries and the chunks are parsed in parallel.
+ * @author megangibbons
+ *
+ */
+public class TimetableLoader {
+    // the first flight gets this ID and every following line gets the next one,
+    // the same numbering readFlightsFromCSV uses
+    public static final int FIRST_FLIGHT_ID = 1001;
+
+    private int chunkSize; // target number of bytes in each parallel chunk
+    private LoadReport report; // statistics about the last load
+
+    /**
+     * Statistics about one load
+     */
+    public static class LoadReport {
+        public final int airports; // number of airports loaded
+        public final int flights; // number of flights loaded
+        public final int rejected; // flight rows that were skipped
+        public final int rejectedAirports; // airport rows that were skipped
+        public final List<String> rejectedSamples; // the first few rejected rows and why
+        public final long bytes; // size of the flight file
+        public final long nanos; // time spent loading both files
+
+        /**
+         * Creates a load report
+         * @param airports: number of airports loaded
+         * @param flights: number of flights loaded
+         * @param rejected: number of flight rows that were skipped
+         * @param rejectedAirports: number of airport rows that were skipped
+         * @param rejectedSamples: the first few rejected rows and why
+         * @param bytes: size of the flight file
+         * @param nanos: time spent loading both files
+         */
+        public LoadReport(int airports, int flights, int rejected, int rejectedAirports,
+            List<String> rejectedSamples, long bytes, long nanos) {
+            this.airports = airports;
+            this.flights = flights;
+            this.rejected = rejected;
+            this.rejectedAirports = rejectedAirports;
+            this.rejectedSamples = rejectedSamples;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Gets how many flight rows were read per second
+         * @return rows per second, counting rejected rows
+         */
+        public double rowsPerSecond() {
+            return this.nanos == 0 ? 0 : (this.flights + this.rejected) * 1e9 / this.nanos;
+        }
+
+        /**
+         * Returns a summary of the load
+         * @return the load statistics in a String
+         */
+        @Override
+        public String toString() {
+            String summary = "Loaded " + this.airports + " airports and " + this.flights
+                + " flights in " + (this.nanos / 1_000_000) + " ms ("
+                + Math.round(rowsPerSecond()) + " rows/sec), rejected " + this.rejected
+                + (this.rejectedAirports > 0 ? " flight rows and " + this.rejectedAirports
+                + " airport rows" : " rows");
+            for (String sample : this.rejectedSamples) {
+                summary += "\n  " + sample;
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Creates a loader that splits the flight file into chunks of about 4 MB
+     */
+    public TimetableLoader() {
+        this(4 << 20);
+    }
+
+    /**
+     * Creates a loader
+     * @param chunkSize: target number of bytes in each chunk parsed in parallel
+     */
+    public TimetableLoader(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Gets the statistics of the last load
+     * @return the load report, or null if nothing has been loaded yet
+     */
+    public LoadReport getReport() {
+        return this.report;
+    }
+
+    /**
+     * Loads the airport and flight files into a network. Rows with an unknown
+     * airport or a field that can't be parsed are skipped and counted in the report.
+     * @param airportsFile: the airport .csv file
+     * @param flightsFile: the flight .csv file
+     * @return the loaded network
+     * @throws IOException if either file can't be read
+     */
+    public FlightNetwork load(String airportsFile, String flightsFile) throws IOException {
+        long start = System.nanoTime();
+        List<String> airportRejects = new ArrayList<>();
+        Airport[] airports = readAirports(airportsFile, airportRejects);
+        CodeTable codes = new CodeTable(airports);
+        try (FileChannel channel = FileChannel.open(Paths.get(flightsFile),
+            StandardOpenOption.READ)) {
+            long size = channel.size();
+            // map each chunk separately so files over 2 GB work too
+            List<long[]> bounds = chunkBounds(channel, size);
+            List<Chunk> chunks = IntStream.range(0, bounds.size()).parallel()
+                .mapToObj(i -> parseChunk(channel, bounds.get(i), codes))
+                .collect(Collectors.toList());
+            // stitch the chunks together, numbering the flights by line
+            int total = 0;
+            int rejected = 0;
+            for (Chunk c : chunks) {
+                total += c.count;
+                rejected += c.rejected;
+            }
+            int[] flightId = new int[total];
+            int[] depAirport = new int[total];
+            int[] arrAirport = new int[total];
+            int[] depMinute = new int[total];
+            int[] arrMinute = new int[total];
+            int[] duration = new int[total];
+            // bad airport rows come first in the samples, then bad flight rows
+            List<String> samples = new ArrayList<>(airportRejects.subList(0,
+                Math.min(10, airportRejects.size())));
+            int line = 0;
+            int at = 0;
+            for (Chunk c : chunks) {
+                for (int i = 0; i < c.count; i++) {
+                    flightId[at + i] = FIRST_FLIGHT_ID + line + c.line[i];
+                }
+                System.arraycopy(c.depAirport, 0, depAirport, at, c.count);
+                System.arraycopy(c.arrAirport, 0, arrAirport, at, c.count);
+                System.arraycopy(c.depMinute, 0, depMinute, at, c.count);
+                System.arraycopy(c.arrMinute, 0, arrMinute, at, c.count);
+                System.arraycopy(c.duration, 0, duration, at, c.count);
+                for (int i = 0; i < c.samples.size() && samples.size() < 10; i++) {
+                    samples.add("flights line " + (line + c.sampleLines.get(i) + 1) + ": "
+                        + c.samples.get(i));
+                }
+                at += c.count;
+                line += c.lines;
+            }
+            FlightNetwork network = new FlightNetwork(airports, flightId, depAirport, arrAirport,
+                depMinute, arrMinute, duration, null);
+            this.report = new LoadReport(airports.length, total, rejected, airportRejects.size(),
+                samples, size, System.nanoTime() - start);
+            return network;
+        }
+    }
+
+    /**
+     * Reads the airport file into airport objects sorted by acronym. When an
+     * acronym appears twice the later row wins, like readAirportsFromCSV. Rows
+     * with fewer than four fields are skipped and reported the same way as bad
+     * flight rows.
+     * @param fileName: the airport .csv file
+     * @param rejects: where the line number of each skipped row and why is added
+     * @return the airports in airport id order
+     * @throws IOException if the file can't be read
+     */
+    private static Airport[] readAirports(String fileName, List<String> rejects)
+        throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(fileName));
+        TreeMap<String, Airport> sorted = new TreeMap<>();
+        int pos = 0;
+        int line = 0;
+        while (pos < data.length) {
+            line++;
+            int end = pos;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            int stop = end > pos && data[end - 1] == '\r' ? end - 1 : end;
+            // split the line on its first four commas
+            String[] info = new String[4];
+            int field = 0;
+            int from = pos;
+            for (int i = pos; i <= stop && field < 4; i++) {
+                if (i == stop || data[i] == ',') {
+                    info[field++] = new String(data, from, i - from, StandardCharsets.UTF_8);
+                    from = i + 1;
+                }
+            }
+            if (field == 4) {
+                sorted.put(info[0], new Airport(info[0], info[1], info[2], info[3]));
+            } else {
+                rejects.add("airports line " + line + ": expected 4 fields");
+            }
+            pos = end + 1;
+        }
+        return sorted.values().toArray(new Airport[0]);
+    }
+
+    /**
+     * Splits a file into byte ranges that start at the beginning of a line
+     * @param channel: the open file
+     * @param size: the file size
+     * @return the start and end offset of each chunk
+     * @throws IOException if the file can't be read
+     */
+    private List<long[]> chunkBounds(FileChannel channel, long size) throws IOException {
+        List<long[]> bounds = new ArrayList<>();
+        ByteBuffer one = ByteBuffer.allocate(1);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + this.chunkSize);
+            // move the end forward to just past the next newline
+            while (end < size) {
+                one.clear();
+                channel.read(one, end - 1);
+                if (one.get(0) == '\n') {
+                    break;
+                }
+                end++;
+            }
+            bounds.add(new long[] {start, end});
+            start = end;
+        }
+        return bounds;
+    }
+
+    /**
+     * The flights parsed from one chunk of the file
+     */
+    private static class Chunk {
+        int count; // number of flights parsed
+        int lines; // number of lines in the chunk
+        int rejected; // number of lines that were skipped
+        int[] line = new int[1024]; // line of each flight within the chunk
+        int[] depAirport = new int[1024]; // departure airport id of each flight
+        int[] arrAirport = new int[1024]; // arrival airport id of each flight
+        int[] depMinute = new int[1024]; // departure minute of each flight
+        int[] arrMinute = new int[1024]; // arrival minute of each flight
+        int[] duration = new int[1024]; // flight time of each flight
+        List<String> samples = new ArrayList<>(); // the first few rejected lines
+        List<Integer> sampleLines = new ArrayList<>(); // line of each sample within the chunk
+
+        /**
+         * Adds a parsed flight, growing the arrays when they're full
+         * @param lineInChunk: the flight's line within the chunk
+         * @param dep: departure airport id
+         * @param arr: arrival airport id
+         * @param depMin: departure minute
+         * @param arrMin: arrival minute
+         * @param dur: flight time in minutes
+         */
+        void add(int lineInChunk, int dep, int arr, int depMin, int arrMin, int dur) {
+            if (this.count == this.line.length) {
+                int size = this.count * 2;
+                this.line = Arrays.copyOf(this.line, size);
+                this.depAirport = Arrays.copyOf(this.depAirport, size);
+                this.arrAirport = Arrays.copyOf(this.arrAirport, size);
+                this.depMinute = Arrays.copyOf(this.depMinute, size);
+                this.arrMinute = Arrays.copyOf(this.arrMinute, size);
+                this.duration = Arrays.copyOf(this.duration, size);
+            }
+            this.line[this.count] = lineInChunk;
+            this.depAirport[this.count] = dep;
+            this.arrAirport[this.count] = arr;
+            this.depMinute[this.count] = depMin;
+            this.arrMinute[this.count] = arrMin;
+            this.duration[this.count] = dur;
+            this.count++;
+        }
+
+        /**
+         * Counts a rejected line, keeping the first few for the report
+         * @param lineInChunk: the rejected line within the chunk
+         * @param reason: why the line was rejected
+         */
+        void reject(int lineInChunk, String reason) {
+            this.rejected++;
+            if (this.samples.size() < 10) {
+                this.samples.add(reason);
+                this.sampleLines.add(lineInChunk);
+            }
+        }
+    }
+
+    /**
+     * Parses every line of one chunk of the flight file
+     * @param channel: the open flight file
+     * @param range: the start and end offset of the chunk
+     * @param codes: the airport code lookup table
+     * @return the parsed flights
+     */
+    private static Chunk parseChunk(FileChannel channel, long[] range, CodeTable codes) {
+        Chunk chunk = new Chunk();
+        MappedByteBuffer buf;
+        try {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int limit = buf.limit();
+        int[] comma = new int[4];
+        int pos = 0;
+        while (pos < limit) {
+            int end = pos;
+            int commas = 0;
+            // find the end of the line and its first four commas in one pass
+            while (end < limit) {
+                byte b = buf.get(end);
+                if (b == '\n') {
+                    break;
+                }
+                if (b == ',' && commas < 4) {
+                    comma[commas++] = end;
+                }
+                end++;
+            }
+            int stop = end > pos && buf.get(end - 1) == '\r' ? end - 1 : end;
+            int lineInChunk = chunk.lines++;
+            if (commas < 4) {
+                chunk.reject(lineInChunk, "expected 5 fields");
+            } else {
+                int dep = codes.find(buf, pos, comma[0]);
+                int arr = codes.find(buf, comma[0] + 1, comma[1]);
+                int depMin = parseTime(buf, comma[1] + 1, comma[2]);
+                int arrMin = parseTime(buf, comma[2] + 1, comma[3]);
+                int fieldEnd = comma[3] + 1;
+                while (fieldEnd < stop && buf.get(fieldEnd) != ',') {
+                    fieldEnd++;
+                }
+                int dur = parseInt(buf, comma[3] + 1, fieldEnd);
+                if (dep < 0 || arr < 0) {
+                    chunk.reject(lineInChunk, "unknown airport");
+                } else if (depMin < 0 || arrMin < 0 || dur < 0) {
+                    chunk.reject(lineInChunk, "invalid time or duration");
+                } else {
+                    // an arrival earlier than the departure lands the next day
+                    if (arrMin < depMin) {
+                        arrMin += 24 * 60;
+                    }
+                    chunk.add(lineInChunk, dep, arr, depMin, arrMin, dur);
+                }
+            }
+            pos = end + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses a "H:MM" or "H:MM+1" time straight into minutes after midnight
+     * @param buf: the file bytes
+     * @param from: the first byte of the field
+     * @param to: one past the last byte of the field
+     * @return the minutes after midnight, or -1 if the field isn't a time
+     */
+    private static int parseTime(ByteBuffer buf, int from, int to) {
+        // a "+1" suffix is a time on the next day, as Flight.formatMinutes writes it
+        int end = to;
+        int days = 0;
+        for (int j = from; j < to; j++) {
+            if (buf.get(j) == '+') {
+                days = parseInt(buf, j + 1, to);
+                end = j;
+                break;
+            }
+        }
+        int hour = 0;
+        int i = from;
+        while (i < end && buf.get(i) != ':') {
+            int d = buf.get(i++) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            hour = hour * 10 + d;
+        }
+        int minute = parseInt(buf, i + 1, end);
+        if (i == from || i == end || minute < 0 || minute > 59 || days < 0) {
+            return -1;
+        }
+        return (days * 24 + hour) * 60 + minute;
+    }
+
+    /**
+     * Parses a non-negative integer straight from bytes
+     * @param buf: the file bytes
+     * @param from: the first byte of the field
+     * @param to: one past the last byte of the field
+     * @return the number, or -1 if the field isn't a number
+     */
+    private static int parseInt(ByteBuffer buf, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9 || value > (Integer.MAX_VALUE - d) / 10) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Looks up airport ids from the bytes of their acronym. Acronyms of up to seven
+     * bytes are packed into a long and found in an open addressing table, so no
+     * Strings are created; longer ones fall back to a HashMap.
+     */
+    private static class CodeTable {
+        private final long[] keys; // packed acronym in each slot, or 0 if empty
+        private final int[] ids; // airport id in each slot
+        private final HashMap<String, Integer> longCodes = new HashMap<>(); // acronyms too long to pack
+
+        /**
+         * Creates the table for a set of airports
+         * @param airports: the airports in airport id order
+         */
+        CodeTable(Airport[] airports) {
+            int slots = Integer.highestOneBit(Math.max(1, airports.length) * 4);
+            this.keys = new long[slots];
+            this.ids = new int[slots];
+            for (int a = 0; a < airports.length; a++) {
+                byte[] code = airports[a].getAcronym().getBytes(StandardCharsets.UTF_8);
+                if (code.length > 7) {
+                    this.longCodes.put(airports[a].getAcronym(), a);
+                    continue;
+                }
+                long key = pack(ByteBuffer.wrap(code), 0, code.length);
+                int slot = slot(key);
+                while (this.keys[slot] != 0 && this.keys[slot] != key) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                this.keys[slot] = key;
+                this.ids[slot] = a;
+            }
+        }
+
+        /**
+         * Finds the airport id of the acronym between two offsets
+         * @param buf: the file bytes
+         * @param from: the first byte of the acronym
+         * @param to: one past the last byte of the acronym
+         * @return the airport id, or -1 if there is no such airport
+         */
+        int find(ByteBuffer buf, int from, int to) {
+            int length = to - from;
+            if (length <= 0) {
+                return -1;
+            }
+            if (length > 7) {
+                byte[] code = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    code[i] = buf.get(from + i);
+                }
+                Integer id = this.longCodes.get(new String(code, StandardCharsets.UTF_8));
+                return id == null ? -1 : id;
+            }
+            long key = pack(buf, from, to);
+            int slot = slot(key);
+            while (this.keys[slot] != 0) {
+                if (this.keys[slot] == key) {
+                    return this.ids[slot];
+                }
+                slot = (slot + 1) & (this.keys.length - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * Packs up to seven bytes and their count into a long
+         * @param buf: the bytes
+         * @param from: the first byte to pack
+         * @param to: one past the last byte to pack
+         * @return the packed key, which is never 0
+         */
+        private static long pack(ByteBuffer buf, int from, int to) {
+            long key = to - from;
+            for (int i = from; i < to; i++) {
+                key = (key << 8) | (buf.get(i) & 0xFF);
+            }
+            return key;
+        }
+
+        /**
+         * Picks the starting slot of a packed acronym
+         * @param key: the packed acronym
+         * @return the slot to start probing from
+         */
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & (this.keys.length - 1);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A batch of live changes to the timetable: delayed flights, cancelled flights and
+ * added flights. Applying a batch never changes the network it's applied to; it
+ * makes a new network, so searches that are already running finish on the old
+ * timetable while new searches see the new one. Only the departure ranges of the
+ * airports a batch touches are rebuilt, and every other airport's range is copied
+ * over unchanged.
+ * @author megangibbons
+ *
+ */
+public class TimetableUpdate {
+    private final HashMap<Integer, Integer> delays = new HashMap<>(); // minutes late by flight ID
+    private final HashSet<Integer> cancelled = new HashSet<>(); // IDs of cancelled flights
+    private final ArrayList<AddedFlight> added = new ArrayList<>(); // flights to add
+
+    /**
+     * A flight added by an update
+     * @author megangibbons
+     *
+     */
+    public static final class AddedFlight {
+        public final int flightId; // the flight's ID from the timetable
+        public final String departure; // acronym of the departure airport
+        public final String arrival; // acronym of the arrival airport
+        public final int departureMinute; // departure time in minutes after midnight
+        public final int arrivalMinute; // arrival time in minutes after midnight
+        public final int duration; // flight time in minutes
+
+        /**
+         * Creates a flight to add
+         * @param flightId: the flight's ID
+         * @param departure: acronym of the departure airport
+         * @param arrival: acronym of the arrival airport
+         * @param departureMinute: departure time in minutes after midnight
+         * @param arrivalMinute: arrival time in minutes after midnight
+         * @param duration: flight time in minutes
+         */
+        private AddedFlight(int flightId, String departure, String arrival, int departureMinute,
+            int arrivalMinute, int duration) {
+            this.flightId = flightId;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.departureMinute = departureMinute;
+            this.arrivalMinute = arrivalMinute;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * Delays a flight. Delays of the same flight add up, and a negative delay
+     * moves the flight earlier.
+     * @param flightId: the flight's ID
+     * @param minutes: how many minutes later the flight leaves and lands
+     * @return this update, so changes can be chained
+     */
+    public TimetableUpdate delay(int flightId, int minutes) {
+        this.delays.merge(flightId, minutes, Integer::sum);
+        return this;
+    }
+
+    /**
+     * Cancels a flight
+     * @param flightId: the flight's ID
+     * @return this update, so changes can be chained
+     */
+    public TimetableUpdate cancel(int flightId) {
+        this.cancelled.add(flightId);
+        return this;
+    }
+
+    /**
+     * Adds a flight
+     * @param flightId: the new flight's ID, which can't be taken by another flight
+     * @param departure: acronym of the departure airport
+     * @param arrival: acronym of the arrival airport
+     * @param departureMinute: departure time in minutes after midnight
+     * @param arrivalMinute: arrival time in minutes after midnight
+     * @param duration: flight time in minutes
+     * @return this update, so changes can be chained
+     */
+    public TimetableUpdate add(int flightId, String departure, String arrival,
+        int departureMinute, int arrivalMinute, int duration) {
+        if (departure == null || arrival == null || departureMinute < 0
+            || arrivalMinute < departureMinute || duration < 0) {
+            throw new IllegalArgumentException("Invalid flight " + flightId);
+        }
+        this.added.add(new AddedFlight(flightId, departure, arrival, departureMinute,
+            arrivalMinute, duration));
+        return this;
+    }
+
+    /**
+     * Gets the delay of a flight
+     * @param flightId: the flight's ID
+     * @return the total delay in minutes, 0 if the flight isn't delayed
+     */
+    public int delayOf(int flightId) {
+        return this.delays.getOrDefault(flightId, 0);
+    }
+
+    /**
+     * Checks whether a flight is cancelled
+     * @param flightId: the flight's ID
+     * @return true if the update cancels the flight
+     */
+    public boolean isCancelled(int flightId) {
+        return this.cancelled.contains(flightId);
+    }
+
+    /**
+     * Checks whether the update delays or cancels a flight
+     * @param flightId: the flight's ID
+     * @return true if the flight is changed
+     */
+    public boolean changes(int flightId) {
+        return this.delays.containsKey(flightId) || this.cancelled.contains(flightId);
+    }
+
+    /**
+     * Gets the IDs of every delayed or cancelled flight
+     * @return the flight IDs
+     */
+    public HashSet<Integer> changedFlights() {
+        HashSet<Integer> ids = new HashSet<>(this.delays.keySet());
+        ids.addAll(this.cancelled);
+        return ids;
+    }
+
+    /**
+     * Gets the flights the update adds
+     * @return the added flights, in the order they were added
+     */
+    public List<AddedFlight> addedFlights() {
+        return Collections.unmodifiableList(this.added);
+    }
+
+    /**
+     * Gets the number of changes in the batch
+     * @return the number of delayed, cancelled and added flights
+     */
+    public int size() {
+        return changedFlights().size() + this.added.size();
+    }
+
+    /**
+     * Applies the batch to a network
+     * @param network: the network to start from, which isn't changed
+     * @return the new network
+     * @throws IllegalArgumentException if the batch refers to an unknown flight or
+     *         airport, adds a flight ID that's taken, or delays a flight before
+     *         midnight; the network is then left as it was
+     */
+    public FlightNetwork applyTo(FlightNetwork network) {
+        return network.withUpdate(this);
+    }
+}
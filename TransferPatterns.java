@@ -0,0 +1,473 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Precomputed transfer patterns: for every origin, the sequences of airports that
+ * some earliest arrival itinerary from that origin follows. An earliest arrival
+ * query then doesn't search at all; it takes the few patterns that end at the
+ * destination and follows each one with direct flight lookups, which are binary
+ * searches. Departing at or after any time gives the same answer as departing at
+ * the origin's next departure, so one one-to-all search per distinct departure
+ * time finds every pattern that can ever be needed and the answers are exact.
+ *
+ * The patterns of an origin are stored as a prefix tree of airports rooted at the
+ * origin, so patterns that share a start share nodes. Node 0 is the origin, and
+ * every node's parent comes before it.
+ *
+ * File layout, little endian:
+ * magic "FFGTPAT1", int version, long network fingerprint, int airport count,
+ * then for each origin the int node count, the node airports, the node parents,
+ * the n + 1 target offsets and the pattern end nodes, then an int checksum of
+ * everything before it.
+ * @author megangibbons
+ *
+ */
+public class TransferPatterns {
+    // format version, raised whenever the layout changes
+    public static final int VERSION = 1;
+    // identifies transfer pattern files
+    private static final byte[] MAGIC = "FFGTPAT1".getBytes(StandardCharsets.US_ASCII);
+
+    private final FlightNetwork network; // the network the patterns were computed for
+    private final DirectConnections direct; // direct flight lookups for evaluating patterns
+    private final int[][] nodeAirport; // airport of each prefix tree node, per origin
+    private final int[][] nodeParent; // parent of each prefix tree node, per origin
+    private final int[][] targetStart; // first pattern of each target, per origin
+    private final int[][] targetNodes; // last node of each pattern grouped by target
+
+    /**
+     * Computes the patterns of every origin using every available core
+     * @param network: the network to precompute
+     */
+    public TransferPatterns(FlightNetwork network) {
+        this(network, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the patterns of every origin on the given pool
+     * @param network: the network to precompute
+     * @param pool: the pool whose threads run the searches
+     */
+    public TransferPatterns(FlightNetwork network, ForkJoinPool pool) {
+        int n = network.airportCount();
+        this.network = network;
+        this.direct = new DirectConnections(network);
+        this.nodeAirport = new int[n][];
+        this.nodeParent = new int[n][];
+        this.targetStart = new int[n][];
+        this.targetNodes = new int[n][];
+        EarliestArrivalSearch search = new EarliestArrivalSearch(network);
+        // each origin fills only its own rows, so the rows need no locking
+        Runnable all = () -> IntStream.range(0, n).parallel()
+            .forEach(origin -> computeOrigin(search, origin));
+        try {
+            pool.submit(all).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing the patterns", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Computing the patterns failed", e.getCause());
+        }
+    }
+
+    /**
+     * Creates the patterns from arrays read back from a file
+     * @param network: the network the patterns were computed for
+     * @param nodeAirport: airport of each prefix tree node, per origin
+     * @param nodeParent: parent of each prefix tree node, per origin
+     * @param targetStart: first pattern of each target, per origin
+     * @param targetNodes: last node of each pattern grouped by target
+     */
+    private TransferPatterns(FlightNetwork network, int[][] nodeAirport, int[][] nodeParent,
+        int[][] targetStart, int[][] targetNodes) {
+        this.network = network;
+        this.direct = new DirectConnections(network);
+        this.nodeAirport = nodeAirport;
+        this.nodeParent = nodeParent;
+        this.targetStart = targetStart;
+        this.targetNodes = targetNodes;
+    }
+
+    /**
+     * Gets the network the patterns were computed for
+     * @return the network
+     */
+    public FlightNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Gets the total number of patterns over every origin and destination
+     * @return the number of patterns
+     */
+    public long patternCount() {
+        long count = 0;
+        for (int[] nodes : this.targetNodes) {
+            count += nodes.length;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total number of prefix tree nodes over every origin
+     * @return the number of nodes
+     */
+    public long nodeCount() {
+        long count = 0;
+        for (int[] nodes : this.nodeAirport) {
+            count += nodes.length;
+        }
+        return count;
+    }
+
+    /**
+     * Finds the earliest arrival minute at an airport by following its patterns
+     * @param origin: the departure airport id
+     * @param target: the arrival airport id
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the arrival minute, or -1 if the target can't be reached
+     */
+    public int earliestArrivalMinute(int origin, int target, int departAfter) {
+        int best = -1;
+        int[] ends = this.targetNodes[origin];
+        for (int i = this.targetStart[origin][target]; i < this.targetStart[origin][target + 1];
+            i++) {
+            int arrival = arrivalAt(origin, ends[i], departAfter);
+            if (arrival >= 0 && (best < 0 || arrival < best)) {
+                best = arrival;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the path that reaches the arrival airport as early as possible when
+     * leaving the departure airport no earlier than the given time
+     * @param start: the acronym for the departure airport
+     * @param end: the acronym for the arrival airport
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the earliest arriving path, or null if there isn't one
+     */
+    public Path earliestArrival(String start, String end, int departAfter) {
+        int origin = this.network.airportId(start);
+        int target = this.network.airportId(end);
+        if (origin < 0 || target < 0 || origin == target) {
+            return null;
+        }
+        int best = -1;
+        int bestNode = -1;
+        int[] ends = this.targetNodes[origin];
+        for (int i = this.targetStart[origin][target]; i < this.targetStart[origin][target + 1];
+            i++) {
+            int arrival = arrivalAt(origin, ends[i], departAfter);
+            if (arrival >= 0 && (best < 0 || arrival < best)) {
+                best = arrival;
+                bestNode = ends[i];
+            }
+        }
+        return bestNode < 0 ? null : pathTo(origin, bestNode, departAfter);
+    }
+
+    /**
+     * Writes the patterns to a file
+     * @param fileName: the file to write
+     * @throws IOException if the file can't be written
+     */
+    public void write(String fileName) throws IOException {
+        int n = this.network.airportCount();
+        long ints = 0;
+        for (int a = 0; a < n; a++) {
+            ints += 1 + 2L * this.nodeAirport[a].length + (n + 1) + this.targetNodes[a].length;
+        }
+        long size = MAGIC.length + 4 + 8 + 4 + 4 * ints + 4;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Too many patterns for one file");
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(fingerprint(this.network));
+        buf.putInt(n);
+        IntBuffer out = buf.asIntBuffer();
+        for (int a = 0; a < n; a++) {
+            out.put(this.nodeAirport[a].length);
+            out.put(this.nodeAirport[a]);
+            out.put(this.nodeParent[a]);
+            out.put(this.targetStart[a]);
+            out.put(this.targetNodes[a]);
+        }
+        buf.position(buf.position() + out.position() * 4);
+        // finish with a checksum of the whole file so a torn write isn't trusted
+        CRC32C crc = new CRC32C();
+        crc.update(buf.duplicate().flip());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        // write to a temporary file first so readers never see half a file
+        java.nio.file.Path target = Paths.get(fileName);
+        java.nio.file.Path temp = Paths.get(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads patterns back from a file
+     * @param fileName: the file to read
+     * @param network: the network the patterns should belong to
+     * @return the patterns, or null if the file is missing, from another version,
+     *         damaged, or computed for a different network
+     * @throws IOException if the file exists but can't be read
+     */
+    public static TransferPatterns read(String fileName, FlightNetwork network)
+        throws IOException {
+        if (!Files.isRegularFile(Paths.get(fileName))) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+            StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAGIC.length + 20 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buf.getInt() != VERSION
+                || buf.getLong() != fingerprint(network)
+                || buf.getInt() != network.airportCount()) {
+                return null;
+            }
+            // check the trailing checksum before trusting any of the counts
+            CRC32C crc = new CRC32C();
+            crc.update(buf.duplicate().position(0).limit((int) size - 4));
+            if ((int) crc.getValue() != buf.getInt((int) size - 4)) {
+                return null;
+            }
+            int n = network.airportCount();
+            int[][] nodeAirport = new int[n][];
+            int[][] nodeParent = new int[n][];
+            int[][] targetStart = new int[n][];
+            int[][] targetNodes = new int[n][];
+            IntBuffer in = buf.asIntBuffer();
+            for (int a = 0; a < n; a++) {
+                int nodes = in.get();
+                nodeAirport[a] = new int[nodes];
+                nodeParent[a] = new int[nodes];
+                targetStart[a] = new int[n + 1];
+                in.get(nodeAirport[a]);
+                in.get(nodeParent[a]);
+                in.get(targetStart[a]);
+                targetNodes[a] = new int[targetStart[a][n]];
+                in.get(targetNodes[a]);
+            }
+            return new TransferPatterns(network, nodeAirport, nodeParent, targetStart,
+                targetNodes);
+        }
+    }
+
+    /**
+     * Loads the patterns from a file when they match the network, and otherwise
+     * computes them and saves them for next time
+     * @param network: the network the patterns are for
+     * @param fileName: the file to use
+     * @return the patterns
+     * @throws IOException if the file exists but can't be read
+     */
+    public static TransferPatterns loadOrCompute(FlightNetwork network, String fileName)
+        throws IOException {
+        long start = System.nanoTime();
+        TransferPatterns patterns = read(fileName, network);
+        if (patterns == null) {
+            patterns = new TransferPatterns(network);
+            try {
+                patterns.write(fileName);
+            } catch (IOException e) {
+                // the file only speeds up the next start, so carry on without it
+                System.out.println("Could not write " + fileName + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Loaded " + patterns.patternCount() + " transfer patterns in "
+            + ((System.nanoTime() - start) / 1_000_000) + " ms");
+        return patterns;
+    }
+
+    /**
+     * Finds every pattern of one origin with a one-to-all search at each distinct
+     * departure time, and stores them as the origin's prefix tree
+     * @param search: the engine to run the searches with
+     * @param origin: the departure airport id
+     */
+    private void computeOrigin(EarliestArrivalSearch search, int origin) {
+        int n = this.network.airportCount();
+        int[] airport = new int[16];
+        int[] parent = new int[16];
+        boolean[] isEnd = new boolean[16];
+        airport[0] = origin;
+        parent[0] = -1;
+        int nodes = 1;
+        // the child of each node for each airport, keyed by node * n + airport
+        HashMap<Long, Integer> children = new HashMap<>();
+        int[] nodeOf = new int[n]; // prefix tree node of each airport in this search
+        int[] stack = new int[n];
+        int lastDeparture = -1;
+        for (int f = this.network.firstFlightFrom(origin); f < this.network.endFlightFrom(origin);
+            f++) {
+            int departAfter = this.network.departureMinute(f);
+            if (departAfter == lastDeparture) {
+                continue;
+            }
+            lastDeparture = departAfter;
+            SearchWorkspace ws = SearchWorkspace.get(n);
+            search.search(origin, -1, departAfter, ws);
+            Arrays.fill(nodeOf, -1);
+            nodeOf[origin] = 0;
+            for (int t = 0; t < n; t++) {
+                if (ws.previous(t) < 0) {
+                    continue;
+                }
+                // climb the search tree to the closest airport with a node already,
+                // then add nodes for the airports on the way back down
+                int depth = 0;
+                int a = t;
+                while (nodeOf[a] < 0) {
+                    stack[depth++] = a;
+                    a = this.network.departureAirport(ws.previous(a));
+                }
+                while (depth > 0) {
+                    int child = stack[--depth];
+                    long key = (long) nodeOf[a] * n + child;
+                    Integer node = children.get(key);
+                    if (node == null) {
+                        if (nodes == airport.length) {
+                            airport = Arrays.copyOf(airport, nodes * 2);
+                            parent = Arrays.copyOf(parent, nodes * 2);
+                            isEnd = Arrays.copyOf(isEnd, nodes * 2);
+                        }
+                        airport[nodes] = child;
+                        parent[nodes] = nodeOf[a];
+                        node = nodes++;
+                        children.put(key, node);
+                    }
+                    nodeOf[child] = node;
+                    a = child;
+                }
+                isEnd[nodeOf[t]] = true;
+            }
+        }
+        // group the pattern ends by their last airport
+        int[] starts = new int[n + 1];
+        for (int node = 1; node < nodes; node++) {
+            if (isEnd[node]) {
+                starts[airport[node] + 1]++;
+            }
+        }
+        for (int a = 0; a < n; a++) {
+            starts[a + 1] += starts[a];
+        }
+        int[] ends = new int[starts[n]];
+        int[] fill = Arrays.copyOf(starts, n);
+        for (int node = 1; node < nodes; node++) {
+            if (isEnd[node]) {
+                ends[fill[airport[node]]++] = node;
+            }
+        }
+        this.nodeAirport[origin] = Arrays.copyOf(airport, nodes);
+        this.nodeParent[origin] = Arrays.copyOf(parent, nodes);
+        this.targetStart[origin] = starts;
+        this.targetNodes[origin] = ends;
+    }
+
+    /**
+     * Follows a pattern from the origin, taking the earliest arriving direct flight
+     * on each leg
+     * @param origin: the departure airport id
+     * @param node: the prefix tree node the pattern ends at
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the arrival minute at the node's airport, or -1 if a leg has no flight
+     */
+    private int arrivalAt(int origin, int node, int departAfter) {
+        int f = flightTo(origin, node, departAfter);
+        return f < 0 ? -1 : this.network.arrivalMinute(f);
+    }
+
+    /**
+     * Finds the flight a pattern arrives on at one of its nodes
+     * @param origin: the departure airport id
+     * @param node: the prefix tree node
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the flight index, or -1 if some leg up to the node has no flight
+     */
+    private int flightTo(int origin, int node, int departAfter) {
+        int up = this.nodeParent[origin][node];
+        int ready = departAfter;
+        // the first flight may leave at the requested time, connecting flights
+        // need the minimum connection time after landing
+        if (up > 0) {
+            int before = flightTo(origin, up, departAfter);
+            if (before < 0) {
+                return -1;
+            }
+            ready = this.network.arrivalMinute(before) + FlightNetwork.MIN_CONNECTION_MINUTES;
+        }
+        return this.direct.earliestFlight(this.nodeAirport[origin][up],
+            this.nodeAirport[origin][node], ready);
+    }
+
+    /**
+     * Builds the path that follows a pattern from the origin
+     * @param origin: the departure airport id
+     * @param node: the prefix tree node the pattern ends at
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the path
+     */
+    private Path pathTo(int origin, int node, int departAfter) {
+        int up = this.nodeParent[origin][node];
+        if (up == 0) {
+            return new Path(this.network.flight(flightTo(origin, node, departAfter)));
+        }
+        return new Path(pathTo(origin, up, departAfter),
+            this.network.flight(flightTo(origin, node, departAfter)));
+    }
+
+    /**
+     * Computes a fingerprint of a network's airports and flights, so patterns are
+     * never used with a timetable they weren't computed for
+     * @param network: the network
+     * @return the fingerprint
+     */
+    private static long fingerprint(FlightNetwork network) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        for (int a = 0; a < network.airportCount(); a++) {
+            crc.update(network.acronym(a).getBytes(StandardCharsets.UTF_8));
+        }
+        for (int f = 0; f < network.flightCount(); f++) {
+            buf.clear();
+            buf.putInt(network.departureAirport(f)).putInt(network.arrivalAirport(f))
+                .putInt(network.departureMinute(f)).putInt(network.arrivalMinute(f));
+            crc.update(buf.flip());
+        }
+        return ((long) network.flightCount() << 32) | crc.getValue();
+    }
+}
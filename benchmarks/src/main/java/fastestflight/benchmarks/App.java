@@ -0,0 +1,233 @@
+package fastestflight.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls into the application. Its classes are in the default package, which a
+ * named package like this one can't import, so they're reached through method
+ * handles looked up once. The handles are static final, so the JIT compiles each
+ * call down to a direct call and the benchmarks measure the application, not the
+ * bridge, which BridgeBenchmark checks. Primitive arguments stay primitive so the
+ * bridge doesn't allocate.
+ * @author megangibbons
+ *
+ */
+final class App {
+    private static final MethodHandle NEW_GENERATOR; // new TimetableGenerator(seed, airports, flights)
+    private static final MethodHandle GENERATE; // TimetableGenerator.generate()
+    private static final MethodHandle WRITE_CSV; // TimetableGenerator.writeCsv(airports, flights)
+    private static final MethodHandle ACRONYM; // TimetableGenerator.acronym(airport)
+    private static final MethodHandle NEW_LOADER; // new TimetableLoader()
+    private static final MethodHandle LOAD; // TimetableLoader.load(airports, flights)
+    private static final MethodHandle WRITE_SNAPSHOT; // NetworkSnapshot.write(network, checksum, file)
+    private static final MethodHandle READ_SNAPSHOT; // NetworkSnapshot.read(file, checksum)
+    private static final MethodHandle NEW_SEARCH; // new EarliestArrivalSearch(network)
+    private static final MethodHandle FASTEST_FLIGHT; // EarliestArrivalSearch.fastestFlight(from, to)
+    private static final MethodHandle EARLIEST_ARRIVAL; // EarliestArrivalSearch.earliestArrival(from, to, minute)
+    private static final MethodHandle READ_AIRPORTS; // ShortestFlightPath.readAirportsFromCSV(file)
+    private static final MethodHandle READ_FLIGHTS; // ShortestFlightPath.readFlightsFromCSV(file)
+    private static final MethodHandle SHORTEST_FLIGHT; // ShortestFlightPath.shortestFlight(from, to)
+    private static final MethodHandle LOAD_TIMETABLE; // ShortestFlightPath.loadTimetable(airports, flights, snapshot)
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> generator = Class.forName("TimetableGenerator");
+            Class<?> network = Class.forName("FlightNetwork");
+            Class<?> loader = Class.forName("TimetableLoader");
+            Class<?> snapshot = Class.forName("NetworkSnapshot");
+            Class<?> search = Class.forName("EarliestArrivalSearch");
+            Class<?> path = Class.forName("Path");
+            Class<?> legacy = Class.forName("ShortestFlightPath");
+            NEW_GENERATOR = lookup.findConstructor(generator,
+                MethodType.methodType(void.class, long.class, int.class, int.class))
+                .asType(MethodType.methodType(Object.class, long.class, int.class, int.class));
+            GENERATE = lookup.findVirtual(generator, "generate", MethodType.methodType(network))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            WRITE_CSV = lookup.findVirtual(generator, "writeCsv",
+                MethodType.methodType(void.class, String.class, String.class))
+                .asType(MethodType.methodType(void.class, Object.class, String.class, String.class));
+            ACRONYM = lookup.findStatic(generator, "acronym",
+                MethodType.methodType(String.class, int.class));
+            NEW_LOADER = lookup.findConstructor(loader, MethodType.methodType(void.class))
+                .asType(MethodType.methodType(Object.class));
+            LOAD = lookup.findVirtual(loader, "load",
+                MethodType.methodType(network, String.class, String.class))
+                .asType(MethodType.methodType(Object.class, Object.class, String.class,
+                    String.class));
+            WRITE_SNAPSHOT = lookup.findStatic(snapshot, "write",
+                MethodType.methodType(void.class, network, long.class, String.class))
+                .asType(MethodType.methodType(void.class, Object.class, long.class, String.class));
+            READ_SNAPSHOT = lookup.findStatic(snapshot, "read",
+                MethodType.methodType(network, String.class, long.class))
+                .asType(MethodType.methodType(Object.class, String.class, long.class));
+            NEW_SEARCH = lookup.findConstructor(search, MethodType.methodType(void.class, network))
+                .asType(MethodType.methodType(Object.class, Object.class));
+            FASTEST_FLIGHT = lookup.findVirtual(search, "fastestFlight",
+                MethodType.methodType(path, String.class, String.class))
+                .asType(MethodType.methodType(Object.class, Object.class, String.class,
+                    String.class));
+            EARLIEST_ARRIVAL = lookup.findVirtual(search, "earliestArrival",
+                MethodType.methodType(path, String.class, String.class, int.class))
+                .asType(MethodType.methodType(Object.class, Object.class, String.class,
+                    String.class, int.class));
+            READ_AIRPORTS = lookup.findStatic(legacy, "readAirportsFromCSV",
+                MethodType.methodType(void.class, String.class));
+            READ_FLIGHTS = lookup.findStatic(legacy, "readFlightsFromCSV",
+                MethodType.methodType(void.class, String.class));
+            SHORTEST_FLIGHT = lookup.findStatic(legacy, "shortestFlight",
+                MethodType.methodType(path, String.class, String.class))
+                .asType(MethodType.methodType(Object.class, String.class, String.class));
+            LOAD_TIMETABLE = lookup.findStatic(legacy, "loadTimetable",
+                MethodType.methodType(void.class, String.class, String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Not used; the bridge only has static methods
+     */
+    private App() {
+    }
+
+    /**
+     * Creates a timetable generator
+     * @param seed: seed of the random number generator
+     * @param airports: number of airports to generate
+     * @param flights: number of flights to generate
+     * @return the TimetableGenerator
+     */
+    static Object generator(long seed, int airports, int flights) throws Throwable {
+        return (Object) NEW_GENERATOR.invokeExact(seed, airports, flights);
+    }
+
+    /**
+     * Generates a timetable
+     * @param generator: the TimetableGenerator
+     * @return the FlightNetwork
+     */
+    static Object generate(Object generator) throws Throwable {
+        return (Object) GENERATE.invokeExact(generator);
+    }
+
+    /**
+     * Writes a generated timetable as .csv files
+     * @param generator: the TimetableGenerator
+     * @param airportsFile: the airport .csv file to write
+     * @param flightsFile: the flight .csv file to write
+     */
+    static void writeCsv(Object generator, String airportsFile, String flightsFile)
+        throws Throwable {
+        WRITE_CSV.invokeExact(generator, airportsFile, flightsFile);
+    }
+
+    /**
+     * Gets the acronym of a generated airport
+     * @param airport: the airport number
+     * @return the acronym
+     */
+    static String acronym(int airport) throws Throwable {
+        return (String) ACRONYM.invokeExact(airport);
+    }
+
+    /**
+     * Loads .csv files with the bulk loader
+     * @param airportsFile: the airport .csv file
+     * @param flightsFile: the flight .csv file
+     * @return the FlightNetwork
+     */
+    static Object load(String airportsFile, String flightsFile) throws Throwable {
+        Object loader = (Object) NEW_LOADER.invokeExact();
+        return (Object) LOAD.invokeExact(loader, airportsFile, flightsFile);
+    }
+
+    /**
+     * Writes a network snapshot
+     * @param network: the FlightNetwork
+     * @param checksum: the checksum to store with the snapshot
+     * @param snapshotFile: the snapshot file to write
+     */
+    static void writeSnapshot(Object network, long checksum, String snapshotFile)
+        throws Throwable {
+        WRITE_SNAPSHOT.invokeExact(network, checksum, snapshotFile);
+    }
+
+    /**
+     * Reads a network snapshot
+     * @param snapshotFile: the snapshot file
+     * @param checksum: the checksum the snapshot must have been written with
+     * @return the FlightNetwork, or null if the snapshot doesn't match
+     */
+    static Object readSnapshot(String snapshotFile, long checksum) throws Throwable {
+        return (Object) READ_SNAPSHOT.invokeExact(snapshotFile, checksum);
+    }
+
+    /**
+     * Creates a search engine
+     * @param network: the FlightNetwork to search
+     * @return the EarliestArrivalSearch
+     */
+    static Object search(Object network) throws Throwable {
+        return (Object) NEW_SEARCH.invokeExact(network);
+    }
+
+    /**
+     * Finds the fastest path over the whole day
+     * @param search: the EarliestArrivalSearch
+     * @param from: the departure airport's acronym
+     * @param to: the arrival airport's acronym
+     * @return the Path, or null if there isn't one
+     */
+    static Object fastestFlight(Object search, String from, String to) throws Throwable {
+        return (Object) FASTEST_FLIGHT.invokeExact(search, from, to);
+    }
+
+    /**
+     * Finds the earliest arriving path
+     * @param search: the EarliestArrivalSearch
+     * @param from: the departure airport's acronym
+     * @param to: the arrival airport's acronym
+     * @param departAfter: the earliest departure time in minutes after midnight
+     * @return the Path, or null if there isn't one
+     */
+    static Object earliestArrival(Object search, String from, String to, int departAfter)
+        throws Throwable {
+        return (Object) EARLIEST_ARRIVAL.invokeExact(search, from, to, departAfter);
+    }
+
+    /**
+     * Loads .csv files into ShortestFlightPath's tables with its original readers
+     * @param airportsFile: the airport .csv file
+     * @param flightsFile: the flight .csv file
+     */
+    static void readCsv(String airportsFile, String flightsFile) throws Throwable {
+        READ_AIRPORTS.invokeExact(airportsFile);
+        READ_FLIGHTS.invokeExact(flightsFile);
+    }
+
+    /**
+     * Finds the fastest path with ShortestFlightPath's original search over the
+     * tables loaded by readCsv
+     * @param from: the departure airport's acronym
+     * @param to: the arrival airport's acronym
+     * @return the Path, or null if there isn't one
+     */
+    static Object shortestFlight(String from, String to) throws Throwable {
+        return (Object) SHORTEST_FLIGHT.invokeExact(from, to);
+    }
+
+    /**
+     * Loads a timetable into ShortestFlightPath's tables the way the program does at
+     * startup, from the snapshot if it matches and otherwise from the .csv files
+     * @param airportsFile: the airport .csv file
+     * @param flightsFile: the flight .csv file
+     * @param snapshotFile: the snapshot file to use
+     */
+    static void loadTimetable(String airportsFile, String flightsFile, String snapshotFile)
+        throws Throwable {
+        LOAD_TIMETABLE.invokeExact(airportsFile, flightsFile, snapshotFile);
+    }
+}
@@ -0,0 +1,73 @@
+package fastestflight.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what App's method handles cost on top of a plain call, by calling the
+ * same small method both ways. The handle is static final like App's, so the two
+ * should take the same time; if they don't, every other benchmark is off by the
+ * difference.
+ * @author megangibbons
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgeBenchmark {
+    private static final MethodHandle MIX; // BridgeBenchmark.mix(value), looked up like App's
+
+    static {
+        try {
+            MIX = MethodHandles.lookup().findStatic(BridgeBenchmark.class, "mix",
+                MethodType.methodType(long.class, long.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private long value = 42; // the argument, a field so the JIT can't fold the call away
+
+    /**
+     * Calls the method directly
+     * @return the mixed value
+     */
+    @Benchmark
+    public long direct() {
+        return mix(this.value);
+    }
+
+    /**
+     * Calls the method through a static final handle, the way App calls the application
+     * @return the mixed value
+     */
+    @Benchmark
+    public long throughHandle() throws Throwable {
+        return (long) MIX.invokeExact(this.value);
+    }
+
+    /**
+     * Scrambles a number, enough work that the call can't be skipped
+     * @param value: the number to scramble
+     * @return the scrambled number
+     */
+    static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,131 @@
+package fastestflight.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to load a generated timetable: with the original
+ * line-by-line readers, with the bulk loader, and from a binary snapshot, each
+ * alone and as part of the program's whole startup. The timetable is written to a
+ * temporary directory once per parameter combination.
+ * @author megangibbons
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LoadBenchmark {
+    @Param({"100", "1000"})
+    public int airports; // number of generated airports
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int flights; // number of generated flights
+
+    private Path directory; // where the generated files are written
+    private String airportsFile; // the generated airport .csv file
+    private String flightsFile; // the generated flight .csv file
+    private String snapshotFile; // the snapshot of the generated network
+    private String importSnapshotFile; // snapshot written by startupFromCsv, deleted before each call
+    private String startupSnapshotFile; // snapshot of the .csv files, read by startupFromSnapshot
+
+    /**
+     * Writes the generated timetable as .csv files and as a snapshot
+     */
+    @Setup(Level.Trial)
+    public void writeTimetable() throws Throwable {
+        this.directory = Files.createTempDirectory("ffg-load");
+        this.airportsFile = this.directory.resolve("airports.csv").toString();
+        this.flightsFile = this.directory.resolve("flights.csv").toString();
+        this.snapshotFile = this.directory.resolve("timetable.snapshot").toString();
+        this.importSnapshotFile = this.directory.resolve("import.snapshot").toString();
+        this.startupSnapshotFile = this.directory.resolve("startup.snapshot").toString();
+        Object generator = App.generator(42, this.airports, this.flights);
+        App.writeCsv(generator, this.airportsFile, this.flightsFile);
+        App.writeSnapshot(App.generate(generator), 0, this.snapshotFile);
+        // a snapshot the startup accepts has to carry the .csv files' checksum, so
+        // let an import write it
+        App.loadTimetable(this.airportsFile, this.flightsFile, this.startupSnapshotFile);
+    }
+
+    /**
+     * Deletes the snapshot startupFromCsv writes, so each call imports the .csv files
+     */
+    @Setup(Level.Invocation)
+    public void deleteImportSnapshot() throws IOException {
+        Files.deleteIfExists(Path.of(this.importSnapshotFile));
+    }
+
+    /**
+     * Deletes the generated files
+     */
+    @TearDown(Level.Trial)
+    public void deleteTimetable() throws IOException {
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Loads the .csv files with readAirportsFromCSV and readFlightsFromCSV
+     */
+    @Benchmark
+    public void originalReaders() throws Throwable {
+        App.readCsv(this.airportsFile, this.flightsFile);
+    }
+
+    /**
+     * Loads the .csv files with the bulk loader
+     * @return the network
+     */
+    @Benchmark
+    public Object bulkLoader() throws Throwable {
+        return App.load(this.airportsFile, this.flightsFile);
+    }
+
+    /**
+     * Loads the binary snapshot
+     * @return the network
+     */
+    @Benchmark
+    public Object snapshot() throws Throwable {
+        return App.readSnapshot(this.snapshotFile, 0);
+    }
+
+    /**
+     * Starts the program's timetable without a snapshot: the bulk loader, writing
+     * the snapshot, and filling ShortestFlightPath's tables
+     */
+    @Benchmark
+    public void startupFromCsv() throws Throwable {
+        App.loadTimetable(this.airportsFile, this.flightsFile, this.importSnapshotFile);
+    }
+
+    /**
+     * Starts the program's timetable from an up-to-date snapshot: checking it
+     * against the .csv files, reading it, and filling ShortestFlightPath's tables
+     */
+    @Benchmark
+    public void startupFromSnapshot() throws Throwable {
+        App.loadTimetable(this.airportsFile, this.flightsFile, this.startupSnapshotFile);
+    }
+}
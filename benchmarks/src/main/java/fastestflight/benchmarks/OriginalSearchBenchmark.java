@@ -0,0 +1,92 @@
+package fastestflight.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ShortestFlightPath's original shortestFlight search, which builds a
+ * Path object for every flight it tries, as the baseline for QueryBenchmark. It
+ * runs on smaller timetables since it slows down much faster as they grow. Run
+ * with "-prof gc" to see the bytes allocated per query.
+ * @author megangibbons
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OriginalSearchBenchmark {
+    private static final int QUERIES = 1024; // number of queries in the list, a power of two
+
+    @Param({"20"})
+    public int airports; // number of generated airports
+
+    @Param({"500", "1000"})
+    public int flights; // number of generated flights
+
+    private final String[] from = new String[QUERIES]; // departure airport of each query
+    private final String[] to = new String[QUERIES]; // arrival airport of each query
+    private int next; // the next query to run
+
+    /**
+     * Loads a generated timetable into ShortestFlightPath's tables and makes the
+     * query list
+     */
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        Path directory = Files.createTempDirectory("ffg-original");
+        String airportsFile = directory.resolve("airports.csv").toString();
+        String flightsFile = directory.resolve("flights.csv").toString();
+        App.writeCsv(App.generator(42, this.airports, this.flights), airportsFile, flightsFile);
+        App.readCsv(airportsFile, flightsFile);
+        delete(directory);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < QUERIES; i++) {
+            int a = random.nextInt(this.airports);
+            int b = random.nextInt(this.airports - 1);
+            this.from[i] = App.acronym(a);
+            this.to[i] = App.acronym(b >= a ? b + 1 : b);
+        }
+    }
+
+    /**
+     * Deletes a directory and the files in it
+     * @param directory: the directory
+     * @throws IOException if the directory can't be listed
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * The latency of the original search
+     * @return the path
+     */
+    @Benchmark
+    public Object shortestFlight() throws Throwable {
+        int q = this.next;
+        this.next = (q + 1) & (QUERIES - 1);
+        return App.shortestFlight(this.from[q], this.to[q]);
+    }
+}
@@ -0,0 +1,132 @@
+package fastestflight.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures path queries on a generated timetable: the latency of single queries,
+ * sampled so the percentiles show, and the throughput of queries run on every
+ * core at once. Each thread walks the same fixed list of random queries from its
+ * own place in the list. Run with "-prof gc" to get the bytes allocated per
+ * query as gc.alloc.rate.norm.
+ * @author megangibbons
+ *
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmark {
+    private static final int QUERIES = 4096; // number of queries in the list, a power of two
+
+    @Param({"100", "1000", "5000"})
+    public int airports; // number of generated airports
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int flights; // number of generated flights
+
+    private Object search; // the EarliestArrivalSearch over the generated network
+    private final String[] from = new String[QUERIES]; // departure airport of each query
+    private final String[] to = new String[QUERIES]; // arrival airport of each query
+    private final int[] departAfter = new int[QUERIES]; // earliest departure of each query
+
+    /**
+     * One thread's place in the query list
+     * @author megangibbons
+     *
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private static int threads; // number of cursors created, to spread their starts
+        private int next; // the next query to run
+
+        /**
+         * Starts each thread at a different place in the list
+         */
+        @Setup(Level.Trial)
+        public void start() {
+            synchronized (Cursor.class) {
+                this.next = (threads++ * 997) & (QUERIES - 1);
+            }
+        }
+
+        /**
+         * Gets the next query and moves on
+         * @return the query's place in the list
+         */
+        int next() {
+            int query = this.next;
+            this.next = (query + 1) & (QUERIES - 1);
+            return query;
+        }
+    }
+
+    /**
+     * Generates the timetable and the query list
+     */
+    @Setup(Level.Trial)
+    public void generate() throws Throwable {
+        this.search = App.search(App.generate(App.generator(42, this.airports, this.flights)));
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < QUERIES; i++) {
+            int a = random.nextInt(this.airports);
+            int b = random.nextInt(this.airports - 1);
+            this.from[i] = App.acronym(a);
+            this.to[i] = App.acronym(b >= a ? b + 1 : b);
+            this.departAfter[i] = 5 * 60 + random.nextInt(12 * 60);
+        }
+    }
+
+    /**
+     * The latency of the fastest path over the whole day
+     * @param cursor: the thread's place in the query list
+     * @return the path
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object fastestFlightLatency(Cursor cursor) throws Throwable {
+        int q = cursor.next();
+        return App.fastestFlight(this.search, this.from[q], this.to[q]);
+    }
+
+    /**
+     * The latency of the earliest arriving path after a departure time
+     * @param cursor: the thread's place in the query list
+     * @return the path
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object earliestArrivalLatency(Cursor cursor) throws Throwable {
+        int q = cursor.next();
+        return App.earliestArrival(this.search, this.from[q], this.to[q], this.departAfter[q]);
+    }
+
+    /**
+     * The throughput of earliest arrival queries with one thread per core
+     * @param cursor: the thread's place in the query list
+     * @return the path
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(Threads.MAX)
+    public Object earliestArrivalThroughput(Cursor cursor) throws Throwable {
+        int q = cursor.next();
+        return App.earliestArrival(this.search, this.from[q], this.to[q], this.departAfter[q]);
+    }
+}